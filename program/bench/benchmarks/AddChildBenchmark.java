@@ -0,0 +1,52 @@
+package benchmarks;
+
+import dataStructure.TaskNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AddChildBenchmark
+ * Adding a task under a random task of the tree, with the scheduler heap
+ * kept up to date.  The tree grows during an iteration and is built again
+ * for the next one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddChildBenchmark {
+
+    private static final int SAMPLE = 1024;
+
+    private TaskNode[] parents;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void buildTree(TreeShape shape) {
+        TaskNode head = shape.build();
+        head.chooseTask();
+        parents = SyntheticTrees.sample(head, SAMPLE, 11);
+    }
+
+    @Benchmark
+    public TaskNode addChild() {
+        int i = next++;
+        TaskNode child = new TaskNode("added",
+                SyntheticTrees.START.plusMinutes(i & 0xfffff));
+        parents[i & (SAMPLE - 1)].addChild(child);
+        return child;
+    }
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import dataStructure.TaskNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CompletionBenchmark
+ * Completing a project of the given size inside a large tree: all at once,
+ * which cascades down, leaf by leaf, which cascades up as each parent runs
+ * out of work, or as one batch.  A fresh project is added before every call
+ * and is not part of the time measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompletionBenchmark {
+
+    @Param({"100", "10000"})
+    public int projectSize;
+
+    private TaskNode head;
+    private TaskNode project;
+    private List<TaskNode> leaves;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void buildTree(TreeShape shape) {
+        head = shape.build();
+        head.chooseTask();
+    }
+
+    @Setup(Level.Invocation)
+    public void addProject() {
+        project = SyntheticTrees.build(projectSize, 4, 6, seed++);
+        leaves = SyntheticTrees.leaves(project);
+        head.addChild(project);
+    }
+
+    @Benchmark
+    public TaskNode completeProject() {
+        project.setCompleted(true);
+        return head.chooseTask();
+    }
+
+    @Benchmark
+    public TaskNode completeLeaves() {
+        for (TaskNode leaf : leaves) {
+            leaf.setCompleted(true);
+        }
+        return head.chooseTask();
+    }
+
+    @Benchmark
+    public TaskNode completeAll() {
+        TaskNode.completeAll(leaves);
+        return head.chooseTask();
+    }
+}
@@ -0,0 +1,165 @@
+package benchmarks;
+
+import dataStructure.ConcurrentTaskTree;
+import dataStructure.TaskNode;
+import dataStructure.TaskView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ContentionBenchmark
+ * Writers sharing one ConcurrentTaskTree, each completing and reopening
+ * tasks in a subtree of its own.  Compare the total throughput of each
+ * group:
+ *
+ * alone    one writer, the cost of a change with no one to wait for
+ * shared   four writers on one tree, serialized by its lock
+ * sharded  four writers each on a tree of its own, as a TaskForest has them,
+ *          the most a lock per subtree could ever give
+ * read     four writers on one tree and four readers choosing from it
+ *
+ * If shared does no worse than alone, waiting for the lock costs nothing
+ * over the change itself, and sharded bounds what striping could win.  The
+ * readers of read should choose as fast as with no writers at all, since
+ * they never take the lock.  Only leaves that are not the first child of
+ * their parent are changed, so no parent runs out of work and the tree
+ * keeps its shape.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentionBenchmark {
+
+    private static final int DEPTH = 6;
+    private static final int FAN_OUT = 10;
+    private static final int SAMPLE = 1024;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private ConcurrentTaskTree tree;
+
+    @Setup(Level.Trial)
+    public void buildTree() {
+        tree = share(size, 42);
+    }
+
+    // leaves of a writer's subtree of the shared tree and of its own tree,
+    // and whether the writer has them completed
+    @State(Scope.Thread)
+    public static class Writer {
+        private static final AtomicInteger WRITERS = new AtomicInteger();
+
+        private TaskView[] leaves;
+        private boolean[] done;
+        private ConcurrentTaskTree own;
+        private TaskView[] ownLeaves;
+        private boolean[] ownDone;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void buildTree(ContentionBenchmark shared) {
+            int writer = WRITERS.getAndIncrement();
+            leaves = sample(shared.tree.snapshot().getChild(
+                    writer % FAN_OUT), writer);
+            done = new boolean[leaves.length];
+            own = share(shared.size, 43 + writer);
+            ownLeaves = sample(own.snapshot().getChild(0), writer);
+            ownDone = new boolean[ownLeaves.length];
+        }
+    }
+
+    @Benchmark
+    @Group("alone")
+    @GroupThreads(1)
+    public TaskView alone(Writer writer) throws IOException {
+        return change(tree, writer.leaves, writer.done, writer.next++);
+    }
+
+    @Benchmark
+    @Group("shared")
+    @GroupThreads(4)
+    public TaskView shared(Writer writer) throws IOException {
+        return change(tree, writer.leaves, writer.done, writer.next++);
+    }
+
+    @Benchmark
+    @Group("sharded")
+    @GroupThreads(4)
+    public TaskView sharded(Writer writer) throws IOException {
+        return change(writer.own, writer.ownLeaves, writer.ownDone,
+                writer.next++);
+    }
+
+    @Benchmark
+    @Group("read")
+    @GroupThreads(4)
+    public TaskView write(Writer writer) throws IOException {
+        return change(tree, writer.leaves, writer.done, writer.next++);
+    }
+
+    @Benchmark
+    @Group("read")
+    @GroupThreads(4)
+    public TaskView chooseTask() {
+        return tree.chooseTask();
+    }
+
+    private static ConcurrentTaskTree share(int size, long seed) {
+        TaskNode head = SyntheticTrees.build(size, DEPTH, FAN_OUT, seed);
+        // the heap is built on first use, which is not what is measured
+        head.chooseTask();
+        return new ConcurrentTaskTree(head);
+    }
+
+    // leaves of a subtree reached without passing a first child, picked at
+    // random, the same ones for the same seed
+    private static TaskView[] sample(TaskView subtree, long seed) {
+        Random random = new Random(seed);
+        Set<TaskView> sample = Collections.newSetFromMap(
+                new IdentityHashMap<>());
+        for (int i = 0; i < 4 * SAMPLE && sample.size() < SAMPLE; i++) {
+            TaskView view = subtree;
+            while (view.getChildCount() > 1) {
+                view = view.getChildAt(
+                        1 + random.nextInt(view.getChildCount() - 1));
+            }
+            if (view != subtree && view.getChildCount() == 0) {
+                sample.add(view);
+            }
+        }
+        return sample.toArray(new TaskView[0]);
+    }
+
+    // complete one of the leaves, or reopen it if it was completed
+    private static TaskView change(ConcurrentTaskTree tree, TaskView[] leaves,
+                                   boolean[] done, int next)
+            throws IOException {
+        int i = next % leaves.length;
+        done[i] = !done[i];
+        return tree.setCompleted(leaves[i], done[i]);
+    }
+}
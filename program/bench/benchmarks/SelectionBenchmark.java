@@ -0,0 +1,63 @@
+package benchmarks;
+
+import dataStructure.TaskNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SelectionBenchmark
+ * Choosing the next task and comparing tasks, neither of which changes the
+ * tree.  chooseTask on the head is answered from the scheduler heap, on an
+ * inner task by scanning its subtree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectionBenchmark {
+
+    private static final int SAMPLE = 1024;
+
+    private TaskNode head;
+    private TaskNode inner;
+    private TaskNode[] tasks;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void buildTree(TreeShape shape) {
+        head = shape.build();
+        inner = head.getChild(0);
+        tasks = SyntheticTrees.sample(head, SAMPLE, 7);
+        // the heap is built on first use, which is not what is measured
+        head.chooseTask();
+    }
+
+    @Benchmark
+    public TaskNode chooseTask() {
+        return head.chooseTask();
+    }
+
+    @Benchmark
+    public TaskNode chooseTaskInSubtree() {
+        return inner.chooseTask();
+    }
+
+    @Benchmark
+    public int compareTo() {
+        int i = next++;
+        return tasks[i & (SAMPLE - 1)].compareTo(tasks[(i + 1) & (SAMPLE - 1)]);
+    }
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+import dataStructure.TaskNode;
+import dataStructure.TaskSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SerializationBenchmark
+ * Saving and loading the tree: the snapshot format, read in full or only
+ * its top level, and the Java serialization older trees were saved with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private TaskNode head;
+    private File written;
+    private File scratch;
+
+    @Setup(Level.Trial)
+    public void buildTree(TreeShape shape) throws IOException {
+        head = shape.build();
+        File dir = Files.createTempDirectory("bench").toFile();
+        written = new File(dir, "taskTree.txt");
+        scratch = new File(dir, "scratch.txt");
+        TaskSnapshot.write(head, 0, written);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        written.delete();
+        scratch.delete();
+        written.getParentFile().delete();
+    }
+
+    @Benchmark
+    public File writeSnapshot() throws IOException {
+        TaskSnapshot.write(head, 0, scratch);
+        return scratch;
+    }
+
+    @Benchmark
+    public TaskNode readSnapshot() throws IOException {
+        return TaskSnapshot.read(written).getTree();
+    }
+
+    @Benchmark
+    public TaskNode readSnapshotTopLevel() throws IOException {
+        return TaskSnapshot.read(written, 1).getTree();
+    }
+
+    @Benchmark
+    public Object serializedRoundTrip() throws IOException,
+            ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(head);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import dataStructure.TaskNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SubDivideBenchmark
+ * Re-planning the whole tree from the head.  Every call replaces the chunks
+ * the one before made, so the tree stays the same size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubDivideBenchmark {
+
+    private TaskNode head;
+
+    @Setup(Level.Trial)
+    public void buildTree(TreeShape shape) {
+        head = shape.build();
+        head.chooseTask();
+    }
+
+    @Benchmark
+    public LocalDateTime subDivide() {
+        return head.subDivide(SyntheticTrees.START);
+    }
+}
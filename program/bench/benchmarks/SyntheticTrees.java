@@ -0,0 +1,122 @@
+package benchmarks;
+
+import dataStructure.TaskNode;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SyntheticTrees
+ * Builds task trees of a given size and shape for the benchmarks.  The tree
+ * is filled a level at a time, each task getting fanOut children, until the
+ * size is reached or the deepest level is; after that the tasks on the
+ * deepest level with children keep getting more.  Due dates are spread over
+ * a year and a third of the leaves have sub-tasks, so subDivide has work to
+ * do.  The same seed always builds the same tree.
+ */
+final class SyntheticTrees {
+
+    static final LocalDateTime START = LocalDateTime.of(2018, 1, 8, 9, 0);
+
+    private static final int MINUTES_PER_YEAR = 365 * 24 * 60;
+
+    private SyntheticTrees() {
+    }
+
+    /**
+     * build
+     * Build a tree of the given shape.
+     *
+     * @param size   number of tasks, counting the head
+     * @param depth  levels below the head
+     * @param fanOut children per task above the deepest level
+     * @param seed   seed for the due dates and task counts
+     * @return the head of the tree
+     */
+    static TaskNode build(int size, int depth, int fanOut, long seed) {
+        Random random = new Random(seed);
+        TaskNode head = new TaskNode("head", START.plusDays(400));
+        List<TaskNode> parents = Collections.singletonList(head);
+        List<TaskNode> made = parents;
+        int count = 1;
+        for (int level = 1; count < size; level++) {
+            boolean deepest = level >= Math.max(depth, 1);
+            made = new ArrayList<>();
+            for (int round = 0; (deepest || round < fanOut) && count < size;
+                 round++) {
+                for (TaskNode parent : parents) {
+                    if (count == size) {
+                        break;
+                    }
+                    TaskNode task = task(random, count++);
+                    parent.addChild(task);
+                    made.add(task);
+                }
+            }
+            parents = made;
+        }
+        for (TaskNode leaf : made) {
+            if (random.nextInt(3) == 0) {
+                leaf.setTaskCount(1 + random.nextInt(60));
+            }
+        }
+        return head;
+    }
+
+    /**
+     * leaves
+     * Return the tasks of a tree that have no children, in tree order.
+     */
+    static List<TaskNode> leaves(TaskNode head) {
+        List<TaskNode> leaves = new ArrayList<>();
+        collectLeaves(head, leaves);
+        return leaves;
+    }
+
+    /**
+     * sample
+     * Pick tasks from a tree at random, the same ones for the same seed.
+     *
+     * @param head  the tree
+     * @param count how many to pick, a power of two
+     * @param seed  seed for the walk
+     * @return the tasks picked, the head included
+     */
+    static TaskNode[] sample(TaskNode head, int count, long seed) {
+        Random random = new Random(seed);
+        TaskNode[] sample = new TaskNode[count];
+        for (int i = 0; i < count; i++) {
+            TaskNode node = head;
+            while (random.nextInt(4) != 0) {
+                int children = 0;
+                while (node.getChild(children) != null) {
+                    children++;
+                }
+                if (children == 0) {
+                    break;
+                }
+                node = node.getChild(random.nextInt(children));
+            }
+            sample[i] = node;
+        }
+        return sample;
+    }
+
+    private static TaskNode task(Random random, int id) {
+        return new TaskNode("task " + id,
+                START.plusMinutes(random.nextInt(MINUTES_PER_YEAR)));
+    }
+
+    private static void collectLeaves(TaskNode node, List<TaskNode> leaves) {
+        if (node.getChild(0) == null) {
+            leaves.add(node);
+            return;
+        }
+        for (int i = 0; node.getChild(i) != null; i++) {
+            collectLeaves(node.getChild(i), leaves);
+        }
+    }
+}
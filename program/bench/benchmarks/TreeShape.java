@@ -0,0 +1,30 @@
+package benchmarks;
+
+import dataStructure.TaskNode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * TreeShape
+ * The size and shape of the tree a benchmark runs over.  Override them from
+ * the command line, for example -p size=1000000 -p depth=12 -p fanOut=4.
+ * Trees of 10^7 tasks need a heap of several gigabytes, see the bench target
+ * of the Makefile.
+ */
+@State(Scope.Benchmark)
+public class TreeShape {
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"6"})
+    public int depth;
+
+    @Param({"10"})
+    public int fanOut;
+
+    TaskNode build() {
+        return SyntheticTrees.build(size, depth, fanOut, 42);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+  FlightRecording.java
+
+ * Custom JFR events for the task tracker.  Every time the Metrics registry
+ * records becomes an operation event, and the size of the tree is sampled
+ * periodically.  Recording metrics is switched on while any flight recording
+ * is running, so with JFR idle the hot paths pay next to nothing; it stays
+ * on throughout with -Dtasktracker.metrics=true.
+ *
+ * Start a recording with -XX:StartFlightRecording or jcmd and look for the
+ * "Task Tracker" category.
+ */
+
+package Controller;
+
+import dataStructure.Metrics;
+import dataStructure.TreeStats;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.Timespan;
+
+import java.util.function.Supplier;
+
+final class FlightRecording {
+
+    private static final boolean ALWAYS = Boolean.getBoolean(
+            "tasktracker.metrics");
+
+    private FlightRecording() {
+    }
+
+    @Name("tasktracker.Operation")
+    @Label("Task Operation")
+    @Category("Task Tracker")
+    @Description("A timed operation on the task tree or its files")
+    static final class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Time Taken")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+
+    @Name("tasktracker.Tree")
+    @Label("Task Tree")
+    @Category("Task Tracker")
+    @Description("Size of the part of the task tree in memory")
+    @Period("10 s")
+    static final class TreeEvent extends Event {
+        @Label("Tasks")
+        long size;
+
+        @Label("Pending Tasks")
+        long pending;
+
+        @Label("Depth")
+        int depth;
+    }
+
+    // install
+    // emit the events, sampling the tree with stats, which may return null
+    // while no tree is loaded
+    static void install(Supplier<TreeStats> stats) {
+        if (!FlightRecorder.isAvailable()) {
+            return;
+        }
+        Metrics.addListener((timer, nanos) -> {
+            OperationEvent event = new OperationEvent();
+            if (event.isEnabled()) {
+                event.operation = timer.getName();
+                event.time = nanos;
+                event.commit();
+            }
+        });
+        FlightRecorder.addPeriodicEvent(TreeEvent.class, () -> {
+            TreeStats tree = stats.get();
+            if (tree != null) {
+                TreeEvent event = new TreeEvent();
+                event.size = tree.getSize();
+                event.pending = tree.getPending();
+                event.depth = tree.getDepth();
+                event.commit();
+            }
+        });
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                follow(recorder);
+            }
+
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                follow(FlightRecorder.getFlightRecorder());
+            }
+        });
+    }
+
+    // record metrics exactly while a recording is running
+    private static void follow(FlightRecorder recorder) {
+        boolean running = false;
+        for (Recording recording : recorder.getRecordings()) {
+            running |= recording.getState() == RecordingState.RUNNING;
+        }
+        Metrics.setEnabled(ALWAYS || running);
+    }
+}
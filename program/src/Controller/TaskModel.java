@@ -0,0 +1,187 @@
+/*
+  TaskModel.java
+
+ * Single thread that owns the task tree.  Every read or change of a TaskNode
+ * the GUI makes is queued here, so the JavaFX application thread never waits
+ * on the tree and the tree never sees two threads at once.  Results are
+ * handed back to the application thread with Platform.runLater.
+ *
+ * Long operations are given a name, which is shown with a progress indicator
+ * while they are queued or running.  Cancelling withdraws every operation
+ * that has not started yet; one that is already running is finished, since
+ * its change is journaled before it is applied.  Operations the program
+ * cannot do without, such as loading the tasks and saving them on exit, are
+ * submitted as required and are never withdrawn.
+ */
+
+package Controller;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+class TaskModel {
+
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread t = new Thread(runnable, "task-model");
+                t.setDaemon(true);
+                return t;
+            });
+
+    // long operations not finished yet and their names, only touched on the
+    // application thread
+    private final Map<Future<?>, String> pending = new LinkedHashMap<>();
+    // the ones among them that cannot be cancelled
+    private final Set<Future<?>> required = new HashSet<>();
+    private final ReadOnlyBooleanWrapper busy = new ReadOnlyBooleanWrapper();
+    private final ReadOnlyBooleanWrapper cancellable =
+            new ReadOnlyBooleanWrapper();
+    private final ReadOnlyStringWrapper activity =
+            new ReadOnlyStringWrapper("");
+
+    // busyProperty
+    // true while a long operation is queued or running
+    ReadOnlyBooleanProperty busyProperty() {
+        return busy.getReadOnlyProperty();
+    }
+
+    // cancellableProperty
+    // true while a long operation that can be withdrawn is queued
+    ReadOnlyBooleanProperty cancellableProperty() {
+        return cancellable.getReadOnlyProperty();
+    }
+
+    // activityProperty
+    // name of the oldest long operation not finished yet
+    ReadOnlyStringProperty activityProperty() {
+        return activity.getReadOnlyProperty();
+    }
+
+    // execute
+    // queue a change or read that is quick and needs no result
+    void execute(Runnable work) {
+        thread.execute(() -> {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    // query
+    // run work on the model thread and hand its result to done on the
+    // application thread
+    <T> void query(Callable<T> work, Consumer<T> done) {
+        submit(null, work, done, Throwable::printStackTrace);
+    }
+
+    // submit
+    // run work on the model thread and hand its result, or what it threw, to
+    // the application thread.  If a name is given the work counts as a long
+    // operation.  Must be called on the application thread.
+    <T> void submit(String name, Callable<T> work, Consumer<T> done,
+                    Consumer<Exception> failed) {
+        submit(name, false, work, done, failed);
+    }
+
+    // submitRequired
+    // submit a long operation that cancelPending must leave alone
+    <T> void submitRequired(String name, Callable<T> work, Consumer<T> done,
+                            Consumer<Exception> failed) {
+        submit(name, true, work, done, failed);
+    }
+
+    private <T> void submit(String name, boolean isRequired,
+                            Callable<T> work, Consumer<T> done,
+                            Consumer<Exception> failed) {
+        Future<?>[] self = new Future<?>[1];
+        self[0] = thread.submit(() -> {
+            T result;
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    finished(self[0]);
+                    failed.accept(e);
+                });
+                return;
+            }
+            Platform.runLater(() -> {
+                finished(self[0]);
+                done.accept(result);
+            });
+        });
+        if (name != null) {
+            pending.put(self[0], name);
+            if (isRequired) {
+                required.add(self[0]);
+            }
+            refresh();
+        }
+    }
+
+    // await
+    // run work on the model thread and wait for its result, for threads
+    // other than the application thread.  Gives up and returns null if the
+    // model thread does not get to it in time or has shut down.
+    <T> T await(Callable<T> work, long millis) throws Exception {
+        Future<T> result;
+        try {
+            result = thread.submit(work);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        try {
+            return result.get(millis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(false);
+            return null;
+        }
+    }
+
+    // cancelPending
+    // withdraw every long operation that has not started yet and is not
+    // required
+    void cancelPending() {
+        pending.keySet().removeIf(future -> !required.contains(future)
+                                            && future.cancel(false));
+        refresh();
+    }
+
+    // shutdown
+    // stop taking work once everything queued so far has run
+    void shutdown() {
+        thread.shutdown();
+    }
+
+    private void finished(Future<?> future) {
+        required.remove(future);
+        if (pending.remove(future) != null) {
+            refresh();
+        }
+    }
+
+    private void refresh() {
+        busy.set(!pending.isEmpty());
+        cancellable.set(pending.size() > required.size());
+        activity.set(pending.isEmpty() ? ""
+                     : pending.values().iterator().next() + "...");
+    }
+}
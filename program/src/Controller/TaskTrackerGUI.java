@@ -12,8 +12,17 @@ package Controller;
 /*       IMPORTS
 /*--------------------*/
 
+import dataStructure.DueDateNotifier;
+import dataStructure.Metrics;
+import dataStructure.TaskImporter;
+import dataStructure.TaskJournal;
 import dataStructure.TaskNode;
+import dataStructure.TaskTreeListener;
+import dataStructure.TreeStats;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
@@ -22,12 +31,19 @@ import javafx.scene.control.*;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.*;
+import javafx.stage.FileChooser;
+import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.awt.*;
 import java.io.*;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToLongFunction;
 
 public class TaskTrackerGUI extends Application {
 
@@ -36,16 +52,42 @@ public class TaskTrackerGUI extends Application {
     /*--------------------*/
 
     private static final double VERSIONID = 0.01;
+    // levels of the saved tree to read at startup, the rest is read as needed
+    private static final int LAZY_DEPTH =
+            Integer.getInteger("tasktracker.lazyDepth", 3);
+    private static final Metrics.Timer READ_FILE = Metrics.timer("readFile");
+    private static final Metrics.Timer SAVE = Metrics.timer("save");
+    // how long the tree stats used by gauges are kept
+    private static final long STATS_MILLIS = 1000;
+    // tasks listed in the upcoming panel
+    private static final int UPCOMING = 20;
+    // most tasks a search shows
+    private static final int SEARCH_LIMIT = 100;
+    // most tasks a due notice lists by name
+    private static final int DUE_LISTED = 10;
     // screen width and height
     private static double WIDTH;
     private static double HEIGHT;
     // data structure
     private TaskNode head;
+    private TaskJournal journal;
+    // thread every read and change of the tree runs on
+    private final TaskModel model = new TaskModel();
+    // last tree stats taken for the gauges, and when
+    private TreeStats stats;
+    private long statsTaken;
+    // whether the upcoming panel has a refresh queued, only touched on the
+    // model thread
+    private boolean upcomingQueued;
+    // tells when tasks become due, only touched on the model thread
+    private DueDateNotifier notifier;
+    // advances the notifier every minute
+    private Timeline reminders;
 
     // GUI elements
     private Stage stage;
     private BorderPane window;
-    private TreeItem<TaskNode> root;
+    private TaskTreeItem root;
     private Label currSelected;
     private Label dueDate;
     private Label taskAmount;
@@ -54,6 +96,9 @@ public class TaskTrackerGUI extends Application {
     private Label isComplete;
     private StackPane rootpane;
     private TreeView<TaskNode> taskList;
+    private ListView<String> upcoming;
+    private HBox status;
+    private Alert dueNotice;
 
     /*--------------------*/
     /*      METHODS
@@ -71,14 +116,21 @@ public class TaskTrackerGUI extends Application {
         stage = primaryStage;
         stage.setTitle("TaskTracker v" + VERSIONID);
 
-        // read in input file
-        readFile();
-
         // init labels/buttons/etc
         initGUIElements();
 
-        // setup window elements
-        setupWindow();
+        // show the window while the tasks load
+        stage.setScene(new Scene(new BorderPane(null, null, null, status,
+                null), WIDTH, HEIGHT));
+        stage.setOnCloseRequest(windowEvent -> {
+            windowEvent.consume();
+            save();
+        });
+        stage.show();
+        initMetrics();
+
+        // read in input file, then setup window elements
+        readFile();
     }
 
     // setupWindow
@@ -88,22 +140,73 @@ public class TaskTrackerGUI extends Application {
         // init view panels
         setupPanels();
 
-        // set up stage
-        Scene scene = new Scene(window, WIDTH, HEIGHT);
-        stage.setScene(scene);
-        stage.setOnCloseRequest(windowEvent -> {
+        stage.getScene().setRoot(window);
+    }
+
+    // save
+    // checkpoint the journal on the model thread, then close the window
+    private void save() {
+        model.submitRequired("Saving", () -> {
+            long start = Metrics.start();
+            if (journal != null) {
+                journal.checkpoint();
+                journal.close();
+            }
+            SAVE.stop(start);
+            if (Metrics.isEnabled()) {
+                // on the model thread the gauges must not wait for it
+                synchronized (this) {
+                    stats = head == null ? null : TreeStats.of(head);
+                    statsTaken = System.currentTimeMillis();
+                }
+                System.out.print(Metrics.report());
+            }
+            return null;
+        }, done -> close(), e -> {
+            e.printStackTrace();
+            close();
+        });
+    }
+
+    private void close() {
+        if (reminders != null) {
+            reminders.stop();
+        }
+        model.shutdown();
+        Platform.exit();
+    }
+
+    // initMetrics
+    // gauge the size of the tree and emit JFR events for the metrics
+    private void initMetrics() {
+        Metrics.gauge("tree.size", () -> treeStats(TreeStats::getSize));
+        Metrics.gauge("tree.pending", () -> treeStats(TreeStats::getPending));
+        Metrics.gauge("tree.depth", () -> treeStats(TreeStats::getDepth));
+        FlightRecording.install(this::treeStats);
+    }
+
+    // treeStats
+    // stats of the tree taken on the model thread, reused for a second so
+    // reading every gauge walks the tree once.  Null until the tree is loaded
+    // or if the model thread is too busy to take them.
+    private synchronized TreeStats treeStats() {
+        long now = System.currentTimeMillis();
+        if (stats == null || now - statsTaken > STATS_MILLIS) {
             try {
-                FileOutputStream fileOutputStream = new FileOutputStream
-                        ("taskTree.txt");
-                ObjectOutputStream objectOutputStream = new
-                        ObjectOutputStream(fileOutputStream);
-                objectOutputStream.writeObject(head);
-                objectOutputStream.close();
-            } catch (IOException e) {
+                stats = model.await(() -> head == null ? null
+                                         : TreeStats.of(head), STATS_MILLIS);
+            } catch (Exception e) {
                 e.printStackTrace();
+                stats = null;
             }
-        });
-        stage.show();
+            statsTaken = now;
+        }
+        return stats;
+    }
+
+    private long treeStats(ToLongFunction<TreeStats> value) {
+        TreeStats tree = treeStats();
+        return tree == null ? 0 : value.applyAsLong(tree);
     }
 
     // initGUIElements
@@ -115,22 +218,78 @@ public class TaskTrackerGUI extends Application {
         isComplete = new Label("");
         markComplete = new Button("Toggle Completion");
         subdivide = new Button("Sub-Divide");
+
+        // progress of long operations, with a way to withdraw queued ones
+        ProgressIndicator progress = new ProgressIndicator();
+        progress.setPrefSize(16, 16);
+        Label activity = new Label();
+        activity.textProperty().bind(model.activityProperty());
+        Button cancel = new Button("Cancel");
+        cancel.setOnAction(actionEvent -> model.cancelPending());
+        cancel.disableProperty().bind(model.cancellableProperty().not());
+        status = new HBox(10, progress, activity, cancel);
+        status.setPadding(new Insets(5, 20, 5, 20));
+        status.visibleProperty().bind(model.busyProperty());
     }
 
     // readFile
-    // read in taskTree.txt.  If file doesn't exist, create empty tree instead.
+    // read in taskTree.txt and replay the changes journaled since it was
+    // written, on the model thread.  If file doesn't exist, create empty tree
+    // instead.  If it can't be read, set it and its journal aside, tell the
+    // user and start over.
     private void readFile() {
-        try {
-            FileInputStream fileInputStream = new FileInputStream("taskTree.txt");
-            ObjectInputStream objectInputStream = new ObjectInputStream
-                    (fileInputStream);
-            head = (TaskNode) objectInputStream.readObject();
-            objectInputStream.close();
-        } catch (Exception e) {
-            head = new TaskNode("Task List", LocalDateTime.now());
+        File snapshot = new File("taskTree.txt");
+        File changes = new File("taskTree.journal");
+        model.submitRequired("Loading tasks",
+                () -> openJournal(snapshot, changes), this::loaded, e -> {
+            e.printStackTrace();
+            String suffix = ".unreadable-" + System.currentTimeMillis();
+            snapshot.renameTo(new File(snapshot.getPath() + suffix));
+            changes.renameTo(new File(changes.getPath() + suffix));
+            new Alert(Alert.AlertType.ERROR, "Saved tasks could not be read "
+                    + "and were moved to taskTree.txt" + suffix + ".\n"
+                    + e.getMessage()).showAndWait();
+            model.submitRequired("Loading tasks",
+                    () -> openJournal(snapshot, changes), this::loaded,
+                    again -> {
+                again.printStackTrace();
+                journal = null;
+                loaded(new TaskNode("Task List", LocalDateTime.now()));
+            });
+        });
+    }
+
+    private TaskNode openJournal(File snapshot, File changes)
+            throws IOException {
+        long start = Metrics.start();
+        journal = new TaskJournal(snapshot, changes, LAZY_DEPTH);
+        TaskNode tree = journal.load(new TaskNode("Task List",
+                LocalDateTime.now()));
+        READ_FILE.stop(start);
+        return tree;
+    }
+
+    private void loaded(TaskNode tree) {
+        head = tree;
+        setupWindow();
+    }
+
+    // journal
+    // append a change to the journal before it is applied to the tree
+    private void journal(JournalEntry entry) {
+        if (journal != null) {
+            try {
+                entry.write(journal);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 
+    private interface JournalEntry {
+        void write(TaskJournal journal) throws IOException;
+    }
+
     // setupPanels
     // setup all gridpane panels
     private void setupPanels() {
@@ -145,8 +304,9 @@ public class TaskTrackerGUI extends Application {
         // panel to be added to split pane
         GridPane panelView = new GridPane();
         panelView.setVgap(10);
-        panelView.add(rootpane, 0, 0);
-        panelView.add(infoPane, 0, 1);
+        panelView.add(buildSearchBar(), 0, 0);
+        panelView.add(rootpane, 0, 1);
+        panelView.add(infoPane, 0, 2);
 
         // create main content pane
         GridPane mainContent = new GridPane();
@@ -156,14 +316,17 @@ public class TaskTrackerGUI extends Application {
         // make main gridpane panels
         GridPane taskCreation = buildCreationPane();
         GridPane getNextTask = getNextTaskGridPane();
+        GridPane upcomingPane = buildUpcomingPane();
 
         // set padding for each panel
         taskCreation.setPadding(new Insets(20, 20, 20, 20));
         getNextTask.setPadding(new Insets(20, 20, 20, 20));
+        upcomingPane.setPadding(new Insets(20, 20, 20, 20));
 
         // add to main content pane
         mainContent.add(taskCreation, 0, 0);
         mainContent.add(getNextTask, 0, 1);
+        mainContent.add(upcomingPane, 0, 2);
 
         // create panel view
         makePanelView(panelView, mainContent);
@@ -195,7 +358,8 @@ public class TaskTrackerGUI extends Application {
             }
         });
 
-        window = new BorderPane(splitPane, new HBox(tasks), null, null, null);
+        window = new BorderPane(splitPane, new HBox(tasks), null, status,
+                null);
     }
 
     // getNextTaskGridPane
@@ -206,15 +370,105 @@ public class TaskTrackerGUI extends Application {
         getNextTask.setHgap(10);
         Label categoryString = new Label("Click Button to Select Next Task");
         Button getTask = new Button("Get Next Task");
-        getTask.setOnAction(actionEvent -> {
-            TaskNode taskNode = head.chooseTask();
-            categoryString.setText("Next Task: " + taskNode.getCategory());
-        });
+        // the name is read on the model thread along with the choice
+        TaskNode tree = head;
+        getTask.setOnAction(actionEvent -> model.submit("Choosing next task",
+                () -> {
+            TaskNode next = tree.chooseTask();
+            return next == null ? null : next.getCategory();
+        }, category -> {
+            if (category == null) {
+                categoryString.setText("All tasks completed");
+            } else {
+                categoryString.setText("Next Task: " + category);
+            }
+        }, Throwable::printStackTrace));
         getNextTask.add(categoryString, 0, 0);
         getNextTask.add(getTask, 0, 1);
         return getNextTask;
     }
 
+    // buildUpcomingPane
+    // create GridPane listing the next tasks due, in the order they would be
+    // chosen
+    private GridPane buildUpcomingPane() {
+        GridPane upcomingPane = new GridPane();
+        upcomingPane.setVgap(10);
+        upcoming = new ListView<>();
+        upcoming.setPrefHeight(HEIGHT / 4);
+        upcomingPane.add(new Label("Upcoming"), 0, 0);
+        upcomingPane.add(upcoming, 0, 1);
+        return upcomingPane;
+    }
+
+    // refreshUpcoming
+    // queue a refresh of the upcoming panel.  Called on the model thread;
+    // changes made before the refresh runs share it, so a burst of changes
+    // reads the agenda once.
+    private void refreshUpcoming(TaskNode tree) {
+        if (upcomingQueued) {
+            return;
+        }
+        upcomingQueued = true;
+        model.execute(() -> {
+            upcomingQueued = false;
+            List<String> rows = new ArrayList<>();
+            tree.agendaStream().limit(UPCOMING).forEach(task -> rows.add(
+                    task.getCategory() + "  " + task.getDueDateString()));
+            Platform.runLater(() -> upcoming.getItems().setAll(rows));
+        });
+    }
+
+    // buildSearchBar
+    // create search box that selects the tasks whose category contains the
+    // text entered, expanding the tree down to them
+    private HBox buildSearchBar() {
+        TextField search = new TextField();
+        search.setPromptText("Search tasks");
+        Label found = new Label();
+        TaskNode tree = head;
+        search.setOnAction(actionEvent -> model.submit("Searching",
+                () -> findPaths(tree, search.getText()), paths -> {
+            found.setText(paths.size() == SEARCH_LIMIT
+                          ? SEARCH_LIMIT + "+ found" : paths.size() + " found");
+            showMatches(paths);
+        }, Throwable::printStackTrace));
+        HBox searchBar = new HBox(10, search, found);
+        HBox.setHgrow(search, Priority.ALWAYS);
+        return searchBar;
+    }
+
+    // findPaths
+    // the path from the root down to each task found, on the model thread
+    private static List<List<TaskNode>> findPaths(TaskNode tree, String text) {
+        List<List<TaskNode>> paths = new ArrayList<>();
+        for (TaskNode match : tree.search(text, SEARCH_LIMIT)) {
+            List<TaskNode> path = new ArrayList<>();
+            for (TaskNode t = match; t != null; t = t.getParent()) {
+                path.add(t);
+            }
+            Collections.reverse(path);
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    // showMatches
+    // select the tasks found, scrolling to the first one shown
+    private void showMatches(List<List<TaskNode>> paths) {
+        MultipleSelectionModel<TreeItem<TaskNode>> selection =
+                taskList.getSelectionModel();
+        selection.clearSelection();
+        for (List<TaskNode> path : paths) {
+            root.reveal(path, 1, item -> {
+                if (selection.isEmpty()) {
+                    taskList.scrollTo(taskList.getRow(item));
+                }
+                selection.select(item);
+            });
+        }
+    }
+
     // makeInfoPane
     // create infoPane GridPane
     private GridPane makeInfoPane() {
@@ -293,15 +547,12 @@ public class TaskTrackerGUI extends Application {
                 taskNode.setTaskCount(tasks + startingIndex);
                 taskNode.setStartingIndex(startingIndex);
 
-                TaskNode parent = head;
-
-                if (!taskList.getSelectionModel().isEmpty()) {
-                    parent = taskList.getSelectionModel()
-                            .getSelectedItem().getValue();
-                }
-
-                parent.addChild(taskNode);
-                rebuildTreeView();
+                TaskNode selected = selectedTask();
+                TaskNode target = selected == null ? head : selected;
+                model.execute(() -> {
+                    journal(j -> j.logAdd(target, taskNode));
+                    target.addChild(taskNode);
+                });
             } catch (Exception ignored) {
             }
         });
@@ -317,78 +568,272 @@ public class TaskTrackerGUI extends Application {
         taskCreation.add(minute, 2, 2);
         taskCreation.add(pm, 3, 2);
         taskCreation.add(addTask, 0, 3);
+        taskCreation.add(importTasks(), 1, 3);
         return taskCreation;
     }
 
+    // importTasks
+    // make the button that imports a CSV or JSON Lines file of tasks under
+    // the selected task, parsed and attached in one go on the model thread
+    private Button importTasks() {
+        Button importTasks = new Button("Import Tasks...");
+        importTasks.setOnAction(actionEvent -> {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Import Tasks");
+            chooser.getExtensionFilters().addAll(
+                    new FileChooser.ExtensionFilter("Task lists", "*.csv",
+                            "*.jsonl", "*.json"),
+                    new FileChooser.ExtensionFilter("All files", "*.*"));
+            File file = chooser.showOpenDialog(stage);
+            if (file == null) {
+                return;
+            }
+
+            TaskNode selected = selectedTask();
+            TaskNode target = selected == null ? head : selected;
+            model.submit("Importing " + file.getName(), () -> {
+                List<TaskNode> tasks = TaskImporter.read(file);
+                journal(j -> j.logAddAll(target, tasks));
+                target.addChildren(tasks);
+                if (journal != null) {
+                    journal.checkpoint();
+                }
+                return tasks.size();
+            }, count -> {
+            }, e -> {
+                e.printStackTrace();
+                new Alert(Alert.AlertType.ERROR, file.getName()
+                        + " could not be imported.\n" + e.getMessage())
+                        .showAndWait();
+            });
+        });
+        return importTasks;
+    }
+
     // initializeEventHandlers
     // create event handlers for task selection pane
     private void InitializeEventHandlers() {
         markComplete.setOnAction(actionEvent -> {
-            if (!taskList.getSelectionModel().isEmpty()) {
-                TaskNode node = taskList.getSelectionModel()
-                        .getSelectedItem().getValue();
-                node.setCompleted(!node.isCompleted());
-                rebuildTreeView();
+            List<TaskNode> nodes = new ArrayList<>();
+            for (TreeItem<TaskNode> item
+                    : taskList.getSelectionModel().getSelectedItems()) {
+                if (item.getValue() != null) {
+                    nodes.add(item.getValue());
+                }
+            }
+            if (!nodes.isEmpty()) {
+                model.execute(() -> toggleCompleted(nodes));
             }
         });
 
         subdivide.setOnAction(actionEvent -> {
-            if (!taskList.getSelectionModel().isEmpty()) {
-                TaskNode node = taskList.getSelectionModel()
-                        .getSelectedItem().getValue();
-                node.subDivide(LocalDateTime.now());
-                rebuildTreeView();
+            TaskTreeItem item = (TaskTreeItem) taskList.getSelectionModel()
+                    .getSelectedItem();
+            if (item != null && item.getValue() != null) {
+                TaskNode node = item.getValue();
+                LocalDateTime start = LocalDateTime.now();
+                model.submit("Sub-dividing " + item.getLabel(), () -> {
+                    journal(j -> j.logSubDivide(node, start));
+                    return node.subDivide(start);
+                }, end -> {
+                }, Throwable::printStackTrace);
             }
         });
 
         taskList.setOnMousePressed(mouseEvent -> {
-            if (!taskList.getSelectionModel().isEmpty()) {
-                TaskNode node = taskList.getSelectionModel()
-                        .getSelectedItem().getValue();
-                currSelected.setText(node.toString());
-                dueDate.setText(node.getDueDateString());
-                taskAmount.setText("Sub-Task Count: " + node.getTaskCount());
-                String s = "NO";
-                if (node.isCompleted()) {
-                    s = "YES";
-                }
-                isComplete.setText("Completed: " + s);
+            TaskNode node = selectedTask();
+            if (node != null) {
+                showDetails(node);
             }
         });
     }
 
-    // rebuildTreeView
-    // Restructure tree view to show updated data structure
-    private void rebuildTreeView() {
-        root = buildSubTree(head);
-        taskList.setRoot(root);
-        root.setExpanded(true);
+    // selectedTask
+    // the task of the selected item, or null if nothing is selected or the
+    // item stands for chunks not made yet
+    private TaskNode selectedTask() {
+        TreeItem<TaskNode> item = taskList.getSelectionModel()
+                .getSelectedItem();
+        return item == null ? null : item.getValue();
+    }
+
+    // toggleCompleted
+    // complete the selected tasks in one batch, or reopen them if every one
+    // of them is completed already
+    private void toggleCompleted(List<TaskNode> nodes) {
+        boolean allCompleted = true;
+        for (TaskNode node : nodes) {
+            allCompleted &= node.isCompleted();
+        }
+        if (!allCompleted) {
+            journal(j -> j.logCompletedAll(nodes));
+            TaskNode.completeAll(nodes);
+            return;
+        }
+        for (TaskNode node : nodes) {
+            journal(j -> j.logCompleted(node, false));
+            node.setCompleted(false);
+        }
+    }
+
+    // showDetails
+    // fill the info pane in for a task, as the model thread sees it
+    private void showDetails(TaskNode node) {
+        model.query(() -> new String[]{node.toString(),
+                node.getDueDateString(), "Sub-Task Count: "
+                + node.getTaskCount(), node.isCompleted() ? "YES" : "NO"},
+                details -> {
+            currSelected.setText(details[0]);
+            dueDate.setText(details[1]);
+            taskAmount.setText(details[2]);
+            isComplete.setText("Completed: " + details[3]);
+        });
     }
 
     // buildTreePane
     // build tree view to display data structure
     private void buildTreePane() {
-        root = buildSubTree(head);
+        // the model thread has not been given the tree yet, so its name can
+        // still be read here
+        root = new TaskTreeItem(head, head.getCategory(), false, model);
         root.setExpanded(true);
         taskList = new TreeView<>(root);
+        taskList.setCellFactory(view -> new TaskCell());
+        taskList.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         rootpane = new StackPane();
         rootpane.getChildren().add(taskList);
         taskList.setPrefWidth(WIDTH);
+        TaskNode tree = head;
+        model.execute(() -> {
+            tree.addTreeListener(new TreeViewUpdater(tree));
+            refreshUpcoming(tree);
+            notifier = new DueDateNotifier(tree, LocalDateTime.now(),
+                    this::showDue);
+            notifier.advance(LocalDateTime.now());
+        });
+        reminders = new Timeline(new KeyFrame(Duration.minutes(1), event ->
+                model.execute(() -> notifier.advance(LocalDateTime.now()))));
+        reminders.setCycleCount(Timeline.INDEFINITE);
+        reminders.play();
+    }
+
+    // showDue
+    // tell the user about tasks that have become due, adding them to the
+    // notice if it is still open.  Called on the model thread.
+    private void showDue(List<TaskNode> tasks) {
+        StringBuilder text = new StringBuilder();
+        for (TaskNode task : tasks.subList(0, Math.min(DUE_LISTED,
+                tasks.size()))) {
+            text.append(task.getCategory()).append("  ")
+                    .append(task.getDueDateString()).append('\n');
+        }
+        if (tasks.size() > DUE_LISTED) {
+            text.append("and ").append(tasks.size() - DUE_LISTED)
+                    .append(" more\n");
+        }
+        Platform.runLater(() -> {
+            if (dueNotice == null) {
+                dueNotice = new Alert(Alert.AlertType.INFORMATION);
+                dueNotice.setTitle("Tasks due");
+                dueNotice.setHeaderText("Due now");
+                dueNotice.initModality(Modality.NONE);
+                dueNotice.initOwner(stage);
+            }
+            if (dueNotice.isShowing()) {
+                dueNotice.setContentText(dueNotice.getContentText() + text);
+            } else {
+                dueNotice.setContentText(text.toString());
+                dueNotice.show();
+            }
+        });
+    }
+
+    // TaskCell
+    // show the label an item was given on the model thread, rather than
+    // reading the task on the application thread
+    private static class TaskCell extends TreeCell<TaskNode> {
+
+        @Override
+        protected void updateItem(TaskNode node, boolean empty) {
+            super.updateItem(node, empty);
+            textProperty().unbind();
+            if (empty || !(getTreeItem() instanceof TaskTreeItem)) {
+                setText(null);
+            } else {
+                textProperty().bind(((TaskTreeItem) getTreeItem())
+                        .labelProperty());
+            }
+        }
     }
 
-    // buildSubTree
-    // recursively parse tree to build tree view representing data structure
-    private TreeItem<TaskNode> buildSubTree(TaskNode node) {
-        TreeItem<TaskNode> item = new TreeItem<>(node);
-        int index = 0;
-        TaskNode walker = node.getChild(index);
+    // TreeViewUpdater
+    // patch the items a change touched instead of rebuilding the tree view,
+    // so the cost follows the size of the change and selection is kept.
+    // Changes are reported on the model thread and applied on the
+    // application thread, in the order they happened.
+    // The upcoming panel is refreshed along with it.
+    private class TreeViewUpdater implements TaskTreeListener {
 
-        while (walker != null) {
-            item.getChildren().add(buildSubTree(walker));
-            item.setExpanded(true);
-            index++;
-            walker = node.getChild(index);
+        private final TaskNode tree;
+
+        TreeViewUpdater(TaskNode tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        public void taskAdded(TaskNode parent, TaskNode child) {
+            refreshUpcoming(tree);
+            TaskTreeItem.Child added = TaskTreeItem.Child.of(child);
+            TaskTreeItem.Child later = TaskTreeItem.Child.later(parent);
+            Platform.runLater(() -> {
+                TaskTreeItem item = root.find(parent);
+                if (item != null) {
+                    item.taskAdded(added, later);
+                }
+            });
+        }
+
+        // a batch is handed over in one go, so a large import is one update
+        // of the view rather than one per task
+        @Override
+        public void childrenAdded(TaskNode parent, List<TaskNode> children) {
+            refreshUpcoming(tree);
+            List<TaskTreeItem.Child> added = TaskTreeItem.list(children);
+            TaskTreeItem.Child later = TaskTreeItem.Child.later(parent);
+            Platform.runLater(() -> {
+                TaskTreeItem item = root.find(parent);
+                if (item != null) {
+                    item.childrenAdded(added, later);
+                }
+            });
+        }
+
+        @Override
+        public void childrenRemoved(TaskNode parent) {
+            refreshUpcoming(tree);
+            Platform.runLater(() -> {
+                TaskTreeItem item = root.find(parent);
+                if (item != null) {
+                    item.childrenRemoved();
+                }
+            });
+        }
+
+        @Override
+        public void taskChanged(TaskNode task) {
+            refreshUpcoming(tree);
+            String label = task.getCategory();
+            Platform.runLater(() -> {
+                TaskTreeItem item = root.find(task);
+                if (item != null) {
+                    item.taskChanged(label);
+                }
+                TreeItem<TaskNode> selected =
+                        taskList.getSelectionModel().getSelectedItem();
+                if (selected != null && selected.getValue() == task) {
+                    showDetails(task);
+                }
+            });
         }
-        return item;
     }
-}
\ No newline at end of file
+}
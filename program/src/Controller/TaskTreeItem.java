@@ -0,0 +1,284 @@
+/*
+  TaskTreeItem.java
+
+ * Tree view item for a TaskNode that only builds items for its children
+ * when it is first expanded, so opening a large tree does not read every
+ * task.  Collapsing an item lets the tree release children that were loaded
+ * from the snapshot and have not changed.
+ *
+ * Items of one tree share an index from task to item, so a change to the
+ * tree can be applied to just the items it touches.  Items live on the
+ * application thread and never read the tree themselves; children are
+ * listed by the model thread and filled in when the answer comes back.  The
+ * text an item shows is taken on the model thread too and handed over with
+ * the listing or the change that altered it, so a cell can be drawn while
+ * the model thread is changing the task.
+ *
+ * A sub-divided task only shows the day chunks made so far and any tasks
+ * added after them, followed by a placeholder for the chunks still to come;
+ * listing them must not make the rest.  The placeholder has no task and is
+ * always the last child.  A chunk made later goes in front of the tasks
+ * added after the chunks.
+ */
+
+package Controller;
+
+import dataStructure.TaskNode;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.ObservableList;
+import javafx.event.Event;
+import javafx.scene.control.TreeItem;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+class TaskTreeItem extends TreeItem<TaskNode> {
+
+    private final TaskModel model;
+    private final Map<TaskNode, TaskTreeItem> items;
+    private final ReadOnlyStringWrapper label;
+    private boolean leaf;
+
+    // children are listed once built; while loading, the listing is on its
+    // way and already covers every change reported before it
+    private boolean built;
+    private boolean loading;
+
+    // the placeholder for chunks not made yet, null if there are none
+    private TaskTreeItem more;
+
+    // work waiting for the children to be listed
+    private final List<Runnable> whenListed = new ArrayList<>();
+
+    // the label must have been read on the model thread, or before the tree
+    // was handed to it
+    TaskTreeItem(TaskNode node, String label, boolean leaf, TaskModel model) {
+        this(new Child(node, label, leaf, 0), model, new HashMap<>());
+    }
+
+    private TaskTreeItem(Child child, TaskModel model,
+                         Map<TaskNode, TaskTreeItem> items) {
+        super(child.node);
+        TaskNode node = child.node;
+        this.label = new ReadOnlyStringWrapper(child.label);
+        this.leaf = child.leaf;
+        this.model = model;
+        this.items = items;
+        if (node == null) {
+            return;
+        }
+        items.put(node, this);
+        expandedProperty().addListener((observable, was, expanded) -> {
+            if (!expanded && built && !loading) {
+                model.query(node::evict, evicted -> {
+                    if (evicted) {
+                        reload();
+                    }
+                });
+            }
+        });
+    }
+
+    // find
+    // return the item showing a task, or null if it has not been built
+    TaskTreeItem find(TaskNode node) {
+        return items.get(node);
+    }
+
+    // labelProperty
+    // the text to show for the task, as of the last change reported
+    ReadOnlyStringProperty labelProperty() {
+        return label.getReadOnlyProperty();
+    }
+
+    String getLabel() {
+        return label.get();
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return leaf;
+    }
+
+    // getChildren
+    // ask the model thread for the children the first time they are needed
+    @Override
+    public ObservableList<TreeItem<TaskNode>> getChildren() {
+        ObservableList<TreeItem<TaskNode>> children = super.getChildren();
+        if (!built) {
+            built = true;
+            loading = true;
+            TaskNode node = getValue();
+            model.query(() -> listChildren(node), listing -> {
+                loading = false;
+                for (Child child : listing) {
+                    TaskTreeItem item = new TaskTreeItem(child, model, items);
+                    children.add(item);
+                    if (child.node == null) {
+                        more = item;
+                    }
+                }
+                List<Runnable> waiting = new ArrayList<>(whenListed);
+                whenListed.clear();
+                waiting.forEach(Runnable::run);
+            });
+        }
+        return children;
+    }
+
+    // reveal
+    // expand the items down a path of tasks that starts with this item's
+    // children, listing them as needed, and hand the item at the end of the
+    // path to found.  Gives up quietly if a task on the path is not shown
+    // any more.
+    void reveal(List<TaskNode> path, int index, Consumer<TaskTreeItem> found) {
+        if (index == path.size()) {
+            found.accept(this);
+            return;
+        }
+        setExpanded(true);
+        getChildren();
+        if (loading) {
+            whenListed.add(() -> reveal(path, index, found));
+            return;
+        }
+        TaskTreeItem child = items.get(path.get(index));
+        if (child != null && child.getParent() == this) {
+            child.reveal(path, index + 1, found);
+        }
+    }
+
+    // taskAdded
+    // show a new child where the task has it, if the children are shown at
+    // all, and the placeholder for the chunks still to come, if any
+    void taskAdded(Child child, Child later) {
+        childrenAdded(Collections.singletonList(child), later);
+    }
+
+    // childrenAdded
+    // show several new children next to each other at once, if the
+    // children are shown at all
+    void childrenAdded(List<Child> added, Child later) {
+        leaf = false;
+        if (built && !loading) {
+            List<TaskTreeItem> made = new ArrayList<>(added.size() + 1);
+            for (Child child : added) {
+                made.add(new TaskTreeItem(child, model, items));
+            }
+            ObservableList<TreeItem<TaskNode>> children = super.getChildren();
+            children.remove(more);
+            more = null;
+            children.addAll(Math.min(added.get(0).position, children.size()),
+                    made);
+            if (later != null) {
+                more = new TaskTreeItem(later, model, items);
+                children.add(more);
+            }
+        }
+        redraw();
+    }
+
+    // childrenRemoved
+    // drop the items of every child
+    void childrenRemoved() {
+        leaf = true;
+        if (!loading) {
+            clear();
+        }
+        redraw();
+    }
+
+    // taskChanged
+    // show the text the task has now, read on the model thread
+    void taskChanged(String text) {
+        label.set(text);
+        redraw();
+    }
+
+    // redraw this item, its task object stays the same
+    private void redraw() {
+        Event.fireEvent(this, new TreeModificationEvent<>(valueChangedEvent(),
+                this, getValue()));
+    }
+
+    // the tree released the children, list them again if they are showing
+    private void reload() {
+        clear();
+        built = false;
+        if (isExpanded()) {
+            getChildren();
+        }
+    }
+
+    // remove the child items and everything below them from the index
+    private void clear() {
+        for (TreeItem<TaskNode> child : super.getChildren()) {
+            if (child != more) {
+                ((TaskTreeItem) child).clear();
+                items.remove(child.getValue());
+            }
+        }
+        more = null;
+        super.getChildren().clear();
+    }
+
+    // list
+    // what the items of some tasks need to know, on the model thread
+    static List<Child> list(List<TaskNode> nodes) {
+        List<Child> listing = new ArrayList<>(nodes.size());
+        for (TaskNode node : nodes) {
+            listing.add(Child.of(node));
+        }
+        return listing;
+    }
+
+    // runs on the model thread
+    private static List<Child> listChildren(TaskNode node) {
+        List<Child> listing = list(node.listMadeChildren());
+        Child later = Child.later(node);
+        if (later != null) {
+            listing.add(later);
+        }
+        return listing;
+    }
+
+    static final class Child {
+        final TaskNode node;
+        final String label;
+        final boolean leaf;
+
+        // where the task is among its parent's children made so far
+        final int position;
+
+        private Child(TaskNode node, String label, boolean leaf,
+                      int position) {
+            this.node = node;
+            this.label = label;
+            this.leaf = leaf;
+            this.position = position;
+        }
+
+        // runs on the model thread
+        static Child of(TaskNode node) {
+            return new Child(node, node.getCategory(), !node.hasChildren(),
+                    node.getPosition());
+        }
+
+        // the placeholder for a task's chunks not made yet, or null if
+        // there are none; runs on the model thread
+        static Child later(TaskNode node) {
+            LocalDateTime until = node.getPlannedUntil();
+            if (until == null) {
+                return null;
+            }
+            return new Child(null, "more chunks, made as these are done,"
+                    + " until " + until.toLocalDate(), true, -1);
+        }
+    }
+}
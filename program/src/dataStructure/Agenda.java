@@ -0,0 +1,242 @@
+package dataStructure;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Agenda
+ * The incomplete tasks of a subtree in the order chooseTask would return
+ * them if each were completed in turn, worked out without changing the
+ * tree.  It is a lazy k-way merge: a subtree is only opened once its
+ * earliest due date comes up, and then its incomplete children are heaped
+ * by the same earliest due dates and merged with everything else open.
+ * Taking k tasks costs O(k log n) plus the children of the subtrees opened
+ * on the way; subtrees due later are never looked at.
+ *
+ * Chunks of a sub-divided task that have not been made yet are returned as
+ * previews, tasks with the name and due date the chunk will have that are
+ * not part of the tree.  Subtrees still on disk are read when they are
+ * opened, as chooseTask would.  The tree must not change while an agenda is
+ * being read.
+ */
+final class Agenda implements Iterator<TaskNode> {
+
+    // sources of tasks, ordered by the next task or subtree each has
+    private final PriorityQueue<Source> sources = new PriorityQueue<>();
+
+    Agenda(TaskNode top) {
+        if (!top.isCompleted()) {
+            sources.add(new Children(single(Item.of(top))));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        // every subtree left to open holds at least one task, itself if
+        // nothing else
+        return !sources.isEmpty();
+    }
+
+    @Override
+    public TaskNode next() {
+        while (!sources.isEmpty()) {
+            Source source = sources.poll();
+            Item item = source.take();
+            if (source.head != null) {
+                sources.add(source);
+            }
+            if (!item.open) {
+                return item.node;
+            }
+            open(item.node);
+        }
+        throw new NoSuchElementException();
+    }
+
+    // merge in the incomplete children of a subtree and its chunks to come
+    private void open(TaskNode node) {
+        node.loadChildren();
+        List<Item> children = new ArrayList<>();
+        for (TaskNode child : node.getChildren()) {
+            if (!child.isCompleted()) {
+                children.add(Item.of(child));
+            }
+        }
+        ChunkPlan plan = node.getChunkPlan();
+        if (plan != null) {
+            Chunks chunks = new Chunks(node, plan.cursorAt(
+                    node.getChunksMade() - 1));
+            if (chunks.head != null) {
+                sources.add(chunks);
+            }
+        }
+        if (!children.isEmpty()) {
+            sources.add(new Children(new PriorityQueue<>(children)));
+        } else if (plan == null) {
+            // nothing below is left to do, so the task itself is
+            sources.add(new Children(single(Item.task(node, null))));
+        }
+    }
+
+    private static PriorityQueue<Item> single(Item item) {
+        PriorityQueue<Item> items = new PriorityQueue<>(1);
+        items.add(item);
+        return items;
+    }
+
+    /**
+     * Item
+     * A task the agenda can return, or a subtree still to be opened.  Items
+     * are ordered by earliest due date, with a subtree ahead of a task due at
+     * the same time since it may hold one that wins the tie; tasks due
+     * together are then ordered as TaskScheduler.precedes orders them.
+     */
+    private static final class Item implements Comparable<Item> {
+        final TaskNode node;
+
+        // the task a preview is a chunk of, null for tasks in the tree
+        final TaskNode planned;
+
+        final boolean open;
+        final long due;
+
+        private Item(TaskNode node, TaskNode planned, boolean open) {
+            this.node = node;
+            this.planned = planned;
+            this.open = open;
+            this.due = node.getPackedDueDateChild();
+        }
+
+        static Item of(TaskNode node) {
+            boolean open = node.isUnloaded() || node.getPendingChildren() > 0
+                           || node.getChunkPlan() != null;
+            return new Item(node, null, open);
+        }
+
+        static Item task(TaskNode node, TaskNode planned) {
+            return new Item(node, planned, false);
+        }
+
+        @Override
+        public int compareTo(Item other) {
+            if (due != other.due) {
+                return Long.compare(due, other.due);
+            }
+            if (open != other.open) {
+                return open ? -1 : 1;
+            }
+            if (open) {
+                return 0;
+            }
+            int compare = node.compareTo(other.node);
+            if (compare != 0) {
+                return compare;
+            }
+            if (node.getNumOfChildren() != other.node.getNumOfChildren()) {
+                return Integer.compare(other.node.getNumOfChildren(),
+                        node.getNumOfChildren());
+            }
+            return compareTreeOrder(other);
+        }
+
+        // a preview comes after the chunks already made of the task it is a
+        // chunk of and before the children added after the plan, by the
+        // index the chunk will have once it is made
+        private int compareTreeOrder(Item other) {
+            if (planned == null && other.planned == null) {
+                return TaskScheduler.compareTreeOrder(node, other.node);
+            }
+            if (planned == null) {
+                return -other.compareTreeOrder(this);
+            }
+            TaskNode them = other.planned == null ? other.node : other.planned;
+            if (planned == them) {
+                return other.planned == null ? 1 : 0;
+            }
+            if (isBelow(them, planned)) {
+                return Integer.compare(node.getChildIndex(),
+                        childOf(planned, them).getChildIndex());
+            }
+            if (isBelow(planned, them)) {
+                return other.planned == null ? 1
+                       : -other.compareTreeOrder(this);
+            }
+            return TaskScheduler.compareTreeOrder(planned, them);
+        }
+
+        // the child of ancestor that node is at or below
+        private static TaskNode childOf(TaskNode ancestor, TaskNode node) {
+            while (node.getParent() != ancestor) {
+                node = node.getParent();
+            }
+            return node;
+        }
+
+        // whether node is a strict descendant of ancestor
+        private static boolean isBelow(TaskNode node, TaskNode ancestor) {
+            for (TaskNode n = node.getParent(); n != null; n = n.getParent()) {
+                if (n == ancestor) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // a run of items in order, led by head
+    private abstract static class Source implements Comparable<Source> {
+        Item head;
+
+        // return the head and move on to the next item
+        abstract Item take();
+
+        @Override
+        public int compareTo(Source other) {
+            return head.compareTo(other.head);
+        }
+    }
+
+    // the incomplete children of an open subtree
+    private static final class Children extends Source {
+        private final PriorityQueue<Item> items;
+
+        Children(PriorityQueue<Item> items) {
+            this.items = items;
+            head = items.peek();
+        }
+
+        @Override
+        Item take() {
+            Item item = items.poll();
+            head = items.peek();
+            return item;
+        }
+    }
+
+    // the chunks of a plan after those already made
+    private static final class Chunks extends Source {
+        private final TaskNode task;
+        private final ChunkPlan.Cursor cursor;
+
+        Chunks(TaskNode task, ChunkPlan.Cursor cursor) {
+            this.task = task;
+            this.cursor = cursor;
+            head = preview();
+        }
+
+        @Override
+        Item take() {
+            Item item = head;
+            head = preview();
+            return item;
+        }
+
+        private Item preview() {
+            return cursor.advance() ? Item.task(task.chunkOf(cursor), task)
+                                    : null;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package dataStructure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * CategoryIndex
+ * Search index over the categories of the tasks of one tree that are in
+ * memory.  A category is split into words, runs of letters and digits in
+ * lower case, and each word lists the tasks using it.  Words are kept
+ * sorted, so the words starting with some text are a range of them, and
+ * every three characters of a word list the words they occur in, so the words
+ * containing some text are found from its rarest three characters.
+ *
+ * There are far fewer distinct words than tasks, since chunks repeat the
+ * name of the task they split and count with the same few numbers, so only
+ * the lists of tasks grow with the tree.  Those are identity sets, a fraction
+ * of the size of a hash set, which leaves the order of results unspecified.
+ * A category with no word in it is listed under the empty word.
+ */
+final class CategoryIndex {
+
+    private static final int GRAM = 3;
+
+    // tasks by word, each a TaskNode or a Set of them
+    private final TreeMap<String, Object> words = new TreeMap<>();
+
+    // words by the runs of GRAM characters in them
+    private final Map<String, Set<String>> grams = new HashMap<>();
+
+    private int size;
+
+    /**
+     * add
+     * Index a task that is now part of the tree.
+     *
+     * @param node the task
+     */
+    void add(TaskNode node) {
+        boolean added = false;
+        for (String word : words(node.getCategory())) {
+            Object value = words.get(word);
+            if (value == null) {
+                words.put(word, node);
+                addGrams(word);
+                added = true;
+            } else if (value instanceof TaskNode) {
+                if (value != node) {
+                    Set<TaskNode> shared = newSet();
+                    shared.add((TaskNode) value);
+                    shared.add(node);
+                    words.put(word, shared);
+                    added = true;
+                }
+            } else {
+                added |= nodes(value).add(node);
+            }
+        }
+        if (added) {
+            size++;
+        }
+    }
+
+    /**
+     * remove
+     * Drop a task that has left the tree.
+     *
+     * @param node the task
+     */
+    void remove(TaskNode node) {
+        boolean removed = false;
+        for (String word : words(node.getCategory())) {
+            Object value = words.get(word);
+            if (value == node) {
+                words.remove(word);
+                removeGrams(word);
+                removed = true;
+            } else if (value != null && !(value instanceof TaskNode)) {
+                Set<TaskNode> shared = nodes(value);
+                removed |= shared.remove(node);
+                if (shared.size() == 1) {
+                    words.put(word, shared.iterator().next());
+                }
+            }
+        }
+        if (removed) {
+            size--;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * search
+     * Return up to limit tasks whose category contains some text, ignoring
+     * case.  A word in the middle of the text must be a whole word of the
+     * category, the last may be the start of one, and otherwise the words
+     * containing it are found from their runs of three characters.  Of the
+     * words of the text, the one listing the fewest tasks is looked up and
+     * only those tasks are checked, so the cost follows how rare the rarest
+     * word is, not the size of the tree.  Text with no word in it checks
+     * every task.
+     *
+     * @param text  the text to look for
+     * @param limit the most tasks to return
+     * @return the matching tasks
+     */
+    List<TaskNode> search(String text, int limit) {
+        String query = text.toLowerCase(Locale.ROOT);
+        List<TaskNode> found = new ArrayList<>();
+        if (query.trim().isEmpty() || limit <= 0) {
+            return found;
+        }
+        Collection<String> candidates = candidates(query);
+        // a task is listed under each of its words
+        Set<TaskNode> seen = candidates.size() > 1 ? newSet() : null;
+        for (String word : candidates) {
+            for (TaskNode node : postings(words.get(word))) {
+                if ((seen == null || seen.add(node))
+                    && contains(node.getCategory(), query)) {
+                    found.add(node);
+                    if (found.size() == limit) {
+                        return found;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // the indexed words listing the fewest tasks of those that a category
+    // containing the query must use one of
+    private Collection<String> candidates(String query) {
+        Collection<String> best = words.keySet();
+        long fewest = Long.MAX_VALUE;
+        for (int[] run : runs(query)) {
+            Collection<String> matches = matches(query, run);
+            long count = 0;
+            for (String word : matches) {
+                count += postings(words.get(word)).size();
+            }
+            if (count < fewest) {
+                best = matches;
+                fewest = count;
+            }
+        }
+        return best;
+    }
+
+    // the indexed words one run of the query can be part of
+    private Collection<String> matches(String query, int[] run) {
+        String part = query.substring(run[0], run[1]);
+        boolean whole = run[0] > 0 && run[1] < query.length();
+        if (whole) {
+            // cut off on both sides, so it is the whole word
+            return words.containsKey(part) ? Collections.singletonList(part)
+                                           : Collections.<String>emptyList();
+        }
+        if (run[0] > 0) {
+            // text comes before it, so it starts a word
+            return words.subMap(part, true, part + Character.MAX_VALUE, false)
+                    .keySet();
+        }
+        return containing(part);
+    }
+
+    // the words containing part, from the rarest run of GRAM in it
+    private Collection<String> containing(String part) {
+        if (part.length() < GRAM) {
+            List<String> matches = new ArrayList<>();
+            for (String word : words.keySet()) {
+                if (word.contains(part)) {
+                    matches.add(word);
+                }
+            }
+            return matches;
+        }
+        Set<String> rarest = null;
+        for (int i = 0; i + GRAM <= part.length(); i++) {
+            Set<String> gram = grams.get(part.substring(i, i + GRAM));
+            if (gram == null) {
+                return Collections.emptyList();
+            }
+            if (rarest == null || gram.size() < rarest.size()) {
+                rarest = gram;
+            }
+        }
+        List<String> matches = new ArrayList<>();
+        for (String word : rarest) {
+            if (word.contains(part)) {
+                matches.add(word);
+            }
+        }
+        return matches;
+    }
+
+    private void addGrams(String word) {
+        for (int i = 0; i + GRAM <= word.length(); i++) {
+            grams.computeIfAbsent(word.substring(i, i + GRAM),
+                    gram -> new LinkedHashSet<>()).add(word);
+        }
+    }
+
+    private void removeGrams(String word) {
+        for (int i = 0; i + GRAM <= word.length(); i++) {
+            String gram = word.substring(i, i + GRAM);
+            Set<String> listed = grams.get(gram);
+            if (listed != null && listed.remove(word) && listed.isEmpty()) {
+                grams.remove(gram);
+            }
+        }
+    }
+
+    // the distinct words of a category a task is listed under
+    private static Set<String> words(String category) {
+        String text = category == null ? "" : category.toLowerCase(Locale.ROOT);
+        Set<String> words = new LinkedHashSet<>();
+        for (int[] run : runs(text)) {
+            words.add(text.substring(run[0], run[1]));
+        }
+        if (words.isEmpty()) {
+            words.add("");
+        }
+        return words;
+    }
+
+    // start and end of each run of letters and digits
+    private static List<int[]> runs(String text) {
+        List<int[]> runs = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length()
+                             && Character.isLetterOrDigit(text.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                runs.add(new int[]{start, i});
+                start = -1;
+            }
+        }
+        return runs;
+    }
+
+    private static Set<TaskNode> newSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    // whether a category contains lower case text, ignoring case
+    private static boolean contains(String category, String text) {
+        if (category == null) {
+            return false;
+        }
+        for (int i = 0; i + text.length() <= category.length(); i++) {
+            if (category.regionMatches(true, i, text, 0, text.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Collection<TaskNode> postings(Object value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        return value instanceof TaskNode
+               ? Collections.singletonList((TaskNode) value) : nodes(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<TaskNode> nodes(Object value) {
+        return (Set<TaskNode>) value;
+    }
+}
@@ -0,0 +1,176 @@
+package dataStructure;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+import static java.time.temporal.ChronoUnit.DAYS;
+
+/**
+ * ChunkPlan
+ * How a sub-divided task spreads its tasks over the days left before it is
+ * due.  The plan only keeps the numbers the day chunks follow from; each
+ * chunk's range, name and due date are worked out when the chunk is made,
+ * so a task costs the same however many days it covers.  Chunks are made in
+ * order and their due dates strictly increase, so the first incomplete one
+ * is always the earliest.
+ *
+ * A plan is immutable and may be shared, for example with a TaskView.  The
+ * position of the next chunk to make is kept in a Cursor.
+ */
+final class ChunkPlan implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final long MINUTES_PER_DAY = 24 * 60;
+
+    private final long start;
+    private final int startingIndex;
+    private final int taskCount;
+    private final double tasksPerDay;
+
+    // where the chunks end, once the plan has been walked
+    private transient volatile End end;
+
+    private ChunkPlan(long start, int startingIndex, int taskCount,
+                      double tasksPerDay) {
+        this.start = start;
+        this.startingIndex = startingIndex;
+        this.taskCount = taskCount;
+        this.tasksPerDay = tasksPerDay;
+    }
+
+    /**
+     * of
+     * Plan a task's remaining tasks from a starting point up to its due date.
+     *
+     * @param start         packed date of the first day
+     * @param startingIndex first task not done yet
+     * @param taskCount     number of tasks
+     * @param dueDate       packed due date of the task
+     * @return the plan, or null if it would not have any chunks
+     */
+    static ChunkPlan of(long start, int startingIndex, int taskCount,
+                        long dueDate) {
+        LocalDateTime then = DueDates.unpack(dueDate);
+        int numOfDays = (int) DueDates.unpack(start).until(then, DAYS);
+        if (taskCount == 0 || numOfDays <= 0) {
+            return null;
+        }
+        ChunkPlan plan = new ChunkPlan(start, startingIndex, taskCount,
+                ((double) taskCount) / numOfDays);
+        return plan.cursor().advance() ? plan : null;
+    }
+
+    // packed date of the first day
+    long getStart() {
+        return start;
+    }
+
+    Cursor cursor() {
+        return new Cursor(this);
+    }
+
+    // a cursor at the chunk with the given index, or as near as there is
+    Cursor cursorAt(int position) {
+        Cursor cursor = cursor();
+        while (cursor.position < position && cursor.advance()) {
+            // skip the chunks before it
+        }
+        return cursor;
+    }
+
+    /**
+     * lastDueDate
+     * Return the due date of the last chunk without making any of them.
+     */
+    long lastDueDate() {
+        return end().dueDate;
+    }
+
+    // how many chunks the plan makes in all
+    int chunkCount() {
+        return end().count;
+    }
+
+    // the day boundaries are added up the way the chunks are, so rounding
+    // lands them on the same days; the plan is walked once and the end kept
+    private End end() {
+        End known = end;
+        if (known == null) {
+            Cursor cursor = cursor();
+            long last = start;
+            while (cursor.advance()) {
+                last = cursor.dueDate;
+            }
+            known = new End(last, cursor.position + 1);
+            end = known;
+        }
+        return known;
+    }
+
+    private static final class End {
+        final long dueDate;
+        final int count;
+
+        End(long dueDate, int count) {
+            this.dueDate = dueDate;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Cursor
+     * Walks the chunks of a plan in order.  After advance returns true the
+     * fields describe the chunk that was reached.
+     */
+    static final class Cursor {
+        final ChunkPlan plan;
+
+        // index of the chunk reached, -1 before the first
+        int position = -1;
+
+        int first;
+        int last;
+        long dueDate;
+
+        // where the next day starts
+        private double index;
+        private int dayCount;
+
+        private Cursor(ChunkPlan plan) {
+            this.plan = plan;
+            this.index = plan.startingIndex;
+        }
+
+        /**
+         * advance
+         * Move to the next chunk.  Days too short to finish a task on are
+         * skipped, which is how a plan with fewer tasks than days spreads
+         * them out.
+         *
+         * @return false once there are no chunks left
+         */
+        boolean advance() {
+            for (double i = index; i < plan.taskCount;
+                 i += plan.tasksPerDay) {
+                double end = i + plan.tasksPerDay;
+                if ((int) end - (int) i == 0) { // same task as tomorrow
+                    dayCount++; // skip today
+                    continue;
+                }
+                end = end - 1; // don't repeat tomorrow's first task
+                if (end >= plan.taskCount) {
+                    end = plan.taskCount - 1;
+                }
+                first = (int) i;
+                last = (int) end;
+                dueDate = plan.start + MINUTES_PER_DAY * dayCount;
+                position++;
+                index = i + plan.tasksPerDay;
+                dayCount++;
+                return true;
+            }
+            index = plan.taskCount;
+            return false;
+        }
+    }
+}
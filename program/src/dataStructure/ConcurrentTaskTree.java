@@ -0,0 +1,527 @@
+package dataStructure;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ConcurrentTaskTree
+ * Task tree that many threads can share.  Changes are made one at a time
+ * under a lock and each one publishes a new immutable version of the tree as
+ * a TaskView.  Readers take the current version without locking and can walk
+ * it, choose from it or save it for as long as they like while writers carry
+ * on.
+ *
+ * Writers are serialized rather than striped: every change passes due dates
+ * up to the root and re-keys the scheduler heap, so any two changes meet at
+ * the root anyway.  Publishing a version copies only the views on the path
+ * of each changed task, O(depth) per change.  ContentionBenchmark measures
+ * writers on disjoint subtrees of one tree against a single writer and
+ * against writers each on a tree of its own, the most a lock per subtree
+ * could give; writers that need that much get a shard each from TaskForest.
+ *
+ * Since versions share every subtree that did not change, keeping earlier
+ * ones costs O(depth) per change, so changes can be undone and redone: the
+ * live tree is walked back to an earlier version along the paths where the
+ * two differ, reusing the tasks both still hold.
+ *
+ * Once wrapped, the tree must only be changed through this class.  The whole
+ * tree is loaded into memory, including parts still kept in a snapshot.
+ */
+public class ConcurrentTaskTree {
+
+    // how many changes can be undone
+    private static final int HISTORY = 100;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TaskNode head;
+    private final TaskJournal journal;
+
+    // version being built by the current change, guarded by lock
+    private TaskView working;
+    private long version;
+
+    // versions before each change that can be undone and after each undone
+    // change, latest last, guarded by lock
+    private final Deque<TaskView> undone = new ArrayDeque<>();
+    private final Deque<TaskView> redone = new ArrayDeque<>();
+
+    // the agenda last worked out and the version it is for, kept until the
+    // next change, guarded by lock
+    private List<TaskView> agenda = new ArrayList<>();
+    private long agendaVersion = -1;
+    private boolean agendaEnded;
+
+    private volatile TaskView current;
+
+    // the task chosen from a version, so it is only worked out once for
+    // each version however many readers ask
+    private volatile Choice choice;
+
+    public ConcurrentTaskTree(TaskNode head) {
+        this(head, null);
+    }
+
+    /**
+     * ConcurrentTaskTree
+     * Share a tree, journaling every change made through it.
+     *
+     * @param head    root of the tree
+     * @param journal journal the tree was loaded from, or null
+     */
+    public ConcurrentTaskTree(TaskNode head, TaskJournal journal) {
+        if (head.getParent() != null) {
+            throw new IllegalArgumentException(head + " is not a root");
+        }
+        this.head = head;
+        this.journal = journal;
+        lock.lock();
+        try {
+            working = current = TaskView.of(head, version);
+            head.addTreeListener(new Updater());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * snapshot
+     * Return the latest version of the tree, without waiting for writers.
+     */
+    public TaskView snapshot() {
+        return current;
+    }
+
+    /**
+     * chooseTask
+     * Return the task chooseTask picks from the latest version, worked out
+     * once per version and without waiting for writers.
+     */
+    public TaskView chooseTask() {
+        TaskView version = current;
+        Choice chosen = choice;
+        if (chosen == null || chosen.version != version) {
+            // readers racing here choose the same task, so any may win
+            chosen = new Choice(version, version.chooseTask());
+            choice = chosen;
+        }
+        return chosen.task;
+    }
+
+    /**
+     * addChild
+     * Add a task under a parent and return its view in the new version.
+     *
+     * @param parent the parent, from any version still in the tree
+     * @param child  the new task
+     * @return the view of child
+     */
+    public TaskView addChild(TaskView parent, TaskNode child)
+            throws IOException {
+        lock.lock();
+        try {
+            TaskNode node = begin(parent);
+            if (journal != null) {
+                journal.logAdd(node, child);
+            }
+            node.addChild(child);
+            return viewOf(child);
+        } finally {
+            publish();
+        }
+    }
+
+    /**
+     * setCompleted
+     * Complete or reopen a task and return its view in the new version.  A
+     * completion can take the task out of the tree, when its parent runs out
+     * of work and is pruned or when the last of a series is done; the view
+     * is then of the task on its own.
+     *
+     * @param task      the task, from any version still in the tree
+     * @param completed whether it is done
+     * @return the view of the task as the change left it
+     */
+    public TaskView setCompleted(TaskView task, boolean completed)
+            throws IOException {
+        lock.lock();
+        try {
+            TaskNode node = begin(task);
+            if (journal != null) {
+                journal.logCompleted(node, completed);
+            }
+            node.setCompleted(completed);
+            return viewOf(node);
+        } finally {
+            publish();
+        }
+    }
+
+    public LocalDateTime subDivide(TaskView task, LocalDateTime startingPoint)
+            throws IOException {
+        lock.lock();
+        try {
+            TaskNode node = begin(task);
+            if (journal != null) {
+                journal.logSubDivide(node, startingPoint);
+            }
+            return node.subDivide(startingPoint);
+        } finally {
+            publish();
+        }
+    }
+
+    public void setRecurrence(TaskView task, Recurrence recurrence)
+            throws IOException {
+        lock.lock();
+        try {
+            TaskNode node = begin(task);
+            if (journal != null) {
+                journal.logRecurrence(node, recurrence);
+            }
+            node.setRecurrence(recurrence);
+        } finally {
+            publish();
+        }
+    }
+
+    /**
+     * agenda
+     * Return the next incomplete tasks in the order chooseTask would return
+     * them, as TaskNode.agenda does.  Chunks not made yet are views of
+     * previews that are not part of the tree.  Writers wait while it is
+     * worked out, O(limit log n), but it is kept until the next change, so
+     * asking again in between costs O(limit).
+     *
+     * @param limit the most tasks to return
+     * @return the tasks, in order
+     */
+    public List<TaskView> agenda(int limit) {
+        lock.lock();
+        try {
+            if (agendaVersion != version
+                || agenda.size() < limit && !agendaEnded) {
+                agenda = new ArrayList<>();
+                Iterator<TaskNode> tasks = head.agenda();
+                while (agenda.size() < limit && tasks.hasNext()) {
+                    agenda.add(viewOf(tasks.next()));
+                }
+                agendaVersion = version;
+                agendaEnded = !tasks.hasNext();
+            }
+            return Collections.unmodifiableList(new ArrayList<>(
+                    agenda.subList(0, Math.min(limit, agenda.size()))));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * latest
+     * Return the view of a task in the latest version, or of the task on its
+     * own if it is no longer in the tree.  Writers wait for O(depth).
+     *
+     * @param task a view from any version
+     */
+    public TaskView latest(TaskView task) {
+        lock.lock();
+        try {
+            return viewOf(task.source);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * pathOf
+     * Return the child indexes leading from the root down to the task a
+     * view was copied from, or null if it is not in the tree.  Writers wait
+     * for O(depth).
+     *
+     * @param task a view from any version
+     * @return the indexes, empty for the root
+     */
+    public int[] pathOf(TaskView task) {
+        lock.lock();
+        try {
+            return path(task.source);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * undo
+     * Put the tree back the way it was before the last change made through
+     * this class, including the children a completion dropped.  Only the
+     * tasks on paths that differ between the two versions are touched, and
+     * only they are journaled, as they end up.
+     *
+     * @return false if there was nothing to undo
+     */
+    public boolean undo() throws IOException {
+        return revert(undone, redone);
+    }
+
+    /**
+     * redo
+     * Make the last change undone again, unless something else has changed
+     * since.
+     *
+     * @return false if there was nothing to redo
+     */
+    public boolean redo() throws IOException {
+        return revert(redone, undone);
+    }
+
+    public boolean canUndo() {
+        lock.lock();
+        try {
+            return !undone.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean canRedo() {
+        lock.lock();
+        try {
+            return !redone.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * checkpoint
+     * Fold the journal into a new snapshot.  Writers wait while it runs;
+     * readers do not.
+     */
+    public void checkpoint() throws IOException {
+        lock.lock();
+        try {
+            if (journal != null) {
+                journal.checkpoint();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // start a change to the live task a view was copied from
+    private TaskNode begin(TaskView view) {
+        TaskNode root = view.source;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        if (root != head) {
+            throw new IllegalArgumentException(view
+                                               + " is no longer in the tree");
+        }
+        // kept only if the change turns out to change anything
+        undone.addLast(working);
+        redone.clear();
+        version++;
+        return view.source;
+    }
+
+    // keep a version to go back to, forgetting the oldest past HISTORY
+    private void remember(Deque<TaskView> versions, TaskView version) {
+        versions.addLast(version);
+        if (versions.size() > HISTORY) {
+            versions.removeFirst();
+        }
+    }
+
+    // go back to the latest version of one history, keeping the current one
+    // in the other
+    private boolean revert(Deque<TaskView> from, Deque<TaskView> to)
+            throws IOException {
+        lock.lock();
+        try {
+            if (from.isEmpty()) {
+                return false;
+            }
+            TaskView target = from.removeLast();
+            remember(to, working);
+            version++;
+            revertTo(target);
+            return true;
+        } finally {
+            publish();
+        }
+    }
+
+    /**
+     * revertTo
+     * Change the live tree to match an earlier version.  Both versions are
+     * walked together from the root, skipping subtrees they share.  A task
+     * still at the same place in both keeps its live node and is reverted
+     * in place; anything else is copied from the earlier version.  Children
+     * are reverted before their parents, so each parent sees its children as
+     * they end up.  The whole revert is journaled before any of it is done.
+     */
+    private void revertTo(TaskView target) throws IOException {
+        Deque<TaskView[]> pairs = new ArrayDeque<>();
+        Deque<TaskView[]> order = new ArrayDeque<>();
+        if (working != target) {
+            pairs.push(new TaskView[] {working, target});
+        }
+        while (!pairs.isEmpty()) {
+            TaskView[] pair = pairs.pop();
+            order.push(pair);
+            TaskView now = pair[0];
+            TaskView then = pair[1];
+            for (int i = 0; i < then.getChildCount(); i++) {
+                TaskView after = then.getChildAt(i);
+                TaskView before = now.getChild(then.getIndexAt(i));
+                if (before != null && before.source == after.source
+                    && before != after) {
+                    pairs.push(new TaskView[] {before, after});
+                }
+            }
+        }
+        List<TaskNode> tasks = new ArrayList<>();
+        List<TaskNode> states = new ArrayList<>();
+        List<List<TaskNode>> children = new ArrayList<>();
+        for (TaskView[] pair : order) {
+            TaskView now = pair[0];
+            TaskView then = pair[1];
+            List<TaskNode> kept = new ArrayList<>();
+            for (int i = 0; i < then.getChildCount(); i++) {
+                TaskView after = then.getChildAt(i);
+                TaskView before = now.getChild(then.getIndexAt(i));
+                kept.add(before != null && before.source == after.source
+                         ? after.source : after.copy());
+            }
+            tasks.add(now.source);
+            states.add(TaskView.copyOf(then));
+            children.add(kept);
+        }
+        if (journal != null) {
+            journal.logRevert(tasks, states, children);
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).revert(states.get(i), children.get(i));
+        }
+    }
+
+    // the child indexes from the root down to a live task, null if it is
+    // not in the tree
+    private int[] path(TaskNode node) {
+        int depth = 0;
+        TaskNode root = node;
+        for (; root.getParent() != null; root = root.getParent()) {
+            depth++;
+        }
+        if (root != head) {
+            return null;
+        }
+        int[] path = new int[depth];
+        for (TaskNode n = node; n != head; n = n.getParent()) {
+            path[--depth] = n.getChildIndex();
+        }
+        return path;
+    }
+
+    // the view of a live task in the working version, or a view of it on
+    // its own if it is not in the tree
+    private TaskView viewOf(TaskNode node) {
+        int[] path = path(node);
+        TaskView view = path == null ? null : working;
+        for (int i = 0; view != null && i < path.length; i++) {
+            view = view.getChild(path[i]);
+        }
+        return view != null && view.source == node ? view
+                                                  : TaskView.of(node, version);
+    }
+
+    // make the change visible to readers and let the next writer in
+    private void publish() {
+        if (undone.peekLast() == working) {
+            // nothing changed, so there is nothing to undo
+            undone.removeLast();
+        } else if (undone.size() > HISTORY) {
+            undone.removeFirst();
+        }
+        current = working;
+        lock.unlock();
+    }
+
+    // copy a changed task and the views above it into the working version
+    private void refresh(TaskNode node) {
+        List<TaskNode> path = new ArrayList<>();
+        for (TaskNode n = node; n != null; n = n.getParent()) {
+            path.add(n);
+        }
+        int top = path.size() - 1;
+        if (path.get(top) != head) {
+            return; // no longer in the tree
+        }
+
+        // find the views of the path in the working version
+        TaskView[] views = new TaskView[path.size()];
+        views[top] = working;
+        for (int i = top - 1; i >= 0; i--) {
+            TaskView child = views[i + 1].getChild(path.get(i).getChildIndex());
+            if (child == null || child.source != path.get(i)) {
+                // out of step with the tree, copy all of it again
+                working = TaskView.of(head, version);
+                return;
+            }
+            views[i] = child;
+        }
+
+        TaskView fresh = views[0].refresh(node, version);
+        for (int i = 1; i <= top; i++) {
+            fresh = views[i].replace(path.get(i),
+                    path.get(i - 1).getChildIndex(), fresh, version);
+        }
+        working = fresh;
+    }
+
+    private static final class Choice {
+        final TaskView version;
+        final TaskView task;
+
+        Choice(TaskView version, TaskView task) {
+            this.version = version;
+            this.task = task;
+        }
+    }
+
+    // keeps the working version in step with the live tree
+    private class Updater implements TaskTreeListener {
+
+        @Override
+        public void taskAdded(TaskNode parent, TaskNode child) {
+            refresh(parent);
+        }
+
+        @Override
+        public void childrenAdded(TaskNode parent, List<TaskNode> children) {
+            refresh(parent);
+        }
+
+        @Override
+        public void childrenRemoved(TaskNode parent) {
+            refresh(parent);
+        }
+
+        @Override
+        public void taskChanged(TaskNode task) {
+            refresh(task);
+        }
+
+        @Override
+        public void taskReverted(TaskNode task) {
+            refresh(task);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package dataStructure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * DueDateIndex
+ * Ordered index over the incomplete tasks of one tree by their packed due
+ * dates, so the tasks due in a range are found in O(log n + k) instead of a
+ * walk of the tree.  It is kept by the tree's TaskScheduler, which already
+ * hears about every task that is attached, detached, completed or reopened,
+ * and built the first time a range is asked for.
+ *
+ * A task's own due date only changes when a recurring task moves on to its
+ * next occurrence, and the task leaves the index while it does, so
+ * otherwise only its membership has to be kept up to date.  Most due dates
+ * belong to a single task, which is stored on its own; tasks sharing a due
+ * date are kept in insertion order.
+ *
+ * Subtrees still on disk are indexed by the earliest due date below them,
+ * and are read once a range reaches that date, unless the snapshot records
+ * that every task in them is due before the range starts.
+ */
+final class DueDateIndex {
+
+    // incomplete tasks by due date, each a TaskNode or a Set of them
+    private final TreeMap<Long, Object> tasks = new TreeMap<>();
+
+    // incomplete subtrees still on disk by the earliest due date below them
+    private final TreeMap<Long, Object> unloaded = new TreeMap<>();
+
+    // the key each node was indexed under in unloaded, which can change
+    // once it is read
+    private final Map<TaskNode, Long> unloadedKeys = new HashMap<>();
+
+    private int size;
+
+    /**
+     * update
+     * Index a node if it is incomplete and no ancestor is completed, or drop
+     * it otherwise.
+     *
+     * @param node    the node whose state changed
+     * @param pending whether the node and all its ancestors are incomplete
+     */
+    void update(TaskNode node, boolean pending) {
+        long due = node.getPackedDueDate();
+        if (pending) {
+            if (add(tasks, due, node)) {
+                size++;
+            }
+        } else if (remove(tasks, due, node)) {
+            size--;
+        }
+        Long key = unloadedKeys.remove(node);
+        if (key != null) {
+            remove(unloaded, key, node);
+        }
+        if (pending && node.isUnloaded()) {
+            key = node.getPackedDueDateChild();
+            unloadedKeys.put(node, key);
+            add(unloaded, key, node);
+        }
+    }
+
+    /**
+     * remove
+     * Drop a node that is being detached.
+     *
+     * @param node the node
+     */
+    void remove(TaskNode node) {
+        update(node, false);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * range
+     * Return the indexed tasks due from one packed date up to, but not
+     * including, another, earliest first.  Subtrees on disk that may hold
+     * such a task are read first; ones that start before the range are only
+     * read if they also end in or after it.
+     *
+     * @param from the first due date included
+     * @param to   the first due date left out
+     * @return the tasks due in the range
+     */
+    List<TaskNode> range(long from, long to) {
+        List<TaskNode> reached = reached(from, to);
+        while (!reached.isEmpty()) {
+            // reading a subtree re-indexes it along with its children, which
+            // may be subtrees on disk themselves
+            for (TaskNode node : reached) {
+                node.loadChildren();
+            }
+            reached = reached(from, to);
+        }
+        List<TaskNode> due = new ArrayList<>();
+        for (Object value : tasks.subMap(from, true, to, false).values()) {
+            if (value instanceof TaskNode) {
+                due.add((TaskNode) value);
+            } else {
+                due.addAll(nodes(value));
+            }
+        }
+        return due;
+    }
+
+    // the subtrees on disk that may hold a task due in a range
+    private List<TaskNode> reached(long from, long to) {
+        List<TaskNode> reached = new ArrayList<>();
+        for (Object value : unloaded.headMap(to, false).values()) {
+            if (value instanceof TaskNode) {
+                value = Collections.singleton(value);
+            }
+            for (TaskNode node : nodes(value)) {
+                if (node.getPackedLatestDueDate() >= from) {
+                    reached.add(node);
+                }
+            }
+        }
+        return reached;
+    }
+
+    private static boolean add(NavigableMap<Long, Object> index, long key,
+                               TaskNode node) {
+        Object value = index.get(key);
+        if (value == null) {
+            index.put(key, node);
+            return true;
+        }
+        if (value == node) {
+            return false;
+        }
+        if (value instanceof TaskNode) {
+            Set<TaskNode> shared = new LinkedHashSet<>();
+            shared.add((TaskNode) value);
+            index.put(key, shared);
+            value = shared;
+        }
+        return nodes(value).add(node);
+    }
+
+    private static boolean remove(NavigableMap<Long, Object> index, long key,
+                                  TaskNode node) {
+        Object value = index.get(key);
+        if (value == null) {
+            return false;
+        }
+        if (value == node) {
+            index.remove(key);
+            return true;
+        }
+        if (value instanceof TaskNode) {
+            return false;
+        }
+        Set<TaskNode> shared = nodes(value);
+        if (!shared.remove(node)) {
+            return false;
+        }
+        if (shared.size() == 1) {
+            index.put(key, shared.iterator().next());
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<TaskNode> nodes(Object value) {
+        return (Set<TaskNode>) value;
+    }
+}
@@ -0,0 +1,292 @@
+package dataStructure;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DueDateNotifier
+ * Tells a listener when tasks of a tree become due, without polling the
+ * tree.  Tasks are kept in a hierarchical timing wheel of one-minute ticks,
+ * the resolution of a due date: three levels of 64 slots cover 64 minutes,
+ * 64 hours and about six months.  A task goes into the finest level its due
+ * date fits and drops to a finer one when the coarser slot it waits in comes
+ * up, so each task is handled at most three times before it fires and each
+ * tick costs O(1) plus the tasks it moves.
+ *
+ * Only the block of about six months the clock is in is kept in the wheel.
+ * When the clock enters a new block, the tasks due in it are read from the
+ * due date index the tree keeps anyway, O(log n + k), so tasks due far
+ * ahead cost nothing and subtrees still on disk are only read once a task in
+ * them is close to due.
+ *
+ * Changes reach the wheel through the tree's listeners: added tasks and
+ * reopened ones are queued, completed ones are dropped in O(1) and recurring
+ * ones are moved to their next occurrence.  Tasks taken out of the tree are
+ * dropped when their slot comes up.  Chunks of a sub-divided task are queued
+ * as they are made, so one made after its due date is reported on the next
+ * advance.
+ *
+ * The root only holds the tree, so it is never reported, whatever its due
+ * date.
+ *
+ * Like TaskNode it is not thread-safe: advance it on the thread that
+ * changes the tree.
+ */
+public class DueDateNotifier implements TaskTreeListener {
+
+    // bits of a tick the slots of each level cover, and the levels
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 3;
+    private static final int BLOCK = BITS * LEVELS;
+
+    private final TaskNode root;
+    private final Listener listener;
+
+    // the first tick not processed yet, in packed minutes
+    private long current;
+
+    // tasks queued in each slot of each level, as doubly linked lists
+    private final Entry[][] wheel = new Entry[LEVELS][SLOTS];
+    private int size;
+
+    // tasks due before the current tick, fired on the next advance
+    private Set<TaskNode> expired = new LinkedHashSet<>();
+
+    // the entry of every task queued, so it is queued only once and can be
+    // dropped without a search
+    private final Map<TaskNode, Entry> entries = new IdentityHashMap<>();
+
+    /**
+     * DueDateNotifier
+     * Watch a tree from a point in time.  Tasks already due then are
+     * reported on the first advance.
+     *
+     * @param root     root of the tree
+     * @param now      the time to start from
+     * @param listener told about tasks as they become due
+     */
+    public DueDateNotifier(TaskNode root, LocalDateTime now,
+                           Listener listener) {
+        if (root.getParent() != null) {
+            throw new IllegalArgumentException(root + " is not a root");
+        }
+        this.root = root;
+        this.listener = listener;
+        current = DueDates.pack(now);
+        fill(Long.MIN_VALUE);
+        root.addTreeListener(this);
+    }
+
+    /**
+     * advance
+     * Move the clock forward and report every task that has become due since
+     * the last advance, in the order they became due.  Blocks of time with
+     * nothing queued are skipped.
+     *
+     * @param now the time now
+     */
+    public void advance(LocalDateTime now) {
+        List<TaskNode> due = new ArrayList<>(expired);
+        due.sort(Comparator.comparingLong(TaskNode::getPackedDueDate));
+        expired = new LinkedHashSet<>();
+        long target = DueDates.pack(now);
+        while (current <= target) {
+            if (size == 0 && (current & blockMask()) != 0) {
+                // nothing left in this block, jump to the next one
+                current = Math.min(target + 1, nextBlock(current));
+                continue;
+            }
+            tick(due);
+            current++;
+        }
+        due.removeIf(task -> !isPending(task));
+        if (!due.isEmpty()) {
+            listener.tasksDue(due);
+        }
+    }
+
+    // the number of tasks waiting in the wheel
+    public int size() {
+        return size;
+    }
+
+    /* Events from the tree */
+
+    @Override
+    public void taskAdded(TaskNode parent, TaskNode child) {
+        // the child may bring a subtree with it
+        List<TaskNode> stack = new ArrayList<>();
+        stack.add(child);
+        while (!stack.isEmpty()) {
+            TaskNode task = stack.remove(stack.size() - 1);
+            if (!task.isCompleted()) {
+                schedule(task);
+                stack.addAll(task.getChildren());
+            }
+        }
+    }
+
+    @Override
+    public void childrenRemoved(TaskNode parent) {
+        // dropped once their slot comes up
+    }
+
+    @Override
+    public void taskChanged(TaskNode task) {
+        // a recurring task that was done is queued again for its next
+        // occurrence
+        cancel(task);
+        if (!task.isCompleted() && isPending(task)) {
+            schedule(task);
+        }
+    }
+
+    /* The wheel */
+
+    // queue the tasks due from a time to the end of the current block
+    private void fill(long from) {
+        for (TaskNode task : root.dueBetween(from, nextBlock(current))) {
+            schedule(task);
+        }
+    }
+
+    // process the tick at current: move tasks down from the coarser slots
+    // that come up, then fire the finest slot
+    private void tick(List<TaskNode> due) {
+        if ((current & blockMask()) == 0) {
+            fill(current);
+        }
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((current & ((1L << BITS * level) - 1)) == 0) {
+                Entry e = take(level, slot(current, level));
+                while (e != null) {
+                    Entry next = e.next;
+                    place(e);
+                    e = next;
+                }
+            }
+        }
+        for (Entry e = take(0, slot(current, 0)); e != null; e = e.next) {
+            entries.remove(e.task);
+            due.add(e.task);
+        }
+    }
+
+    private void schedule(TaskNode task) {
+        long due = task.getPackedDueDate();
+        if (task == root || entries.containsKey(task)
+            || due >= nextBlock(current)) {
+            // the root holds the tree rather than being a task to do; the
+            // others are already queued, or read again once their block
+            // comes
+            return;
+        }
+        if (due < current) {
+            expired.add(task);
+            return;
+        }
+        Entry e = new Entry(task, due);
+        entries.put(task, e);
+        place(e);
+    }
+
+    private void cancel(TaskNode task) {
+        expired.remove(task);
+        Entry e = entries.remove(task);
+        if (e == null) {
+            return;
+        }
+        if (e.prev != null) {
+            e.prev.next = e.next;
+        } else {
+            wheel[e.level][e.slot] = e.next;
+        }
+        if (e.next != null) {
+            e.next.prev = e.prev;
+        }
+        size--;
+    }
+
+    // put an entry in the finest slot that holds its due date, which is in
+    // the current block and not before current
+    private void place(Entry e) {
+        int level = 0;
+        while (e.due >> BITS * (level + 1) != current >> BITS * (level + 1)) {
+            level++;
+        }
+        e.level = level;
+        e.slot = slot(e.due, level);
+        e.prev = null;
+        e.next = wheel[level][e.slot];
+        if (e.next != null) {
+            e.next.prev = e;
+        }
+        wheel[level][e.slot] = e;
+        size++;
+    }
+
+    // empty a slot, returning the entries that were in it
+    private Entry take(int level, int slot) {
+        Entry first = wheel[level][slot];
+        wheel[level][slot] = null;
+        for (Entry e = first; e != null; e = e.next) {
+            size--;
+        }
+        return first;
+    }
+
+    // whether a task is incomplete and still in the tree with no completed
+    // ancestor
+    private boolean isPending(TaskNode task) {
+        TaskNode n = task;
+        for (; n.getParent() != null; n = n.getParent()) {
+            if (n.isCompleted()) {
+                return false;
+            }
+        }
+        return n == root && !root.isCompleted();
+    }
+
+    private static int slot(long tick, int level) {
+        return (int) (tick >> BITS * level) & MASK;
+    }
+
+    private static long blockMask() {
+        return (1L << BLOCK) - 1;
+    }
+
+    private static long nextBlock(long tick) {
+        return ((tick >> BLOCK) + 1) << BLOCK;
+    }
+
+    /**
+     * Listener
+     * Told about the tasks that became due on an advance, on the thread that
+     * advanced the notifier.
+     */
+    public interface Listener {
+        void tasksDue(List<TaskNode> tasks);
+    }
+
+    private static final class Entry {
+        final TaskNode task;
+        final long due;
+        int level;
+        int slot;
+        Entry prev;
+        Entry next;
+
+        Entry(TaskNode task, long due) {
+            this.task = task;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package dataStructure;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * DueDates
+ * Packs due dates into a single long counting minutes since 1970-01-01 00:00.
+ * The wall-clock time is stored as-is with no time zone, so packed values
+ * order exactly like the year/month/day/hour/minute fields they replace.
+ */
+public final class DueDates {
+
+    private DueDates() {
+    }
+
+    public static long pack(LocalDateTime dueDate) {
+        return Math.floorDiv(dueDate.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    public static long pack(int year, int month, int day, int hour,
+                            int minute) {
+        return pack(LocalDateTime.of(year, month, day, hour, minute));
+    }
+
+    public static LocalDateTime unpack(long dueDate) {
+        return LocalDateTime.ofEpochSecond(dueDate * 60, 0, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,257 @@
+package dataStructure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics
+ * In-process registry of how often the hot operations run and how long they
+ * take, plus gauges read when asked for.  Timers are looked up by name and
+ * keep a count, a total, a maximum and a histogram of latencies in
+ * power-of-two buckets, so percentiles are good to within a factor of two.
+ *
+ * Recording is off unless -Dtasktracker.metrics=true is given or
+ * setEnabled turns it on.  While it is off, timing an operation costs one
+ * volatile read and no clock reads.  Listeners are told about every time
+ * recorded, which is how the GUI turns them into JFR events.
+ *
+ * Timers are safe to use from any thread; gauges are read on the thread
+ * asking for them.
+ */
+public final class Metrics {
+
+    private static volatile boolean enabled =
+            Boolean.getBoolean("tasktracker.metrics");
+
+    private static final Map<String, Timer> timers = new LinkedHashMap<>();
+    private static final Map<String, LongSupplier> gauges =
+            new LinkedHashMap<>();
+    private static final List<Listener> listeners =
+            new CopyOnWriteArrayList<>();
+
+    public static final Timer CHOOSE_TASK = timer("chooseTask");
+    public static final Timer ADD_CHILD = timer("addChild");
+    public static final Timer SUB_DIVIDE = timer("subDivide");
+
+    private Metrics() {
+    }
+
+    /**
+     * Listener
+     * Told about each time recorded, on the thread that recorded it.
+     */
+    public interface Listener {
+        void recorded(Timer timer, long nanos);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * start
+     * Start timing an operation, to be finished with Timer.stop.
+     *
+     * @return the clock reading, or 0 while recording is off
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * timer
+     * Return the timer with the given name, creating it on first use.
+     */
+    public static synchronized Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = new Timer(name);
+            timers.put(name, timer);
+        }
+        return timer;
+    }
+
+    // every timer, in the order they were created
+    public static synchronized List<Timer> timers() {
+        return new ArrayList<>(timers.values());
+    }
+
+    /**
+     * gauge
+     * Register a value read each time the gauges are asked for, replacing
+     * any gauge of the same name.
+     */
+    public static synchronized void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * gauges
+     * Read every gauge.
+     *
+     * @return the current values by name, in the order they were registered
+     */
+    public static Map<String, Long> gauges() {
+        List<Map.Entry<String, LongSupplier>> entries;
+        synchronized (Metrics.class) {
+            entries = new ArrayList<>(gauges.entrySet());
+        }
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> entry : entries) {
+            values.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // clear every timer, keeping the timers and gauges themselves
+    public static void reset() {
+        for (Timer timer : timers()) {
+            timer.reset();
+        }
+    }
+
+    /**
+     * report
+     * Describe every timer that has recorded something and every gauge, one
+     * per line, with times in microseconds.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        for (Timer t : timers()) {
+            if (t.getCount() > 0) {
+                report.append(String.format("%-12s count %d mean %.1f p50 %.1f"
+                                            + " p99 %.1f max %.1f%n",
+                        t.getName(), t.getCount(), t.getMeanNanos() / 1e3,
+                        t.percentile(0.5) / 1e3, t.percentile(0.99) / 1e3,
+                        t.getMaxNanos() / 1e3));
+            }
+        }
+        for (Map.Entry<String, Long> gauge : gauges().entrySet()) {
+            report.append(String.format("%-12s %d%n", gauge.getKey(),
+                    gauge.getValue()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Timer
+     * Latencies of one operation.
+     */
+    public static final class Timer {
+
+        // bucket i counts times of less than 2^i nanoseconds, and at least
+        // 2^(i-1) above the first
+        private static final int BUCKETS = 64;
+
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * stop
+         * Record the time since Metrics.start, unless recording was off when
+         * it was called.
+         */
+        public void stop(long start) {
+            if (start != 0) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        public void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            count.increment();
+            total.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1,
+                    BUCKETS - Long.numberOfLeadingZeros(nanos)));
+            for (Listener l : listeners) {
+                l.recorded(this, nanos);
+            }
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return total.sum();
+        }
+
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        public double getMeanNanos() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) total.sum() / n;
+        }
+
+        /**
+         * percentile
+         * Return a time at least the given fraction of the recorded times
+         * were within, at most twice the true value and never more than the
+         * maximum.
+         *
+         * @param fraction between 0 and 1, 0.99 for the 99th percentile
+         * @return the time in nanoseconds, 0 if nothing was recorded
+         */
+        public long percentile(double fraction) {
+            long n = 0;
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                n += counts[i];
+            }
+            long wanted = (long) Math.ceil(fraction * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= wanted && seen > 0) {
+                    long bound = i == 0 ? 0 : (1L << Math.min(i, 62)) - 1;
+                    return Math.min(bound, max.get());
+                }
+            }
+            return 0;
+        }
+
+        void reset() {
+            count.reset();
+            total.reset();
+            max.set(0);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+}
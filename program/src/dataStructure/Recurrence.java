@@ -0,0 +1,156 @@
+package dataStructure;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recurrence
+ * How often a recurring task comes round again, and for how long.  A rule is
+ * a period of whole days with an optional last date and an optional number of
+ * occurrences left, so it costs the same however long the series runs.  The
+ * task it is attached to stands for the next occurrence only; completing it
+ * moves it on to the one after, see TaskNode.setRecurrence.  Later
+ * occurrences are only worked out when they are asked for.
+ *
+ * A rule is immutable and may be shared between tasks and versions.
+ */
+public final class Recurrence implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final long MINUTES_PER_DAY = 24 * 60;
+
+    // no last date, or no limit on the occurrences left
+    static final long FOREVER = Long.MAX_VALUE;
+    static final int UNLIMITED = -1;
+
+    private final int days;
+    private final long until;
+    private final int remaining;
+
+    private Recurrence(int days, long until, int remaining) {
+        if (days < 1) {
+            throw new IllegalArgumentException("period must be at least a day");
+        }
+        this.days = days;
+        this.until = until;
+        this.remaining = remaining;
+    }
+
+    public static Recurrence daily() {
+        return everyDays(1);
+    }
+
+    public static Recurrence weekly() {
+        return everyDays(7);
+    }
+
+    public static Recurrence everyDays(int days) {
+        return new Recurrence(days, FOREVER, UNLIMITED);
+    }
+
+    // a rule read back from a snapshot or journal, see getUntil
+    static Recurrence of(int days, long until, int remaining) {
+        return new Recurrence(days, until, remaining);
+    }
+
+    /**
+     * until
+     * Return this rule ending at a given time; no occurrence falls after it.
+     */
+    public Recurrence until(LocalDateTime last) {
+        return new Recurrence(days, DueDates.pack(last), remaining);
+    }
+
+    /**
+     * times
+     * Return this rule ending after a number of occurrences, counting the
+     * one the task stands for now.
+     */
+    public Recurrence times(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be at least 1");
+        }
+        return new Recurrence(days, until, count - 1);
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    // packed last date, FOREVER if there is none
+    long getUntil() {
+        return until;
+    }
+
+    // occurrences after the current one, UNLIMITED if there is no count
+    int getRemaining() {
+        return remaining;
+    }
+
+    // packed due date of the occurrence after one due at dueDate, or
+    // FOREVER once the series has ended
+    long next(long dueDate) {
+        long next = dueDate + days * MINUTES_PER_DAY;
+        return remaining == 0 || next > until ? FOREVER : next;
+    }
+
+    // the rule once the series has moved on by one occurrence
+    Recurrence advance() {
+        return remaining == UNLIMITED ? this
+                                      : new Recurrence(days, until,
+                                              remaining - 1);
+    }
+
+    /**
+     * occurrences
+     * Work out the due dates of the occurrences after one due at a given
+     * time, without storing them anywhere.
+     *
+     * @param dueDate when the current occurrence is due
+     * @param limit   the most dates to return
+     * @return the later due dates, in order
+     */
+    public List<LocalDateTime> occurrences(LocalDateTime dueDate, int limit) {
+        List<LocalDateTime> dates = new ArrayList<>();
+        Recurrence rule = this;
+        long due = DueDates.pack(dueDate);
+        while (dates.size() < limit) {
+            due = rule.next(due);
+            if (due == FOREVER) {
+                break;
+            }
+            dates.add(DueDates.unpack(due));
+            rule = rule.advance();
+        }
+        return dates;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Recurrence)) {
+            return false;
+        }
+        Recurrence r = (Recurrence) other;
+        return days == r.days && until == r.until && remaining == r.remaining;
+    }
+
+    @Override
+    public int hashCode() {
+        return (days * 31 + Long.hashCode(until)) * 31 + remaining;
+    }
+
+    @Override
+    public String toString() {
+        String text = days == 1 ? "daily"
+                      : days == 7 ? "weekly" : "every " + days + " days";
+        if (until != FOREVER) {
+            text += " until " + DueDates.unpack(until);
+        }
+        if (remaining != UNLIMITED) {
+            text += ", " + remaining + " more";
+        }
+        return text;
+    }
+}
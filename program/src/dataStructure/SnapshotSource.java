@@ -0,0 +1,214 @@
+package dataStructure;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SnapshotSource
+ * Node table of a mapped version 2 to 7 snapshot.  Rows are fixed width and
+ * in pre-order, and each one records the size of its subtree, so any subtree
+ * is a contiguous run of rows that can be skipped or read on its own.  Tasks
+ * deeper than the lazy depth below whatever is being read are left as
+ * stubs that load their children from here when first needed.
+ */
+final class SnapshotSource {
+
+    static final int ROW_SIZE = 61;
+    static final int V6_ROW_SIZE = 57;
+    static final int V5_ROW_SIZE = 53;
+    static final int V4_ROW_SIZE = 41;
+    static final int V2_ROW_SIZE = 37;
+
+    // a latest due date delta the rows do not record
+    static final int UNKNOWN = Integer.MAX_VALUE;
+
+    // category of a chunk named after its parent
+    static final int DERIVED = -2;
+
+    private static final byte COMPLETED = 1;
+    private static final byte PARENT = 2;
+    private static final byte CHUNKED = 4;
+
+    private final ByteBuffer rows;
+    private final int rowSize;
+    private final String[] dictionary;
+    private final int rowCount;
+    private final int lazyDepth;
+
+    SnapshotSource(ByteBuffer rows, int rowSize, String[] dictionary,
+                   int rowCount, int lazyDepth) {
+        this.rows = rows;
+        this.rowSize = rowSize;
+        this.dictionary = dictionary;
+        this.rowCount = rowCount;
+        this.lazyDepth = lazyDepth;
+    }
+
+    /* Row fields */
+
+    int parent(int row) {
+        return rows.getInt(row * rowSize);
+    }
+
+    String category(int row) {
+        int id = categoryId(row);
+        return id < 0 ? null : dictionary[id];
+    }
+
+    int categoryId(int row) {
+        return rows.getInt(row * rowSize + 4);
+    }
+
+    int dueDateDelta(int row) {
+        return rows.getInt(row * rowSize + 8);
+    }
+
+    int subtreeSize(int row) {
+        return rows.getInt(row * rowSize + 29);
+    }
+
+    // latest due date of the incomplete tasks in a row's subtree, given the
+    // row's own due date, or Long.MAX_VALUE if the rows are too old to say
+    long latestDueDate(int row, long dueDate) {
+        int delta = rowSize >= V6_ROW_SIZE
+                    ? rows.getInt(row * rowSize + V5_ROW_SIZE) : UNKNOWN;
+        return delta == UNKNOWN ? Long.MAX_VALUE : dueDate + delta;
+    }
+
+    // copy a row's bytes from the flags field on, as a current row
+    void copyTail(int row, byte[] into) {
+        ByteBuffer r = rows.duplicate();
+        r.position(row * rowSize + 12);
+        r.get(into, 0, rowSize - 12);
+        Arrays.fill(into, rowSize - 12, ROW_SIZE - 12, (byte) 0);
+        if (rowSize < V6_ROW_SIZE) {
+            ByteBuffer.wrap(into).putInt(V5_ROW_SIZE - 12, UNKNOWN);
+        }
+    }
+
+    /* End Row fields */
+
+    /**
+     * readRoot
+     * Build the root row and everything down to the lazy depth.
+     *
+     * @param baseDueDate due date the root's delta is relative to
+     * @return the root of the tree
+     */
+    TaskNode readRoot(long baseDueDate) {
+        if (rowCount < 1 || parent(0) != -1 || subtreeSize(0) != rowCount) {
+            throw new IllegalStateException("snapshot has no root row");
+        }
+        TaskNode root = create(0, baseDueDate);
+        List<TaskNode> made = materialize(root, 0);
+        made.add(0, root);
+        restoreDueDates(made);
+        return root;
+    }
+
+    /**
+     * load
+     * Attach the children of a stub, down to the lazy depth below it.
+     *
+     * @param stub the node to fill in
+     * @param row  the stub's row
+     */
+    void load(TaskNode stub, int row) {
+        restoreDueDates(materialize(stub, row));
+        stub.restoreChildIndexes();
+    }
+
+    // create the rows below top, stopping lazyDepth levels down
+    private List<TaskNode> materialize(TaskNode top, int topRow) {
+        List<TaskNode> made = new ArrayList<>();
+
+        // open ancestors and the row each one's subtree ends before
+        List<TaskNode> nodes = new ArrayList<>();
+        List<Integer> rowsOf = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        nodes.add(top);
+        rowsOf.add(topRow);
+        ends.add(topRow + subtreeSize(topRow));
+
+        int row = topRow + 1;
+        while (row < ends.get(0)) {
+            while (row >= ends.get(ends.size() - 1)) {
+                int last = ends.size() - 1;
+                nodes.remove(last);
+                rowsOf.remove(last);
+                ends.remove(last);
+            }
+            int depth = nodes.size();
+            TaskNode parent = nodes.get(depth - 1);
+            if (parent(row) != rowsOf.get(depth - 1)) {
+                throw new IllegalStateException("row " + row
+                                                + " is out of order");
+            }
+
+            TaskNode node = create(row, parent.getPackedDueDate());
+            if (categoryId(row) == DERIVED) {
+                node.deriveName(parent.chunkPrefix());
+            }
+            parent.attach(node);
+            int size = subtreeSize(row);
+            if (size < 1 || row + size > ends.get(depth - 1)) {
+                throw new IllegalStateException("row " + row
+                                                + " has a bad subtree size");
+            }
+
+            if (size > 1 && depth >= lazyDepth) {
+                long due = node.getPackedDueDate();
+                node.makeStub(this, row,
+                        due + rows.getInt(row * rowSize + 33),
+                        latestDueDate(row, due));
+                row += size;
+                continue;
+            }
+            made.add(node);
+            if (size > 1) {
+                nodes.add(node);
+                rowsOf.add(row);
+                ends.add(row + size);
+            }
+            row++;
+        }
+        return made;
+    }
+
+    private TaskNode create(int row, long base) {
+        int at = row * rowSize;
+        byte flags = rows.get(at + 12);
+        TaskNode node = new TaskNode(category(row),
+                DueDates.unpack(base + dueDateDelta(row)));
+        node.setTaskCount(rows.getInt(at + 17));
+        node.setStartingIndex(rows.getInt(at + 21));
+        node.restore((flags & COMPLETED) != 0, (flags & PARENT) != 0,
+                rows.getInt(at + 13), rows.getInt(at + 25));
+        if ((flags & CHUNKED) != 0 && rowSize >= V4_ROW_SIZE) {
+            node.restoreChunks(ChunkPlan.of(node.getPackedDueDate()
+                                            + rows.getInt(at + 37),
+                    node.getStartingIndex(), node.getTaskCount(),
+                    node.getPackedDueDate()),
+                    rowSize >= ROW_SIZE ? rows.getInt(at + V6_ROW_SIZE) : 0);
+        }
+        if (rowSize >= V5_ROW_SIZE && rows.getInt(at + 41) > 0) {
+            int until = rows.getInt(at + 49);
+            node.restoreRecurrence(Recurrence.of(rows.getInt(at + 41),
+                    until == Integer.MAX_VALUE ? Recurrence.FOREVER
+                    : node.getPackedDueDate() + until,
+                    rows.getInt(at + 45)));
+        }
+        return node;
+    }
+
+    // nodes come after their parents, so walking backwards folds every
+    // child's earliest due date in before its parent is computed
+    private static void restoreDueDates(List<TaskNode> made) {
+        for (int i = made.size() - 1; i >= 0; i--) {
+            made.get(i).restoreChildIndexes();
+            made.get(i).restoreDueDateChild();
+        }
+    }
+}
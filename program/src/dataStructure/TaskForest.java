@@ -0,0 +1,243 @@
+package dataStructure;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * TaskForest
+ * Many independent task trees, one per person or team, each a shard with its
+ * own ConcurrentTaskTree and its own snapshot and journal.  Shards share no
+ * state: each has its own lock, scheduler and files, so changes to different
+ * shards run fully in parallel and a large shard never slows down a small
+ * one.
+ *
+ * Choosing across the forest takes the task each shard would choose, which
+ * the shard works out once per version and keeps, and picks the earliest of
+ * those.  That costs O(shards) plus a scan of only the shards changed since
+ * the last choice.
+ *
+ * Shards are named for their files, <name>.txt and <name>.journal in the
+ * forest's directory, so names are limited to letters, digits, '.', '-' and
+ * '_'.  A forest without a directory keeps its shards in memory only.
+ */
+public class TaskForest implements Closeable {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_.-]+");
+    private static final String SNAPSHOT = ".txt";
+    private static final String JOURNAL = ".journal";
+
+    private final File directory;
+
+    // shards by name in the order they were added, replaced as a whole when
+    // one is added so readers never lock
+    private volatile Map<String, Shard> shards = Collections.emptyMap();
+
+    public TaskForest() {
+        this(null);
+    }
+
+    /**
+     * TaskForest
+     * Create an empty forest keeping its shards in a directory.
+     *
+     * @param directory where the shards' files go, or null for none
+     */
+    public TaskForest(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * open
+     * Load every shard saved in a directory, replaying their journals.
+     *
+     * @param directory the directory, created if missing
+     * @return the forest
+     */
+    public static TaskForest open(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        TaskForest forest = new TaskForest(directory);
+        File[] files = directory.listFiles((dir, name) ->
+                name.endsWith(SNAPSHOT));
+        List<String> names = new ArrayList<>();
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName();
+            names.add(name.substring(0, name.length() - SNAPSHOT.length()));
+        }
+        Collections.sort(names);
+        for (String name : names) {
+            if (NAME.matcher(name).matches()) {
+                forest.addShard(name);
+            }
+        }
+        return forest;
+    }
+
+    /**
+     * addShard
+     * Open the shard with a name, loading it from the forest's directory if
+     * it was saved there and starting an empty tree otherwise.
+     *
+     * @param name the shard's name
+     * @return its tree
+     */
+    public ConcurrentTaskTree addShard(String name) throws IOException {
+        return addShard(name, new TaskNode(name, LocalDateTime.now()));
+    }
+
+    /**
+     * addShard
+     * Add a shard with a given tree, unless it was already saved in the
+     * forest's directory, in which case that is loaded instead.
+     *
+     * @param name the shard's name
+     * @param head the tree, which must not be shared with anything else
+     * @return the shard's tree
+     */
+    public synchronized ConcurrentTaskTree addShard(String name,
+                                                    TaskNode head)
+            throws IOException {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("bad shard name " + name);
+        }
+        if (shards.containsKey(name)) {
+            throw new IllegalArgumentException(name + " is already a shard");
+        }
+        TaskJournal journal = null;
+        if (directory != null) {
+            journal = new TaskJournal(new File(directory, name + SNAPSHOT),
+                    new File(directory, name + JOURNAL));
+            head = journal.load(head);
+        }
+        Shard shard = new Shard(name, new ConcurrentTaskTree(head, journal),
+                journal);
+        Map<String, Shard> added = new LinkedHashMap<>(shards);
+        added.put(name, shard);
+        shards = Collections.unmodifiableMap(added);
+        return shard.tree;
+    }
+
+    /**
+     * shard
+     * Return the tree of a shard, or null if there is none by that name.
+     */
+    public ConcurrentTaskTree shard(String name) {
+        Shard shard = shards.get(name);
+        return shard == null ? null : shard.tree;
+    }
+
+    // the names of the shards, in the order they were added
+    public Set<String> getShardNames() {
+        return shards.keySet();
+    }
+
+    /**
+     * chooseTask
+     * Return the task to work on next across every shard, with the same
+     * ordering as TaskNode.chooseTask.  Ties between shards go to the one
+     * added first.
+     *
+     * @return the task and its shard, or null if everything is completed
+     */
+    public Choice chooseTask() {
+        Shard best = null;
+        TaskView min = null;
+        for (Shard shard : shards.values()) {
+            TaskView task = shard.tree.chooseTask();
+            if (task != null && (min == null || task.precedes(min))) {
+                best = shard;
+                min = task;
+            }
+        }
+        return min == null ? null : new Choice(best.name, min);
+    }
+
+    /**
+     * checkpoint
+     * Fold every shard's journal into a new snapshot.  Each shard's writers
+     * wait only while their own shard is saved.
+     */
+    public void checkpoint() throws IOException {
+        for (Shard shard : shards.values()) {
+            shard.tree.checkpoint();
+        }
+    }
+
+    /**
+     * close
+     * Checkpoint and close every shard's journal.  The forest must not be
+     * changed afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failed = null;
+        for (Shard shard : shards.values()) {
+            if (shard.journal == null) {
+                continue;
+            }
+            try {
+                shard.tree.checkpoint();
+                shard.journal.close();
+            } catch (IOException e) {
+                // still close the other shards
+                if (failed == null) {
+                    failed = e;
+                } else {
+                    failed.addSuppressed(e);
+                }
+            }
+        }
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    /**
+     * Choice
+     * A task chosen from the forest and the shard it belongs to.
+     */
+    public static final class Choice {
+        private final String shard;
+        private final TaskView task;
+
+        Choice(String shard, TaskView task) {
+            this.shard = shard;
+            this.task = task;
+        }
+
+        public String getShard() {
+            return shard;
+        }
+
+        public TaskView getTask() {
+            return task;
+        }
+
+        @Override
+        public String toString() {
+            return shard + ": " + task;
+        }
+    }
+
+    private static final class Shard {
+        final String name;
+        final ConcurrentTaskTree tree;
+        final TaskJournal journal;
+
+        Shard(String name, ConcurrentTaskTree tree, TaskJournal journal) {
+            this.name = name;
+            this.tree = tree;
+            this.journal = journal;
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package dataStructure;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * TaskImporter
+ * Reads large task lists from CSV or JSON Lines files.  Lines are read as a
+ * stream and parsed in batches on every core; the tasks are then linked into
+ * detached subtrees with their due dates already worked out, so adding them
+ * to a tree with TaskNode.addChildren is a single update.
+ *
+ * Each task has these fields, of which only category and due are required:
+ *   id       name other rows use to refer to this task
+ *   parent   id of an earlier row this task goes under, empty for the top
+ *   category name of the task
+ *   due      ISO date and time, or a date meaning the end of that day
+ *   count    number of sub-tasks, for sub-dividing
+ *   start    first sub-task still to do
+ *
+ * A CSV file starts with a header line naming its columns; fields may be
+ * quoted, but not span lines.  A JSON Lines file has one flat object per
+ * line.  Blank lines are skipped in both.
+ */
+public class TaskImporter {
+
+    // lines handed to one parsing task
+    private static final int BATCH = 8192;
+
+    private final boolean json;
+    private String[] columns;
+
+    private TaskImporter(boolean json) {
+        this.json = json;
+    }
+
+    /**
+     * read
+     * Read a file into detached subtrees, picking the format from its name:
+     * .jsonl or .json for JSON Lines, anything else for CSV.
+     *
+     * @param file the file to import
+     * @return the top level tasks, in file order
+     * @throws IOException if the file cannot be read or a line is malformed
+     */
+    public static List<TaskNode> read(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+        boolean json = name.endsWith(".jsonl") || name.endsWith(".json");
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(),
+                StandardCharsets.UTF_8)) {
+            return read(in, json);
+        }
+    }
+
+    /**
+     * read
+     * Read CSV or JSON Lines from a stream into detached subtrees.
+     *
+     * @param in   the lines to import
+     * @param json true for JSON Lines, false for CSV
+     * @return the top level tasks, in input order
+     */
+    public static List<TaskNode> read(BufferedReader in, boolean json)
+            throws IOException {
+        return new TaskImporter(json).importLines(in);
+    }
+
+    private List<TaskNode> importLines(BufferedReader in) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "task-import");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            // read batches while earlier ones are parsed
+            List<Future<Row[]>> batches = new ArrayList<>();
+            int lineNumber = 0;
+            String line;
+            List<String> lines = new ArrayList<>(BATCH);
+            int first = 1;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (!json && columns == null) {
+                    if (!line.trim().isEmpty()) {
+                        columns = splitCsv(line, lineNumber).toArray(
+                                new String[0]);
+                    }
+                    first = lineNumber + 1;
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == BATCH) {
+                    batches.add(parse(pool, lines, first));
+                    lines = new ArrayList<>(BATCH);
+                    first = lineNumber + 1;
+                }
+            }
+            batches.add(parse(pool, lines, first));
+            return link(batches);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Future<Row[]> parse(ExecutorService pool, List<String> lines,
+                                int first) {
+        return pool.submit(() -> {
+            Row[] rows = new Row[lines.size()];
+            for (int i = 0; i < rows.length; i++) {
+                String line = lines.get(i);
+                if (!line.trim().isEmpty()) {
+                    rows[i] = parseLine(line, first + i);
+                }
+            }
+            return rows;
+        });
+    }
+
+    // join the parsed rows into trees and work out their due dates
+    private static List<TaskNode> link(List<Future<Row[]>> batches)
+            throws IOException {
+        List<TaskNode> roots = new ArrayList<>();
+        List<TaskNode> order = new ArrayList<>();
+        Map<String, TaskNode> ids = new HashMap<>();
+        for (Future<Row[]> batch : batches) {
+            Row[] rows;
+            try {
+                rows = batch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("import interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+
+            for (Row row : rows) {
+                if (row == null) {
+                    continue;
+                }
+                if (row.parent == null) {
+                    roots.add(row.task);
+                } else {
+                    TaskNode parent = ids.get(row.parent);
+                    if (parent == null) {
+                        throw new IOException("line " + row.line
+                                              + ": parent " + row.parent
+                                              + " has not been defined");
+                    }
+                    parent.attach(row.task);
+                }
+                if (row.id != null && ids.put(row.id, row.task) != null) {
+                    throw new IOException("line " + row.line + ": id "
+                                          + row.id + " is used twice");
+                }
+                order.add(row.task);
+            }
+        }
+
+        // parents come before their children, so walk backwards
+        for (int i = order.size() - 1; i >= 0; i--) {
+            TaskNode task = order.get(i);
+            int children = task.getChildren().size();
+            task.restore(false, children > 0, children,
+                    task.getEndingIndex());
+            task.restoreDueDateChild();
+        }
+        return roots;
+    }
+
+    private Row parseLine(String line, int lineNumber) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        if (json) {
+            new JsonLine(line, lineNumber).readObject(fields);
+        } else {
+            List<String> values = splitCsv(line, lineNumber);
+            if (values.size() > columns.length) {
+                throw new IOException("line " + lineNumber
+                                      + ": more fields than columns");
+            }
+            for (int i = 0; i < values.size(); i++) {
+                fields.put(columns[i].trim(), values.get(i));
+            }
+        }
+
+        String category = fields.get("category");
+        if (category == null || category.isEmpty()) {
+            throw new IOException("line " + lineNumber + ": no category");
+        }
+        TaskNode task = new TaskNode(category, parseDue(fields.get("due"),
+                lineNumber));
+        task.setTaskCount(parseInt(fields.get("count"), lineNumber));
+        task.setStartingIndex(parseInt(fields.get("start"), lineNumber));
+        return new Row(lineNumber, blankToNull(fields.get("id")),
+                blankToNull(fields.get("parent")), task);
+    }
+
+    private static LocalDateTime parseDue(String due, int lineNumber)
+            throws IOException {
+        if (due == null || due.isEmpty()) {
+            throw new IOException("line " + lineNumber + ": no due date");
+        }
+        try {
+            if (due.indexOf('T') < 0) {
+                return LocalDate.parse(due).atTime(23, 59);
+            }
+            return LocalDateTime.parse(due);
+        } catch (DateTimeParseException e) {
+            throw new IOException("line " + lineNumber + ": bad due date "
+                                  + due, e);
+        }
+    }
+
+    private static int parseInt(String value, int lineNumber)
+            throws IOException {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("line " + lineNumber + ": bad number "
+                                  + value, e);
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    // split one CSV line, allowing quoted fields with doubled quotes inside
+    private static List<String> splitCsv(String line, int lineNumber)
+            throws IOException {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        int i = 0;
+        while (true) {
+            value.setLength(0);
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IOException("line " + lineNumber
+                                              + ": unterminated quote");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            value.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        value.append(c);
+                    }
+                }
+            } else {
+                while (i < line.length() && line.charAt(i) != ',') {
+                    value.append(line.charAt(i++));
+                }
+            }
+            values.add(value.toString());
+            if (i >= line.length()) {
+                return values;
+            }
+            if (line.charAt(i) != ',') {
+                throw new IOException("line " + lineNumber
+                                      + ": text after a quoted field");
+            }
+            i++;
+        }
+    }
+
+    /**
+     * main
+     * Import a file into the saved task tree from the command line.
+     *
+     * usage: TaskImporter file [snapshot [journal]]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("usage: TaskImporter file [snapshot [journal]]");
+            System.exit(2);
+        }
+        File snapshot = new File(args.length > 1 ? args[1] : "taskTree.txt");
+        File changes = new File(args.length > 2 ? args[2]
+                                : "taskTree.journal");
+
+        long start = System.nanoTime();
+        List<TaskNode> tasks = read(new File(args[0]));
+        long parsed = System.nanoTime();
+
+        try (TaskJournal journal = new TaskJournal(snapshot, changes)) {
+            TaskNode head = journal.load(new TaskNode("Task List",
+                    LocalDateTime.now()));
+            journal.logAddAll(head, tasks);
+            head.addChildren(tasks);
+            journal.checkpoint();
+        }
+        long saved = System.nanoTime();
+        System.out.println("Imported " + tasks.size() + " top level tasks"
+                           + " in " + (parsed - start) / 1000000 + " ms, saved"
+                           + " in " + (saved - parsed) / 1000000 + " ms");
+    }
+
+    // one parsed line
+    private static final class Row {
+        final int line;
+        final String id;
+        final String parent;
+        final TaskNode task;
+
+        Row(int line, String id, String parent, TaskNode task) {
+            this.line = line;
+            this.id = id;
+            this.parent = parent;
+            this.task = task;
+        }
+    }
+
+    // reader for a single flat JSON object
+    private static final class JsonLine {
+        private final String text;
+        private final int lineNumber;
+        private int at;
+
+        JsonLine(String text, int lineNumber) {
+            this.text = text;
+            this.lineNumber = lineNumber;
+        }
+
+        void readObject(Map<String, String> fields) throws IOException {
+            expect('{');
+            if (peek() == '}') {
+                at++;
+            } else {
+                do {
+                    String key = readString();
+                    expect(':');
+                    fields.put(key, readValue());
+                } while (next(',', '}') == ',');
+            }
+            skipSpace();
+            if (at != text.length()) {
+                throw error("text after the object");
+            }
+        }
+
+        // strings and other scalars are all kept as text, null as absent
+        private String readValue() throws IOException {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            int start = at;
+            while (at < text.length() && ",} \t".indexOf(text.charAt(at)) < 0) {
+                at++;
+            }
+            String value = text.substring(start, at);
+            if (value.isEmpty() || value.equals("{") || value.equals("[")) {
+                throw error("nested or missing value");
+            }
+            return value.equals("null") ? null : value;
+        }
+
+        private String readString() throws IOException {
+            expect('"');
+            StringBuilder s = new StringBuilder();
+            while (true) {
+                if (at >= text.length()) {
+                    throw error("unterminated string");
+                }
+                char c = text.charAt(at++);
+                if (c == '"') {
+                    return s.toString();
+                }
+                if (c != '\\') {
+                    s.append(c);
+                    continue;
+                }
+                if (at >= text.length()) {
+                    throw error("unterminated string");
+                }
+                char e = text.charAt(at++);
+                switch (e) {
+                    case 'b':
+                        s.append('\b');
+                        break;
+                    case 'f':
+                        s.append('\f');
+                        break;
+                    case 'n':
+                        s.append('\n');
+                        break;
+                    case 'r':
+                        s.append('\r');
+                        break;
+                    case 't':
+                        s.append('\t');
+                        break;
+                    case 'u':
+                        if (at + 4 > text.length()) {
+                            throw error("bad escape");
+                        }
+                        try {
+                            s.append((char) Integer.parseInt(
+                                    text.substring(at, at + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("bad escape");
+                        }
+                        at += 4;
+                        break;
+                    default:
+                        s.append(e);
+                }
+            }
+        }
+
+        private char next(char a, char b) throws IOException {
+            char c = peek();
+            if (c != a && c != b) {
+                throw error("expected " + a + " or " + b);
+            }
+            at++;
+            return c;
+        }
+
+        private void expect(char c) throws IOException {
+            if (peek() != c) {
+                throw error("expected " + c);
+            }
+            at++;
+        }
+
+        private char peek() throws IOException {
+            skipSpace();
+            if (at >= text.length()) {
+                throw error("unexpected end of line");
+            }
+            return text.charAt(at);
+        }
+
+        private void skipSpace() {
+            while (at < text.length() && Character.isWhitespace(
+                    text.charAt(at))) {
+                at++;
+            }
+        }
+
+        private IOException error(String message) {
+            return new IOException("line " + lineNumber + ": " + message);
+        }
+    }
+}
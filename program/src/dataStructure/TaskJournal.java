@@ -0,0 +1,624 @@
+package dataStructure;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * TaskJournal
+ * Write-ahead log of every change made to a task tree, on top of a periodic
+ * snapshot of the whole tree.  Each change is appended and synced before it
+ * is applied, so saving costs O(1) per operation and nothing is lost if the
+ * program dies.  On startup the snapshot is loaded and the journal replayed
+ * over it.
+ *
+ * Nodes are addressed by their path of child positions from the root.  Every
+ * record carries a sequence number and its own checksum; a torn record at the
+ * end of the journal is discarded, and records already folded into the
+ * snapshot are skipped.
+ *
+ * The snapshot can be loaded lazily, in which case subtrees below the given
+ * depth are only read from it when they are first needed.
+ */
+public class TaskJournal implements Closeable {
+
+    // checkpoint once this many records have been appended
+    private static final int COMPACT_EVERY = 1000;
+
+    private static final byte ADD = 1;
+    private static final byte COMPLETE = 2;
+    private static final byte SUBDIVIDE = 3;
+    private static final byte RECUR = 4;
+    private static final byte REVERT = 5;
+
+    // chunk plan start of a task without a plan
+    private static final long NO_PLAN = Long.MIN_VALUE;
+
+    private final File snapshot;
+    private final File journal;
+    private final int lazyDepth;
+
+    private TaskNode head;
+    private FileChannel channel;
+    private long sequence;
+    private int records;
+
+    // reused to build each record before it is framed
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream record = new DataOutputStream(buffer);
+
+    // framed records waiting to be written
+    private final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+
+    public TaskJournal(File snapshot, File journal) {
+        this(snapshot, journal, Integer.MAX_VALUE);
+    }
+
+    /**
+     * TaskJournal
+     * Create a journal whose snapshot is only loaded down to a given depth
+     * below the root.
+     *
+     * @param snapshot  the snapshot file
+     * @param journal   the journal file
+     * @param lazyDepth levels to load up front, Integer.MAX_VALUE for all
+     */
+    public TaskJournal(File snapshot, File journal, int lazyDepth) {
+        this.snapshot = snapshot;
+        this.journal = journal;
+        this.lazyDepth = lazyDepth;
+    }
+
+    /**
+     * load
+     * Read the snapshot, replay the journal over it and open the journal for
+     * appending.  If nothing was saved yet the given tree is used and written
+     * out as the first snapshot.
+     *
+     * @param emptyTree tree to start from when there is no snapshot
+     * @return the restored tree
+     */
+    public TaskNode load(TaskNode emptyTree) throws IOException {
+        long saved = 0;
+        if (snapshot.exists()) {
+            TaskSnapshot image = TaskSnapshot.isSerialized(snapshot)
+                                 ? TaskSnapshot.migrate(snapshot)
+                                 : TaskSnapshot.read(snapshot, lazyDepth);
+            head = image.getTree();
+            saved = image.getSequence();
+        } else {
+            head = emptyTree;
+        }
+        sequence = saved;
+
+        channel = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end = replay(saved);
+        channel.truncate(end);
+        channel.position(end);
+
+        if (!snapshot.exists()) {
+            checkpoint();
+        }
+        return head;
+    }
+
+    /**
+     * logAdd
+     * Record that a task, along with any children it already has, is about to
+     * be added under a parent.
+     *
+     * @param parent the node receiving the child
+     * @param child  the new child
+     */
+    public void logAdd(TaskNode parent, TaskNode child) throws IOException {
+        logAddAll(parent, Collections.singletonList(child));
+    }
+
+    /**
+     * logAddAll
+     * Record that several tasks and their subtrees are about to be added
+     * under a parent, as with TaskNode.addChildren.  The journal is synced
+     * once for the whole batch.
+     *
+     * @param parent      the node receiving the children
+     * @param newChildren the new children, in order
+     */
+    public void logAddAll(TaskNode parent, List<TaskNode> newChildren)
+            throws IOException {
+        compactIfDue();
+        // chunks the parent has not made yet are left alone, the children
+        // are given the indexes after them
+        int[] parentPath = pathOf(parent);
+        int index = parent.nextChildIndex();
+
+        // each entry is a node and the path it will have once added
+        Deque<TaskNode> nodes = new ArrayDeque<>();
+        Deque<int[]> paths = new ArrayDeque<>();
+        for (TaskNode child : newChildren) {
+            nodes.push(child);
+            paths.push(extend(parentPath, index++));
+
+            while (!nodes.isEmpty()) {
+                TaskNode node = nodes.pop();
+                int[] path = paths.pop();
+                DataOutputStream out = begin(ADD,
+                        Arrays.copyOf(path, path.length - 1));
+                out.writeUTF(node.getCategory());
+                out.writeLong(node.getPackedDueDate());
+                out.writeInt(node.getTaskCount());
+                out.writeInt(node.getStartingIndex());
+                write();
+                if (node.getRecurrence() != null) {
+                    writeRecurrence(begin(RECUR, path),
+                            node.getRecurrence());
+                    write();
+                }
+
+                List<TaskNode> children = node.getChildren();
+                ListIterator<TaskNode> it =
+                        children.listIterator(children.size());
+                while (it.hasPrevious()) {
+                    int i = it.previousIndex();
+                    nodes.push(it.previous());
+                    paths.push(extend(path, i));
+                }
+            }
+        }
+        drain();
+        channel.force(false);
+    }
+
+    /**
+     * logCompleted
+     * Record that a task is about to be marked completed or incomplete.
+     */
+    public void logCompleted(TaskNode node, boolean completed)
+            throws IOException {
+        compactIfDue();
+        DataOutputStream out = begin(COMPLETE, pathOf(node));
+        out.writeBoolean(completed);
+        append();
+    }
+
+    /**
+     * logCompletedAll
+     * Record that several tasks are about to be completed together, as with
+     * TaskNode.completeAll.  Tasks already completed or below another task
+     * of the batch are left out, since the batch completes them anyway, so
+     * replaying the rest one at a time ends in the same tree.  The journal
+     * is synced once for the whole batch.
+     *
+     * @param tasks the tasks to complete
+     */
+    public void logCompletedAll(Collection<TaskNode> tasks)
+            throws IOException {
+        compactIfDue();
+        Set<TaskNode> batch = new HashSet<>(tasks);
+        Set<TaskNode> logged = new HashSet<>();
+        for (TaskNode node : tasks) {
+            if (node.isCompleted() || hasAncestorIn(node, batch)
+                || !logged.add(node)) {
+                continue;
+            }
+            DataOutputStream out = begin(COMPLETE, pathOf(node));
+            out.writeBoolean(true);
+            write();
+        }
+        drain();
+        channel.force(false);
+    }
+
+    /**
+     * logSubDivide
+     * Record that a task is about to be sub-divided from a starting point.
+     */
+    public void logSubDivide(TaskNode node, LocalDateTime startingPoint)
+            throws IOException {
+        compactIfDue();
+        DataOutputStream out = begin(SUBDIVIDE, pathOf(node));
+        out.writeLong(startingPoint.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(startingPoint.getNano());
+        append();
+    }
+
+    /**
+     * logRecurrence
+     * Record that a task is about to be given a recurrence rule, or have its
+     * rule taken away when it is null.
+     */
+    public void logRecurrence(TaskNode node, Recurrence recurrence)
+            throws IOException {
+        compactIfDue();
+        writeRecurrence(begin(RECUR, pathOf(node)), recurrence);
+        append();
+    }
+
+    /**
+     * logRevert
+     * Record that tasks are about to be put back the way they were in an
+     * earlier version, as ConcurrentTaskTree.undo does, one after another
+     * with TaskNode.revert.  Each task is recorded with the state it takes
+     * on and its children: a child it keeps by its index, any other in
+     * full.  The tasks must be in the order they are reverted, children
+     * before their parents, so each one's path is still the same when it is
+     * replayed.  The record only grows with the tasks that change.
+     *
+     * @param tasks    the live tasks to revert, in order
+     * @param states   childless copies of them as they were
+     * @param children the children each one had, live or newly copied
+     */
+    void logRevert(List<TaskNode> tasks, List<TaskNode> states,
+                   List<List<TaskNode>> children) throws IOException {
+        compactIfDue();
+        DataOutputStream out = begin(REVERT, new int[0]);
+        out.writeInt(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            TaskNode task = tasks.get(i);
+            int[] path = pathOf(task);
+            out.writeInt(path.length);
+            for (int index : path) {
+                out.writeInt(index);
+            }
+            writeTask(out, states.get(i));
+            out.writeInt(children.get(i).size());
+            for (TaskNode child : children.get(i)) {
+                if (child.getParent() == task) {
+                    out.writeInt(child.getChildIndex());
+                } else {
+                    out.writeInt(-1);
+                    writeSubtree(out, child);
+                }
+            }
+        }
+        append();
+    }
+
+    /**
+     * checkpoint
+     * Atomically replace the snapshot with the current tree and then empty
+     * the journal.
+     */
+    public void checkpoint() throws IOException {
+        TaskSnapshot.replace(head, sequence, snapshot);
+
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        records = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    // the previous operation has been applied by now, so it is safe to fold
+    // the journal into a new snapshot
+    private void compactIfDue() throws IOException {
+        if (records >= COMPACT_EVERY) {
+            checkpoint();
+        }
+    }
+
+    private DataOutputStream begin(byte op, int[] path) throws IOException {
+        buffer.reset();
+        record.writeLong(sequence + 1);
+        record.writeByte(op);
+        record.writeInt(path.length);
+        for (int index : path) {
+            record.writeInt(index);
+        }
+        return record;
+    }
+
+    // frame the pending record and sync it
+    private void append() throws IOException {
+        write();
+        drain();
+        channel.force(false);
+    }
+
+    // frame the pending record as length, checksum, payload and queue it
+    private void write() throws IOException {
+        byte[] payload = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        DataOutputStream out = new DataOutputStream(frames);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+        sequence++;
+        records++;
+        if (frames.size() >= 1 << 16) {
+            drain();
+        }
+    }
+
+    // write the queued records out
+    private void drain() throws IOException {
+        ByteBuffer pending = ByteBuffer.wrap(frames.toByteArray());
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        frames.reset();
+    }
+
+    // apply every intact record newer than the snapshot, return where the
+    // intact part of the journal ends
+    private long replay(long saved) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0))));
+        long end = 0;
+        while (true) {
+            byte[] payload;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0 || length > channel.size()) {
+                    break;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+
+            DataInputStream entry = new DataInputStream(
+                    new ByteArrayInputStream(payload));
+            long seq = entry.readLong();
+            if (seq > saved) {
+                apply(entry);
+                sequence = seq;
+            }
+            end += 8 + payload.length;
+            records++;
+        }
+        return end;
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        TaskNode node = find(in);
+
+        switch (op) {
+            case ADD:
+                TaskNode child = new TaskNode(in.readUTF(),
+                        DueDates.unpack(in.readLong()));
+                child.setTaskCount(in.readInt());
+                child.setStartingIndex(in.readInt());
+                node.addChild(child);
+                break;
+            case COMPLETE:
+                node.setCompleted(in.readBoolean());
+                break;
+            case SUBDIVIDE:
+                node.subDivide(LocalDateTime.ofEpochSecond(in.readLong(),
+                        in.readInt(), ZoneOffset.UTC));
+                break;
+            case RECUR:
+                int days = in.readInt();
+                long until = in.readLong();
+                int remaining = in.readInt();
+                node.setRecurrence(days == 0 ? null
+                                   : Recurrence.of(days, until, remaining));
+                break;
+            case REVERT:
+                revert(in);
+                break;
+            default:
+                throw new IOException("unknown journal record " + op);
+        }
+    }
+
+    // the task at the path that comes next
+    private TaskNode find(DataInputStream in) throws IOException {
+        TaskNode node = head;
+        int depth = in.readInt();
+        for (int i = 0; i < depth; i++) {
+            node = node == null ? null : node.getChild(in.readInt());
+        }
+        if (node == null) {
+            throw new IOException("journal does not match the snapshot");
+        }
+        return node;
+    }
+
+    // replay the tasks of a revert record, see logRevert
+    private void revert(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            TaskNode node = find(in);
+            TaskNode state = readTask(in);
+            int childCount = in.readInt();
+            List<TaskNode> children = new ArrayList<>(childCount);
+            for (int j = 0; j < childCount; j++) {
+                int kept = in.readInt();
+                TaskNode child = kept < 0 ? readSubtree(in)
+                                 : node.getChild(kept);
+                if (child == null) {
+                    throw new IOException(
+                            "journal does not match the snapshot");
+                }
+                children.add(child);
+            }
+            node.revert(state, children);
+        }
+    }
+
+    // a task without its children, the way TaskView.copyOf copies one
+    private static void writeTask(DataOutputStream out, TaskNode task)
+            throws IOException {
+        String category = task.getBaseCategory();
+        out.writeBoolean(category != null);
+        if (category != null) {
+            out.writeUTF(category);
+        }
+        out.writeBoolean(task.hasDerivedName());
+        out.writeLong(task.getPackedDueDate());
+        out.writeBoolean(task.isCompleted());
+        out.writeBoolean(task.isParent());
+        out.writeInt(task.getNumOfChildren());
+        out.writeInt(task.getTaskCount());
+        out.writeInt(task.getStartingIndex());
+        out.writeInt(task.getEndingIndex());
+        ChunkPlan chunks = task.getChunkPlan();
+        out.writeLong(chunks == null ? NO_PLAN : chunks.getStart());
+        out.writeInt(task.getAddedAfterPlan());
+        writeRecurrence(out, task.getRecurrence());
+    }
+
+    private static TaskNode readTask(DataInputStream in) throws IOException {
+        String category = in.readBoolean() ? in.readUTF() : null;
+        boolean derivedName = in.readBoolean();
+        long dueDate = in.readLong();
+        TaskNode task = new TaskNode(category, DueDates.unpack(dueDate));
+        boolean completed = in.readBoolean();
+        boolean parent = in.readBoolean();
+        int numOfChildren = in.readInt();
+        task.setTaskCount(in.readInt());
+        task.setStartingIndex(in.readInt());
+        task.restore(completed, parent, numOfChildren, in.readInt());
+        if (derivedName) {
+            task.deriveName(category);
+        }
+        long start = in.readLong();
+        int addedAfterPlan = in.readInt();
+        if (start != NO_PLAN) {
+            task.restoreChunks(ChunkPlan.of(start, task.getStartingIndex(),
+                    task.getTaskCount(), dueDate), addedAfterPlan);
+        }
+        int days = in.readInt();
+        long until = in.readLong();
+        int remaining = in.readInt();
+        task.restoreRecurrence(days == 0 ? null
+                               : Recurrence.of(days, until, remaining));
+        return task;
+    }
+
+    // a detached subtree in pre-order, each task followed by its child
+    // count
+    private static void writeSubtree(DataOutputStream out, TaskNode top)
+            throws IOException {
+        Deque<TaskNode> stack = new ArrayDeque<>();
+        stack.push(top);
+        while (!stack.isEmpty()) {
+            TaskNode node = stack.pop();
+            writeTask(out, node);
+            List<TaskNode> children = node.getChildren();
+            out.writeInt(children.size());
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+    }
+
+    private static TaskNode readSubtree(DataInputStream in)
+            throws IOException {
+        TaskNode top = readTask(in);
+        List<TaskNode> made = new ArrayList<>();
+        made.add(top);
+        // open parents and how many children each still has to read
+        Deque<TaskNode> parents = new ArrayDeque<>();
+        Deque<Integer> left = new ArrayDeque<>();
+        parents.push(top);
+        left.push(in.readInt());
+        while (!parents.isEmpty()) {
+            if (left.peek() == 0) {
+                parents.pop();
+                left.pop();
+                continue;
+            }
+            left.push(left.pop() - 1);
+            TaskNode child = readTask(in);
+            parents.peek().attach(child);
+            made.add(child);
+            parents.push(child);
+            left.push(in.readInt());
+        }
+        // children were read after their parents, so walk back to fold
+        // their due dates in first
+        for (int i = made.size() - 1; i >= 0; i--) {
+            made.get(i).restoreChildIndexes();
+            made.get(i).restoreDueDateChild();
+        }
+        return top;
+    }
+
+    // a rule as its period, last date and occurrences left, period 0 for
+    // none
+    private static void writeRecurrence(DataOutputStream out,
+                                        Recurrence recurrence)
+            throws IOException {
+        if (recurrence == null) {
+            out.writeInt(0);
+            out.writeLong(Recurrence.FOREVER);
+            out.writeInt(Recurrence.UNLIMITED);
+            return;
+        }
+        out.writeInt(recurrence.getDays());
+        out.writeLong(recurrence.getUntil());
+        out.writeInt(recurrence.getRemaining());
+    }
+
+    private static boolean hasAncestorIn(TaskNode node, Set<TaskNode> nodes) {
+        for (TaskNode n = node.getParent(); n != null; n = n.getParent()) {
+            if (nodes.contains(n)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int[] pathOf(TaskNode node) {
+        int depth = 0;
+        for (TaskNode n = node; n != head; n = n.getParent()) {
+            if (n == null) {
+                throw new IllegalArgumentException(node + " is not in the tree");
+            }
+            depth++;
+        }
+        int[] path = new int[depth];
+        for (TaskNode n = node; n != head; n = n.getParent()) {
+            path[--depth] = n.getChildIndex();
+        }
+        return path;
+    }
+
+    private static int[] extend(int[] path, int index) {
+        int[] extended = Arrays.copyOf(path, path.length + 1);
+        extended[path.length] = index;
+        return extended;
+    }
+}
@@ -1,14 +1,40 @@
 package dataStructure;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-
-import static java.time.temporal.ChronoUnit.DAYS;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class TaskNode implements Serializable, Comparable<TaskNode> {
 
+    // pinned so trees saved before the scheduler fields were added still load
+    private static final long serialVersionUID = -8084048941362736475L;
+
+    // re-planning fewer tasks than this is not worth handing to other cores
+    private static final int PARALLEL_REPLANS = 1024;
+    private static final int REPLANS_PER_TASK = 256;
+
     private boolean isCompleted;
     private boolean isParent;
     private int numOfChildren;
@@ -16,21 +42,18 @@ public class TaskNode implements Serializable, Comparable<TaskNode> {
     private int startingIndex;
     private int endingIndex;
 
+    // the name of this task, shared with every task of the same name.  For
+    // a chunk it is only the name of the task it is a chunk of, and the rest
+    // is worked out from its range when asked for, see chunkName.
     private String category;
+    private boolean derivedName;
 
-    // the due date of this task
-    private int year;
-    private int month;
-    private int day;
-    private int hour; // 0 - 23, military time
-    private int minute;
+    // the due date of this task, packed by DueDates
+    private long dueDate;
 
-    // the due date of my earliest child
-    private int yearChild;
-    private int monthChild;
-    private int dayChild;
-    private int hourChild; // 0 - 23, military time
-    private int minuteChild;
+    // the earliest due date among me and my incomplete descendants, packed by
+    // DueDates.  Kept up to date incrementally, see propagateDueDate.
+    private long dueDateChild;
 
     // list of children
     private List<TaskNode> children;
@@ -38,23 +61,72 @@ public class TaskNode implements Serializable, Comparable<TaskNode> {
     // parent
     private TaskNode parent;
 
+    // index of this node among its parent's children.  Children are only
+    // ever appended or replaced wholesale, so the index never shifts.  It is
+    // also the position in the parent's child list, unless chunks of the
+    // parent's plan are still to be made in front of it, see addedAfterPlan.
+    private transient int childIndex;
+
+    // number of children not completed yet, so a parent can tell it is
+    // finished without rescanning its children on every completion
+    private transient int pendingChildren;
+
+    // slot of this node in the scheduler heap of its tree
+    private transient int heapIndex;
+
+    // heap of schedulable leaves, only held by the root of a tree
+    private transient TaskScheduler scheduler;
+
+    // listeners told about changes to the tree, only held by its root
+    private transient List<TaskTreeListener> listeners;
+
+    // snapshot rows this node's children can be loaded from.  While unloaded
+    // the children stay on disk and dueDateChild summarizes them.
+    private transient SnapshotSource source;
+    private transient int sourceRow;
+    private transient boolean unloaded;
+
+    // the latest due date of the incomplete tasks still on disk, or
+    // Long.MAX_VALUE if the snapshot does not record it
+    private transient long latestDueDate;
+
+    // set on this node and its ancestors once anything below has changed
+    private transient boolean modified;
+
+    // the day chunks of a sub-divided task that have not been made yet.
+    // Chunks are made in order as they are needed, always at least up to
+    // one that could be chosen; the cursor is where the last one made was
+    // worked out.
+    private ChunkPlan chunks;
+    private transient ChunkPlan.Cursor chunkCursor;
+
+    // children added while the plan still had chunks to make.  They come
+    // after every chunk of the plan, so they are the last children and
+    // their indexes leave room for the chunks not made yet, which are made
+    // in front of them.  0 once the plan has run out.
+    private int addedAfterPlan;
+
+    // how the task comes round again, null if it does not.  The task is
+    // always the next occurrence due; the ones after are worked out from
+    // the rule when needed.
+    private Recurrence recurrence;
+
     public TaskNode(String category, int year, int month, int day, int hour,
                     int minute) {
-        init(category, year, month, day, hour, minute);
+        init(category, DueDates.pack(year, month, day, hour, minute));
     }
 
     public TaskNode(String category, LocalDateTime dueDate) {
-        init(category, dueDate.getYear(), dueDate.getMonthValue(),
-                dueDate.getDayOfMonth(), dueDate.getHour(), dueDate.getMinute());
+        init(category, DueDates.pack(dueDate));
     }
 
-    private void init(String category, int year, int month, int day, int hour, int minute) {
-        this.category = category;
-        this.year = yearChild = year;
-        this.month = monthChild = month;
-        this.day = dayChild = day;
-        this.hour = hourChild = hour;
-        this.minute = minuteChild = minute;
+    private TaskNode(String category, long dueDate) {
+        init(category, dueDate);
+    }
+
+    private void init(String category, long dueDate) {
+        this.category = category == null ? null : category.intern();
+        this.dueDate = dueDateChild = dueDate;
 
         numOfChildren = 0;
         isCompleted = false;
@@ -71,67 +143,229 @@ public class TaskNode implements Serializable, Comparable<TaskNode> {
     }
 
     public void setCompleted(boolean completed) {
-        isCompleted = completed;
-
-        for (TaskNode t : children) {
-            t.setCompleted(true);
+        // reopening a task has always completed its children, and with them
+        // the task itself, so only a task without children really reopens
+        if (completed || !children().isEmpty()) {
+            completeAll(Collections.singletonList(this));
+            return;
+        }
+        touch();
+        long previous = pendingDueDate();
+        if (isCompleted && parent != null) {
+            parent.pendingChildren++;
+        }
+        isCompleted = false;
+        dueDateChild = dueDate;
+        propagateDueDate(previous);
+
+        TaskScheduler s = root().scheduler;
+        if (s != null) {
+            s.update(this);
+            if (parent != null) {
+                s.update(parent);
+            }
+        }
+        for (TaskTreeListener l : listeners()) {
+            l.taskChanged(this);
         }
+        if (parent != null && parent.parent != null) {
+            parent.parent.growChunks();
+        }
+    }
 
-        if (completed && parent != null) {
-            parent.removeChildren();
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    /**
+     * setRecurrence
+     * Make this task come round again by a rule, or stop it with null.  The
+     * task stays a single node: completing it moves its due date on to the
+     * next occurrence and drops what was below the one done, until the
+     * series ends and it completes for good.  Only the next occurrence can
+     * be chosen or shows up in the agenda.
+     *
+     * @param recurrence the rule, counting from the current due date
+     */
+    public void setRecurrence(Recurrence recurrence) {
+        touch();
+        this.recurrence = recurrence;
+        for (TaskTreeListener l : listeners()) {
+            l.taskChanged(this);
         }
     }
 
-    private int getNumOfChildren() {
+    // set the rule a snapshot saved for this node, see restore
+    void restoreRecurrence(Recurrence recurrence) {
+        this.recurrence = recurrence;
+    }
+
+    /**
+     * occurrences
+     * Return the due dates of the occurrences after the current one, worked
+     * out from the rule rather than stored.
+     *
+     * @param limit the most dates to return
+     * @return the dates, empty if the task does not recur
+     */
+    public List<LocalDateTime> occurrences(int limit) {
+        return recurrence == null ? Collections.<LocalDateTime>emptyList()
+                                  : recurrence.occurrences(getDueDate(), limit);
+    }
+
+    int getPendingChildren() {
+        return pendingChildren;
+    }
+
+    int getNumOfChildren() {
         return numOfChildren;
     }
 
     public String getCategory() {
+        return derivedName ? chunkName(category, startingIndex, endingIndex)
+                           : category;
+    }
+
+    /**
+     * chunkName
+     * Return the name of a chunk covering tasks first to last of a task.
+     *
+     * @param category name of the task sub-divided
+     * @param first    first task in the chunk
+     * @param last     last task in the chunk
+     * @return the chunk's name
+     */
+    static String chunkName(String category, int first, int last) {
+        return first == last ? category + ": " + first
+                             : category + ": " + first + " - " + last;
+    }
+
+    // the stored part of the name, all of it unless hasDerivedName
+    String getBaseCategory() {
         return category;
     }
 
+    boolean hasDerivedName() {
+        return derivedName;
+    }
+
+    // name this task as a chunk of a task named category, see chunkName
+    void deriveName(String category) {
+        this.category = category;
+        derivedName = true;
+    }
+
+    // the name the chunks of this task refer to, shared unless this task
+    // is a chunk itself
+    String chunkPrefix() {
+        return derivedName ? getCategory() : category;
+    }
+
+    // keep the name in full before the range it is worked out from changes
+    private void fixName() {
+        if (derivedName) {
+            category = getCategory();
+            derivedName = false;
+        }
+    }
+
+    public LocalDateTime getDueDate() {
+        return DueDates.unpack(dueDate);
+    }
+
     public int getYear() {
-        return year;
+        return getDueDate().getYear();
     }
 
     public int getMonth() {
-        return month;
+        return getDueDate().getMonthValue();
     }
 
     public int getDay() {
-        return day;
+        return getDueDate().getDayOfMonth();
     }
 
     public int getHour() {
-        return hour;
+        return getDueDate().getHour();
     }
 
     public int getMinute() {
-        return minute;
+        return getDueDate().getMinute();
+    }
+
+    long getPackedDueDate() {
+        return dueDate;
     }
 
-    private int getYearChild() {
-        return yearChild;
+    long getPackedDueDateChild() {
+        return dueDateChild;
     }
 
-    private int getMonthChild() {
-        return monthChild;
+    public LocalDateTime getEarliestDueDate() {
+        return DueDates.unpack(dueDateChild);
     }
 
-    private int getDayChild() {
-        return dayChild;
+    private void setParent(TaskNode parent) {
+        this.parent = parent;
     }
 
-    private int getHourChild() {
-        return hourChild;
+    public TaskNode getParent() {
+        return parent;
     }
 
-    private int getMinuteChild() {
-        return minuteChild;
+    int getChildIndex() {
+        return childIndex;
     }
 
-    private void setParent(TaskNode parent) {
-        this.parent = parent;
+    void setChildIndex(int childIndex) {
+        this.childIndex = childIndex;
+    }
+
+    int getHeapIndex() {
+        return heapIndex;
+    }
+
+    void setHeapIndex(int heapIndex) {
+        this.heapIndex = heapIndex;
+    }
+
+    List<TaskNode> getChildren() {
+        return children;
+    }
+
+    boolean isParent() {
+        return isParent;
+    }
+
+    /**
+     * restore
+     * Set the state a snapshot saved for this node, bypassing the
+     * bookkeeping the public mutators do.
+     */
+    void restore(boolean completed, boolean parent, int numOfChildren,
+                 int endingIndex) {
+        if (endingIndex != this.endingIndex) {
+            fixName();
+        }
+        this.isCompleted = completed;
+        this.isParent = parent;
+        this.numOfChildren = numOfChildren;
+        this.endingIndex = endingIndex;
+    }
+
+    // append a child read from a snapshot
+    void attach(TaskNode child) {
+        child.childIndex = children.size();
+        children.add(child);
+        child.parent = this;
+        if (!child.isCompleted) {
+            pendingChildren++;
+        }
+    }
+
+    // recompute the earliest due date once every child has been restored
+    void restoreDueDateChild() {
+        dueDateChild = earliestDueDate();
     }
 
     public int getTaskCount() {
@@ -139,21 +373,27 @@ public class TaskNode implements Serializable, Comparable<TaskNode> {
     }
 
     public void setTaskCount(int taskCount) {
+        // chunks still to be made were planned for the old count
+        makeChunks(Integer.MAX_VALUE);
         this.taskCount = taskCount;
     }
 
+    int getStartingIndex() {
+        return startingIndex;
+    }
+
     public void setStartingIndex(int startingIndex) {
+        makeChunks(Integer.MAX_VALUE);
+        if (startingIndex != this.startingIndex) {
+            fixName();
+        }
         this.startingIndex = startingIndex;
     }
 
-    private int getEndingIndex() {
+    int getEndingIndex() {
         return endingIndex;
     }
 
-    private void setEndingIndex(int endingIndex) {
-        this.endingIndex = endingIndex;
-    }
-
     /* End Getters and Setters */
 
     /**
@@ -168,261 +408,1142 @@ public class TaskNode implements Serializable, Comparable<TaskNode> {
 
     @Override
     public int compareTo(TaskNode taskNode) {
-        int otherYearChild = taskNode.getYearChild();
-        int otherMonthChild = taskNode.getMonthChild();
-        int otherDayChild = taskNode.getDayChild();
-        int otherHourChild = taskNode.getHourChild();
-        int otherMinuteChild = taskNode.getMinuteChild();
+        if (dueDateChild != taskNode.dueDateChild) {
+            return Long.compare(dueDateChild, taskNode.dueDateChild);
+        }
+        return Long.compare(dueDate, taskNode.dueDate);
+    }
 
-        int otherYear = taskNode.getYear();
-        int otherMonth = taskNode.getMonth();
-        int otherDay = taskNode.getDay();
-        int otherHour = taskNode.getHour();
-        int otherMinute = taskNode.getMinute();
+    public void addChild(TaskNode child) {
+        long start = Metrics.start();
+        addChildren(Collections.singletonList(child));
+        Metrics.ADD_CHILD.stop(start);
+    }
 
-        if (otherYearChild != yearChild) {
-            return yearChild - otherYearChild;
+    /**
+     * addChildren
+     * Append several tasks, each possibly with a subtree of its own, in one
+     * step.  Due dates are passed up the tree once for the whole batch.
+     *
+     * @param newChildren the tasks to add, in order
+     */
+    public void addChildren(List<TaskNode> newChildren) {
+        if (newChildren.isEmpty()) {
+            return;
         }
-
-        if (otherMonthChild != monthChild) {
-            return monthChild - otherMonthChild;
+        // chunks not made yet stay that way, the children go after them
+        loadChildren();
+        touch();
+        long previous = pendingDueDate();
+        boolean reopened = isCompleted;
+        long earliest = Long.MAX_VALUE;
+        for (TaskNode child : newChildren) {
+            child.childIndex = nextChildIndex();
+            children.add(child);
+            if (chunks != null) {
+                addedAfterPlan++;
+            }
+            numOfChildren++;
+            child.setParent(this);
+            child.scheduler = null;
+            child.listeners = null;
+            if (!child.isCompleted()) {
+                pendingChildren++;
+                earliest = Math.min(earliest, child.dueDateChild);
+            }
+        }
+        isParent = true;
+        isCompleted = false;
+        if (reopened && parent != null) {
+            parent.pendingChildren++;
         }
 
-        if (otherDayChild != dayChild) {
-            return dayChild - otherDayChild;
+        // reopening a completed task also brings back its other children
+        if (reopened) {
+            dueDateChild = earliestDueDate();
+        } else if (earliest < dueDateChild) {
+            dueDateChild = earliest;
         }
+        propagateDueDate(previous);
 
-        if (otherHourChild != hourChild) {
-            return hourChild - otherHourChild;
+        TaskScheduler s = root().scheduler;
+        if (s != null) {
+            if (reopened) {
+                s.addSubtree(this);
+            } else {
+                for (TaskNode child : newChildren) {
+                    s.addSubtree(child);
+                }
+            }
+            s.update(this);
         }
+        for (TaskTreeListener l : listeners()) {
+            l.childrenAdded(this, newChildren);
+        }
+        if (parent != null) {
+            parent.growChunks();
+        }
+    }
+
+    /**
+     * completeAll
+     * Complete several tasks in one pass.  Each task is marked completed
+     * along with everything below it, then every parent left without an
+     * incomplete child is completed and pruned in turn, deepest first.
+     * Parents count their incomplete children, so finishing one costs O(1)
+     * rather than a scan of its siblings, and each changed ancestor has its
+     * earliest due date worked out once for the whole batch.  Listeners hear
+     * about the changes once the tree is consistent again.  A recurring task
+     * moves on to its next occurrence instead, see setRecurrence.
+     *
+     * @param tasks the tasks to complete, in any order
+     */
+    public static void completeAll(Collection<TaskNode> tasks) {
+        Map<TaskNode, Change> changes = new HashMap<>();
+        List<List<Change>> levels = new ArrayList<>();
+        List<Change> reported = new ArrayList<>();
 
-        if (otherMinuteChild != minuteChild) {
-            return minuteChild - otherMinuteChild;
+        for (TaskNode task : tasks) {
+            if (task.isCompleted) {
+                continue;
+            }
+            Change change = changeOf(task, task.depth(), changes, levels);
+            if (change.completed) {
+                // a recurring task listed twice only moves on once
+                continue;
+            }
+            change.dropped = task.hasChildren();
+            change.completed = true;
+            task.markCompleted();
+            reported.add(change);
         }
 
-        if (otherYear != year) {
-            return year - otherYear;
+        // a level only reports to the one above, so by the time a parent
+        // is reached every child below it has been settled
+        for (int depth = levels.size() - 1; depth >= 0; depth--) {
+            for (Change change : levels.get(depth)) {
+                TaskNode task = change.task;
+                if (!change.completed) {
+                    task.settle(change);
+                    if (change.completed || change.added != null) {
+                        reported.add(change);
+                    }
+                }
+                long after = task.pendingDueDate();
+                if (task.parent != null && after != change.before) {
+                    changeOf(task.parent, depth - 1, changes, levels)
+                            .report(change.before, after,
+                                    task.parent.dueDateChild);
+                }
+            }
         }
 
-        if (otherMonth != month) {
-            return month - otherMonth;
+        for (Change change : reported) {
+            TaskNode task = change.task;
+            for (TaskTreeListener l : task.listeners()) {
+                if (change.added != null) {
+                    l.taskAdded(task, change.added);
+                    continue;
+                }
+                if (change.dropped) {
+                    l.childrenRemoved(task);
+                }
+                l.taskChanged(task);
+            }
         }
+    }
 
-        if (otherDay != day) {
-            return day - otherDay;
+    // the change completeAll is making to a task, recorded on first sight
+    private static Change changeOf(TaskNode task, int depth,
+                                   Map<TaskNode, Change> changes,
+                                   List<List<Change>> levels) {
+        Change change = changes.get(task);
+        if (change == null) {
+            change = new Change(task);
+            changes.put(task, change);
+            while (levels.size() <= depth) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(depth).add(change);
         }
+        return change;
+    }
 
-        if (otherHour != hour) {
-            return hour - otherHour;
+    /**
+     * markCompleted
+     * Complete this task and everything below it and drop the children.  A
+     * recurring task with occurrences left moves on to the next one instead
+     * and stays incomplete.  The parent's count is kept, its due dates are
+     * left to the caller.
+     */
+    private void markCompleted() {
+        if (unloaded) {
+            // the children would all be completed and dropped anyway
+            unloaded = false;
+            source = null;
+        }
+        touch();
+        long next = recurrence == null ? Recurrence.FOREVER
+                                       : recurrence.next(dueDate);
+        boolean recurs = next != Recurrence.FOREVER;
+
+        // everything below leaves the tree, so it leaves the indexes too.  A
+        // task that recurs is indexed by its due date, so it leaves them as
+        // well until it has moved.
+        TaskScheduler s = root().scheduler;
+        if (s != null) {
+            if (recurs) {
+                s.removeSubtree(this);
+            } else {
+                for (TaskNode child : children) {
+                    s.removeSubtree(child);
+                }
+            }
+        }
+        if (recurs) {
+            dueDate = next;
+            recurrence = recurrence.advance();
+        } else {
+            if (!isCompleted && parent != null) {
+                parent.pendingChildren--;
+            }
+            isCompleted = true;
+        }
+        dueDateChild = dueDate;
+        chunks = null;
+        chunkCursor = null;
+        addedAfterPlan = 0;
+        Deque<TaskNode> stack = new ArrayDeque<>(children);
+        while (!stack.isEmpty()) {
+            TaskNode t = stack.pop();
+            t.isCompleted = true;
+            t.dueDateChild = t.dueDate;
+            t.pendingChildren = 0;
+            stack.addAll(t.children);
         }
+        dropChildren();
+        if (s != null && recurs) {
+            s.addSubtree(this);
+        } else if (s != null) {
+            s.update(this);
+        }
+    }
 
-        if (otherMinute != minute) {
-            return minute - otherMinute;
+    // bring a parent up to date with what its children reported, making its
+    // next chunk or pruning it once none of its children are left to do
+    private void settle(Change change) {
+        change.added = extendChunks();
+        if (change.added != null) {
+            change.rescan = true;
+        } else if (pendingChildren == 0 && !children.isEmpty()) {
+            change.dropped = true;
+            change.completed = true;
+            markCompleted();
+            return;
         }
+        if (change.rescan) {
+            dueDateChild = earliestDueDate();
+        } else if (change.earliest < dueDateChild) {
+            dueDateChild = change.earliest;
+        }
+    }
 
-        return 0;
+    // detach every child so dropped nodes cannot reach back into the tree
+    private void dropChildren() {
+        for (TaskNode t : children) {
+            t.setParent(null);
+        }
+        children = new LinkedList<>();
+        pendingChildren = 0;
     }
 
-    public void addChild(TaskNode child) {
-        children.add(child);
-        numOfChildren++;
-        isParent = true;
-        isCompleted = false;
-        child.setParent(this);
+    /**
+     * chooseTask
+     * Return the incomplete task that should be worked on next.  Tasks are
+     * ordered by compareTo, ties go to the task with the most children and
+     * then to the task found first in the tree.  On the root of a tree this is
+     * answered from the scheduler heap; on an inner node its subtree is
+     * scanned, skipping children whose earliest due date is already too late.
+     *
+     * @return the next task, or null if every task in the tree is completed
+     */
+    public TaskNode chooseTask() {
+        long start = Metrics.start();
+        TaskNode next = findTask();
+        Metrics.CHOOSE_TASK.stop(start);
+        return next;
+    }
 
-        boolean resetChild = false;
+    private TaskNode findTask() {
+        if (parent == null) {
+            return scheduler().peek();
+        }
 
-        if (child.getYear() < yearChild) {
-            resetChild = true;
-        } else if (child.getYear() > yearChild) {
-            resetChild = false;
-        } else {
-            if (child.getMonth() < monthChild) {
-                resetChild = true;
-            } else if (child.getMonth() > monthChild) {
-                resetChild = false;
-            } else {
-                if (child.getDay() < dayChild) {
-                    resetChild = true;
-                } else if (child.getDay() > dayChild) {
-                    resetChild = false;
-                } else {
-                    if (child.getHour() < hourChild) {
-                        resetChild = true;
-                    } else if (child.getHour() > hourChild) {
-                        resetChild = false;
-                    } else {
-                        if (child.getMinute() < minuteChild) {
-                            resetChild = true;
-                        } else if (child.getMinute() >= minuteChild) {
-                            resetChild = false;
-                        }
-                    }
+        // a subtree due later than the best task so far cannot beat it
+        TaskNode min = null;
+        for (TaskNode t : children()) {
+            if (!t.isCompleted() && (min == null
+                                     || t.dueDateChild <= min.dueDateChild)) {
+                TaskNode candidate = t.findTask();
+                if (min == null || TaskScheduler.precedes(candidate, min)) {
+                    min = candidate;
                 }
             }
         }
+        return min == null ? this : min;
+    }
 
-        if (resetChild) {
-            yearChild = child.yearChild;
-            monthChild = child.getMonthChild();
-            dayChild = child.getDayChild();
-            hourChild = child.getHourChild();
-            minuteChild = child.getMinuteChild();
+    // the scheduler heap of this root, built on first use
+    private TaskScheduler scheduler() {
+        if (scheduler == null) {
+            scheduler = new TaskScheduler(this);
         }
+        return scheduler;
+    }
 
+    /**
+     * agenda
+     * Iterate over the incomplete tasks below this one in the order
+     * chooseTask would return them if each were completed in turn, without
+     * changing anything.  Chunks not made yet are returned as previews that
+     * are not in the tree.  The tree must not change while iterating.
+     *
+     * @return the upcoming tasks, earliest first
+     */
+    public Iterator<TaskNode> agenda() {
+        return new Agenda(this);
     }
 
-    private void removeChildren() {
+    // the agenda as an ordered stream, to take the next few with limit
+    public Stream<TaskNode> agendaStream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                agenda(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
 
-        boolean reset = true;
+    /**
+     * dueBetween
+     * Return this task and the incomplete tasks below it that are due from
+     * one time up to, but not including, another, earliest first.  On the
+     * root of a tree this is answered in O(log n + k) from the due date index
+     * kept with the scheduler heap; on an inner node its subtree is scanned,
+     * skipping children whose earliest due date is already too late.  Chunks
+     * not made yet are not listed, agenda previews them.
+     *
+     * @param from the first due time included
+     * @param to   the first due time left out
+     * @return the tasks due in the range
+     */
+    public List<TaskNode> dueBetween(LocalDateTime from, LocalDateTime to) {
+        return dueBetween(DueDates.pack(from), DueDates.pack(to));
+    }
 
-        for (TaskNode t : children) {
-            if (!t.isCompleted()) {
-                reset = false;
-            }
+    // the incomplete tasks due before a time, earliest first
+    public List<TaskNode> overdue(LocalDateTime now) {
+        return dueBetween(Long.MIN_VALUE, DueDates.pack(now));
+    }
+
+    List<TaskNode> dueBetween(long from, long to) {
+        if (parent == null) {
+            return scheduler().dueDates(this).range(from, to);
         }
+        List<TaskNode> due = new ArrayList<>();
+        if (!isCompleted) {
+            collectDue(from, to, due);
+            due.sort(Comparator.comparingLong(TaskNode::getPackedDueDate));
+        }
+        return due;
+    }
 
-        if (reset) {
-            children = new LinkedList<>();
-            setCompleted(true);
+    private void collectDue(long from, long to, List<TaskNode> due) {
+        if (dueDate >= from && dueDate < to) {
+            due.add(this);
+        }
+        for (TaskNode t : children()) {
+            if (!t.isCompleted && t.dueDateChild < to) {
+                t.collectDue(from, to, due);
+            }
         }
     }
 
-    public TaskNode chooseTask() {
-        // if I have no children, return me
-        if (!isParent) {
-            return this;
-        } else {
-            LinkedList<TaskNode> childTasks = new LinkedList<>();
-            for (TaskNode t : children) {
-                if (!t.isCompleted()) {
-                    childTasks.add(t.chooseTask());
+    /**
+     * search
+     * Return up to limit tasks in memory whose category contains some text,
+     * ignoring case, completed tasks included.  On the root of a tree this
+     * is answered from a search index over the words of every category, built
+     * the first time and kept up to date with the scheduler heap; on an inner
+     * node the tree's results are narrowed to its subtree.  Subtrees still on
+     * disk are not read.
+     *
+     * @param text  the text to look for
+     * @param limit the most tasks to return
+     * @return the matching tasks
+     */
+    public List<TaskNode> search(String text, int limit) {
+        TaskNode root = root();
+        CategoryIndex index = root.scheduler().categories(root);
+        if (this == root) {
+            return index.search(text, limit);
+        }
+        List<TaskNode> found = new ArrayList<>();
+        for (TaskNode t : index.search(text, Integer.MAX_VALUE)) {
+            if (t.isBelow(this)) {
+                found.add(t);
+                if (found.size() == limit) {
+                    break;
                 }
             }
+        }
+        return found;
+    }
 
-            //assert !childTasks.isEmpty();
+    // whether this task is ancestor or below it
+    private boolean isBelow(TaskNode ancestor) {
+        for (TaskNode t = this; t != null; t = t.parent) {
+            if (t == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            TaskNode min = childTasks.get(0);
+    /**
+     * subDivide
+     * Spread the tasks left over the days from a starting point to the due
+     * date as day chunks, or sub-divide each incomplete child of a task
+     * without a task count, one after another.  Only the first chunk is made
+     * now; the rest are made as earlier ones are completed or when they are
+     * asked for, so a task costs O(1) memory however many days it covers.
+     *
+     * Below a parent, each task starts where the one before it ends, which
+     * only needs its plan.  The plans are worked out first, in order, and the
+     * tasks are then re-planned on every core, since each only changes
+     * itself and its own children.  The result and the events fired are the
+     * same as doing them one at a time.
+     *
+     * @param startingPoint the first day
+     * @return the due date of the last chunk, where a following task can
+     * start
+     */
+    public LocalDateTime subDivide(LocalDateTime startingPoint) {
+        long start = Metrics.start();
+        LocalDateTime next = replanSubtree(startingPoint);
+        Metrics.SUB_DIVIDE.stop(start);
+        return next;
+    }
 
-            for (int i = 1; i < childTasks.size(); i++) {
-                int compare = childTasks.get(i).compareTo(min);
-                if (compare < 0) {
-                    min = childTasks.get(i);
-                } else if (compare == 0) {
-                    if (childTasks.get(i).getNumOfChildren() > min
-                            .getNumOfChildren()) {
-                        min = childTasks.get(i);
-                    }
-                }
+    private LocalDateTime replanSubtree(LocalDateTime startingPoint) {
+        loadChildren();
+        if (isParent && !replacesChildren()) {
+            return subDivideChildren(startingPoint);
+        }
+
+        touch();
+        Replan replan = replan(startingPoint);
+        long previous = pendingDueDate();
+        TaskScheduler s = root().scheduler;
+        if (s != null) {
+            s.removeSubtree(this);
+        }
+        apply(replan);
+        propagateDueDate(previous);
+        publish(replan, s);
+        if (parent != null) {
+            parent.growChunks();
+        }
+        return replan.next();
+    }
+
+    // sub-divide every incomplete task below a parent, see subDivide
+    private LocalDateTime subDivideChildren(LocalDateTime startingPoint) {
+        List<Replan> replans = new ArrayList<>();
+        List<TaskNode> parents = new ArrayList<>();
+        LocalDateTime next = planChildren(startingPoint, replans, parents);
+
+        long previous = pendingDueDate();
+        TaskScheduler s = root().scheduler;
+        if (s != null) {
+            // the heap must not see a task change while it is queued
+            for (Replan replan : replans) {
+                s.removeSubtree(replan.task);
+            }
+        }
+        if (replans.size() < PARALLEL_REPLANS) {
+            for (Replan replan : replans) {
+                replan.task.apply(replan);
             }
-            return min;
+        } else {
+            ForkJoinPool.commonPool().invoke(
+                    new ApplyReplans(replans, 0, replans.size()));
+        }
+
+        // parents are listed after everything below them
+        for (TaskNode p : parents) {
+            p.dueDateChild = p.earliestDueDate();
+        }
+        propagateDueDate(previous);
+        for (Replan replan : replans) {
+            replan.task.publish(replan, s);
         }
+        return next;
     }
 
-    public LocalDateTime subDivide(LocalDateTime startingPoint) {
+    /**
+     * planChildren
+     * Walk the incomplete tasks below this one in order, working out where
+     * each starts and how it will be re-planned without changing any of
+     * them.
+     *
+     * @param startingPoint the first day
+     * @param replans       filled with the tasks to re-plan, in order
+     * @param parents       filled with the parents walked, children first
+     * @return where a following task can start
+     */
+    private LocalDateTime planChildren(LocalDateTime startingPoint,
+                                       List<Replan> replans,
+                                       List<TaskNode> parents) {
+        loadChildren();
+        touch();
+        if (isParent && !replacesChildren()) {
+            for (TaskNode t : children) {
+                if (!t.isCompleted()) {
+                    startingPoint = t.planChildren(startingPoint, replans,
+                            parents);
+                }
+            }
+            parents.add(this);
+            return startingPoint;
+        }
+        Replan replan = replan(startingPoint);
+        replans.add(replan);
+        return replan.next();
+    }
 
-        System.out.println("Task Count: " + taskCount);
-        System.out.println("Start: " + startingIndex);
-        System.out.println("Ending Index: " + endingIndex);
+    // a task with a task count replaces its children with day chunks
+    private boolean replacesChildren() {
+        return taskCount > 0 && children.size() > 0;
+    }
 
-        // update starting index based on completed children
-        if (taskCount > 0 && children.size() > 0) {
+    // work out how this task will be re-planned, without changing it
+    private Replan replan(LocalDateTime startingPoint) {
+        boolean removed = replacesChildren();
+        int index = startingIndex;
+        if (removed) {
+            // carry on after the chunks already completed
             for (TaskNode t : children) {
                 if (t.isCompleted()) {
-                    startingIndex = t.getEndingIndex() + 1;
+                    index = t.getEndingIndex() + 1;
                 } else {
                     break;
                 }
             }
-            children = new LinkedList<>();
+        }
+        // if there are no tasks, or no days until due, the plan is null
+        ChunkPlan plan = ChunkPlan.of(DueDates.pack(startingPoint), index,
+                taskCount, dueDate);
+        return new Replan(this, index, removed, plan);
+    }
+
+    /**
+     * apply
+     * Replace the children with the first chunk of a new plan and work out
+     * this task's earliest due date.  Only this task and its children are
+     * changed, so tasks can be re-planned side by side; the parent, the
+     * scheduler and listeners are left to publish.  The task must be out of
+     * the scheduler while it changes.
+     */
+    private void apply(Replan replan) {
+        if (startingIndex != replan.startingIndex) {
+            fixName();
+        }
+        startingIndex = replan.startingIndex;
+        if (replan.removed) {
+            dropChildren();
             isParent = false;
         }
+        chunks = replan.plan;
+        chunkCursor = null;
+        addedAfterPlan = 0;
+        replan.first = nextChunk();
+        dueDateChild = earliestDueDate();
+    }
 
-        // if a parent, sub-divide my children
-        if (isParent) {
-            for (TaskNode t : children) {
-                if (!t.isCompleted()) {
-                    startingPoint = t.subDivide(startingPoint);
+    // queue an applied re-plan again and report it to listeners
+    private void publish(Replan replan, TaskScheduler s) {
+        if (s != null) {
+            s.addSubtree(this);
+        }
+        for (TaskTreeListener l : listeners()) {
+            if (replan.removed) {
+                l.childrenRemoved(this);
+            }
+            if (replan.first != null) {
+                l.taskAdded(this, replan.first);
+            }
+        }
+    }
+
+    /**
+     * revert
+     * Put this task back the way it was in an earlier version: take over the
+     * state of a detached copy and replace the children.  Children kept from
+     * the current ones stay queued as they are; the others leave the
+     * scheduler and the new ones join it.  Only this task is changed, its
+     * kept children must be reverted on their own.
+     *
+     * @param state    a childless copy of the task as it was
+     * @param children the children it had, live or newly copied
+     */
+    void revert(TaskNode state, List<TaskNode> children) {
+        loadChildren();
+        touch();
+        long previous = pendingDueDate();
+        boolean reopened = isCompleted != state.isCompleted;
+        // a recurring task may be back at an earlier occurrence, and it is
+        // indexed by its due date
+        boolean moved = dueDate != state.dueDate;
+        Set<TaskNode> before = identitySet(this.children);
+        Set<TaskNode> after = identitySet(children);
+
+        // whether a kept child is pending depends on this task too, so if
+        // that changes they are queued again along with the new ones
+        TaskScheduler s = root().scheduler;
+        if (s != null && moved) {
+            s.removeSubtree(this);
+        }
+        for (TaskNode child : this.children) {
+            if (s != null && !moved && (reopened || !after.contains(child))) {
+                s.removeSubtree(child);
+            }
+            if (!after.contains(child)) {
+                child.setParent(null);
+            }
+        }
+        if (reopened && parent != null) {
+            parent.pendingChildren += state.isCompleted ? -1 : 1;
+        }
+        isCompleted = state.isCompleted;
+        isParent = state.isParent;
+        numOfChildren = state.numOfChildren;
+        taskCount = state.taskCount;
+        startingIndex = state.startingIndex;
+        endingIndex = state.endingIndex;
+        // the name reads the same in every version, however it is kept
+        category = state.category;
+        derivedName = state.derivedName;
+        chunks = state.chunks;
+        chunkCursor = null;
+        addedAfterPlan = state.addedAfterPlan;
+        dueDate = state.dueDate;
+        recurrence = state.recurrence;
+
+        this.children = new LinkedList<>();
+        pendingChildren = 0;
+        for (TaskNode child : children) {
+            attach(child);
+        }
+        restoreChildIndexes();
+        dueDateChild = earliestDueDate();
+        if (s != null && moved) {
+            s.addSubtree(this);
+        } else if (s != null) {
+            for (TaskNode child : children) {
+                if (reopened || !before.contains(child)) {
+                    s.addSubtree(child);
                 }
             }
-            return startingPoint;
         }
+        propagateDueDate(previous);
+        if (s != null) {
+            s.update(this);
+            if (parent != null) {
+                s.update(parent);
+            }
+        }
+        for (TaskTreeListener l : listeners()) {
+            l.taskReverted(this);
+        }
+    }
+
+    private static Set<TaskNode> identitySet(Collection<TaskNode> nodes) {
+        Set<TaskNode> set = Collections.newSetFromMap(
+                new IdentityHashMap<TaskNode, Boolean>());
+        set.addAll(nodes);
+        return set;
+    }
+
+    public void printTree(int indent) {
+        for (int i = 0; i < indent; i++) {
+            System.out.print('\t');
+        }
+        LocalDateTime time = getDueDate();
+        System.out.println(getCategory() + ": due " + time.getYear() + " "
+                           + time.getMonthValue() + " " + time.getDayOfMonth()
+                           + " - " + time.getHour() + ":" + time.getMinute());
+        loadAllChildren();
+        for (TaskNode t : children) {
+            t.printTree(indent + 1);
+        }
+    }
 
-        // get number of days until task is due
-        LocalDateTime then = LocalDateTime.of(year, month, day, hour, minute);
-        int numOfDays = (int) startingPoint.until(then, DAYS);
+    /**
+     * listMadeChildren
+     * Return a copy of the children there are now, loading them but not
+     * making chunks that are only planned, see getPlannedUntil.  The
+     * children are a linked list, so this takes one pass where calling
+     * getChild for each index would take O(n^2).
+     */
+    public List<TaskNode> listMadeChildren() {
+        return new ArrayList<>(children());
+    }
 
-        // if there are no tasks, or no days until due, then cannot sub-divide
-        if (taskCount == 0 || numOfDays <= 0) {
-            return then;
+    /**
+     * getPlannedUntil
+     * Return when the last chunk of this task is due if some of its chunks
+     * have not been made yet, or null if there are none left to make.
+     * Nothing is made to find out.
+     */
+    public LocalDateTime getPlannedUntil() {
+        loadChildren();
+        int made = getChunksMade();
+        if (chunks == null || made > 0
+                && children.get(made - 1).endingIndex >= taskCount - 1) {
+            return null;
         }
+        return DueDates.unpack(chunks.lastDueDate());
+    }
 
-        // get daily rate
-        double tasksPerDay = ((double) taskCount) / numOfDays;
-        int dayCount = 0;
+    public TaskNode getChild(int index) {
+        int position = positionOf(index);
+        // past the children added after a plan there is nothing to make
+        if (position < 0
+            || position >= children.size() && addedAfterPlan == 0) {
+            makeChunks(index);
+            position = positionOf(index);
+        }
+        return position < 0 || position >= children.size() ? null
+               : children.get(position);
+    }
+
+    /**
+     * getPosition
+     * Return where this task is among the children its parent has made so
+     * far.  That is its index, unless chunks of the parent's plan are still
+     * to be made in front of it.
+     */
+    public int getPosition() {
+        if (parent == null || childIndex < parent.getChunksMade()) {
+            return parent == null ? 0 : childIndex;
+        }
+        return childIndex - parent.chunksLeft();
+    }
+
+    // where the child with an index is in children, or -1 for a chunk that
+    // has not been made yet
+    int positionOf(int index) {
+        int made = children().size() - addedAfterPlan;
+        if (index < made) {
+            return index;
+        }
+        int left = chunksLeft();
+        return index < made + left ? -1 : index - left;
+    }
 
-        LocalDateTime newTime = then;
+    // the index the next child added will have
+    int nextChildIndex() {
+        return chunks == null ? children().size()
+                              : chunks.chunkCount() + addedAfterPlan;
+    }
 
-        for (double i = startingIndex; i < taskCount; i += tasksPerDay) {
+    // the chunks of the plan made so far, which come before the children
+    // added after it
+    int getChunksMade() {
+        return children.size() - addedAfterPlan;
+    }
 
-            // figure out ending task of the day
-            double end = i + tasksPerDay;
-            if ((int) end - (int) i == 0) { // if tomorrow will be the same task
-                dayCount++; // skip today
-                continue;
-            } else {
-                end = end - 1; // subtract 1 from the ending index to not repeat
+    int getAddedAfterPlan() {
+        return addedAfterPlan;
+    }
+
+    // how many chunks not made yet come before the children added after
+    // the plan
+    private int chunksLeft() {
+        return addedAfterPlan == 0 ? 0
+               : chunks.chunkCount() - getChunksMade();
+    }
+
+    /**
+     * addTreeListener
+     * Report every later change to this tree to a listener.  Must be called
+     * on the root; a tree added under another node drops its listeners.
+     *
+     * @param listener the listener to add
+     */
+    public void addTreeListener(TaskTreeListener listener) {
+        if (parent != null) {
+            throw new IllegalStateException("listeners go on the root");
+        }
+        if (listeners == null) {
+            listeners = new ArrayList<>();
+        }
+        listeners.add(listener);
+    }
+
+    public void removeTreeListener(TaskTreeListener listener) {
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * hasChildren
+     * Return whether this task has children, without loading them.
+     */
+    public boolean hasChildren() {
+        return unloaded || !children.isEmpty() || chunks != null;
+    }
+
+    /**
+     * evict
+     * Release the children of a task that were loaded from a snapshot, so
+     * they are read again the next time they are needed.  Only subtrees that
+     * have not changed since they were loaded can be evicted.
+     *
+     * @return true if the children were released
+     */
+    public boolean evict() {
+        if (source == null || unloaded || modified) {
+            return false;
+        }
+        TaskScheduler s = root().scheduler;
+        if (s != null) {
+            for (TaskNode t : children) {
+                s.removeSubtree(t);
             }
-            if (end >= taskCount) {
-                end = taskCount - 1;
+        }
+        dropChildren();
+        unloaded = true;
+        if (s != null) {
+            s.update(this);
+        }
+        return true;
+    }
+
+    // mark this node as a stub whose children are still in the snapshot
+    void makeStub(SnapshotSource source, int row, long dueDateChild,
+                  long latestDueDate) {
+        this.source = source;
+        this.sourceRow = row;
+        this.unloaded = true;
+        this.dueDateChild = dueDateChild;
+        this.latestDueDate = latestDueDate;
+    }
+
+    boolean isUnloaded() {
+        return unloaded;
+    }
+
+    // while unloaded, no incomplete task below is due after this
+    long getPackedLatestDueDate() {
+        return latestDueDate;
+    }
+
+    SnapshotSource getSource() {
+        return source;
+    }
+
+    int getSourceRow() {
+        return sourceRow;
+    }
+
+    // the children, read from the snapshot first if they are not loaded yet
+    private List<TaskNode> children() {
+        loadChildren();
+        return children;
+    }
+
+    // every child, loading them and making any chunks not made yet
+    void loadAllChildren() {
+        loadChildren();
+        makeChunks(Integer.MAX_VALUE);
+    }
+
+    void loadChildren() {
+        if (!unloaded) {
+            return;
+        }
+        unloaded = false;
+        source.load(this, sourceRow);
+
+        TaskScheduler s = root().scheduler;
+        if (s != null) {
+            s.update(this);
+            for (TaskNode t : children) {
+                s.addSubtree(t);
             }
+        }
+    }
 
-            String newcategory;
+    ChunkPlan getChunkPlan() {
+        return chunks;
+    }
 
-            if ((int) end - (int) i == 0) { // if end and start are same index
-                newcategory = category + ": " + (int) i;
-            } else {
-                newcategory = category + ": " + (int) i + " - " + (int) end;
+    /**
+     * restoreChunks
+     * Take over a plan saved with this node's chunks, and how many of the
+     * children to be restored were added after it.  Once they are attached,
+     * restoreChildIndexes gives those their indexes.
+     */
+    void restoreChunks(ChunkPlan plan, int addedAfterPlan) {
+        chunks = plan;
+        chunkCursor = null;
+        this.addedAfterPlan = plan == null ? 0 : addedAfterPlan;
+    }
+
+    // move the children added after the plan past the chunks not made yet,
+    // once every child has been attached in order
+    void restoreChildIndexes() {
+        if (addedAfterPlan == 0) {
+            return;
+        }
+        int left = chunksLeft();
+        int made = getChunksMade();
+        int position = 0;
+        for (TaskNode t : children) {
+            if (position >= made) {
+                t.childIndex = position + left;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * makeChunks
+     * Make chunks until there is a child at the given index or the plan runs
+     * out, and report them as added.
+     *
+     * @param index the child that is needed
+     */
+    private void makeChunks(int index) {
+        if (chunks == null) {
+            return;
+        }
+        loadChildren();
+        long previous = pendingDueDate();
+        long earliest = dueDateChild;
+        List<TaskNode> made = new ArrayList<>();
+        while (getChunksMade() <= index) {
+            TaskNode chunk = makeChunk();
+            if (chunk == null) {
+                break;
             }
+            earliest = Math.min(earliest, chunk.dueDateChild);
+            made.add(chunk);
+        }
+        if (earliest < dueDateChild) {
+            dueDateChild = earliest;
+            propagateDueDate(previous);
+        }
+        if (!made.isEmpty()) {
+            for (TaskTreeListener l : listeners()) {
+                l.childrenAdded(this, made);
+            }
+        }
+    }
 
-            newTime = startingPoint.plusDays(dayCount);
-            TaskNode taskNode = new TaskNode(newcategory, newTime);
-            taskNode.setStartingIndex((int) i);
-            taskNode.setEndingIndex((int) end);
-            taskNode.setParent(this);
-            children.add(taskNode);
-            isParent = true;
-            dayCount++;
+    /**
+     * growChunks
+     * Make the next chunk if the last one made can no longer be chosen, and
+     * report it as added.
+     */
+    private void growChunks() {
+        long previous = pendingDueDate();
+        TaskNode chunk = extendChunks();
+        if (chunk == null) {
+            return;
+        }
+        if (chunk.dueDateChild < dueDateChild) {
+            dueDateChild = chunk.dueDateChild;
+            propagateDueDate(previous);
+        }
+        for (TaskTreeListener l : listeners()) {
+            l.taskAdded(this, chunk);
+        }
+    }
 
+    /**
+     * extendChunks
+     * Keep the last chunk made an incomplete task without incomplete
+     * children, so it can be chosen.  Chunks not made yet are all due after
+     * it, so they can then never be the task to work on next.
+     *
+     * @return the chunk made, or null if none was needed
+     */
+    private TaskNode extendChunks() {
+        int made = getChunksMade();
+        if (chunks == null || unloaded || made == 0) {
+            return null;
         }
-        return newTime;
+        TaskNode last = children.get(made - 1);
+        if (!last.isCompleted && last.pendingChildren == 0) {
+            return null;
+        }
+        return makeChunk();
     }
 
-    public void printTree(int indent) {
-        for (int i = 0; i < indent; i++) {
-            System.out.print('\t');
+    /**
+     * makeChunk
+     * Append the next chunk of the plan and queue it, leaving due dates and
+     * listeners to the caller.  The plan is dropped once every chunk is made.
+     *
+     * @return the new chunk, or null if there are no more
+     */
+    private TaskNode makeChunk() {
+        TaskNode chunk = nextChunk();
+        TaskScheduler s = root().scheduler;
+        if (chunk != null && s != null) {
+            s.addSubtree(chunk);
+        }
+        return chunk;
+    }
+
+    // append the next chunk of the plan without queueing it
+    private TaskNode nextChunk() {
+        if (chunks == null) {
+            return null;
+        }
+        loadChildren();
+        // the children up to those added after the plan are the chunks made
+        // so far, whoever made them
+        int made = getChunksMade();
+        ChunkPlan.Cursor cursor = chunkCursor;
+        if (cursor == null || cursor.plan != chunks
+            || cursor.position != made - 1) {
+            cursor = chunks.cursorAt(made - 1);
+        }
+        if (!cursor.advance()) {
+            // every chunk is made, so the indexes match the positions again
+            chunks = null;
+            chunkCursor = null;
+            addedAfterPlan = 0;
+            return null;
+        }
+        chunkCursor = cursor;
+
+        TaskNode chunk = chunkOf(cursor);
+        if (addedAfterPlan == 0) {
+            attach(chunk);
+        } else {
+            children.add(made, chunk);
+            chunk.childIndex = made;
+            chunk.parent = this;
+            pendingChildren++;
         }
-        System.out.println(category + ": due " + year + " " + month + " " + day
-                           + " - " + hour + ":" + minute);
+        isParent = true;
+        return chunk;
+    }
+
+    // a detached task for the chunk a cursor is at, whose name refers to
+    // this task's instead of copying it, numbered as it will be once made
+    TaskNode chunkOf(ChunkPlan.Cursor cursor) {
+        TaskNode chunk = new TaskNode(null, cursor.dueDate);
+        chunk.childIndex = cursor.position;
+        chunk.startingIndex = cursor.first;
+        chunk.endingIndex = cursor.last;
+        chunk.deriveName(chunkPrefix());
+        return chunk;
+    }
+
+    // note that something at or below this node changed
+    private void touch() {
+        for (TaskNode n = this; n != null && !n.modified; n = n.parent) {
+            n.modified = true;
+        }
+    }
+
+    // the earliest due date this node passes up to its parent
+    private long pendingDueDate() {
+        return isCompleted ? Long.MAX_VALUE : dueDateChild;
+    }
+
+    // my own due date or that of my earliest incomplete child
+    private long earliestDueDate() {
+        long min = dueDate;
         for (TaskNode t : children) {
-            t.printTree(indent + 1);
+            if (!t.isCompleted()) {
+                min = Math.min(min, t.dueDateChild);
+            }
         }
+        return min;
     }
 
-    public TaskNode getChild(int index) {
-        if (index > children.size() - 1) {
-            return null;
+    /**
+     * propagateDueDate
+     * Pass a change in what this node contributes to its parent's earliest
+     * due date up the tree.  An earlier date costs one compare per ancestor.
+     * A later one only rescans a parent's children when this node held that
+     * parent's minimum.  The walk stops at the first unchanged ancestor.
+     *
+     * @param previous what this node passed up before the change
+     */
+    private void propagateDueDate(long previous) {
+        TaskNode child = this;
+        while (child.parent != null) {
+            TaskNode p = child.parent;
+            long current = child.pendingDueDate();
+            long before = p.dueDateChild;
+            long after;
+
+            if (current <= before) {
+                after = current;
+            } else if (previous > before) {
+                break;
+            } else {
+                after = p.earliestDueDate();
+            }
+
+            if (after == before) {
+                break;
+            }
+            p.dueDateChild = after;
+            if (p.isCompleted) {
+                break;
+            }
+            previous = before;
+            child = p;
+        }
+    }
+
+    // listeners of the tree this node is in
+    private List<TaskTreeListener> listeners() {
+        List<TaskTreeListener> l = root().listeners;
+        return l == null ? Collections.<TaskTreeListener>emptyList() : l;
+    }
+
+    private int depth() {
+        int depth = 0;
+        for (TaskNode n = parent; n != null; n = n.parent) {
+            depth++;
         }
-        return children.get(index);
+        return depth;
+    }
+
+    private TaskNode root() {
+        TaskNode node = this;
+        while (node.parent != null) {
+            node = node.parent;
+        }
+        return node;
     }
 
     public String toString() {
-        return category;
+        return getCategory();
     }
 
     public String getDueDateString() {
-        LocalDateTime time = LocalDateTime.of(year, month, day, hour, minute);
-        String dueDate = year + " " + time.getMonth() + " " + day + ", ";
+        LocalDateTime time = getDueDate();
+        int hour = time.getHour();
+        String dueDate = time.getYear() + " " + time.getMonth() + " "
+                         + time.getDayOfMonth() + ", ";
         boolean isAM = true;
         if (hour >= 12) {
             hour -= 12;
@@ -431,7 +1552,7 @@ public class TaskNode implements Serializable, Comparable<TaskNode> {
         if (hour == 0) {
             hour = 12;
         }
-        String min = String.format("%02d", minute);
+        String min = String.format("%02d", time.getMinute());
         dueDate += hour + ":" + min + " ";
         if (isAM) {
             dueDate += "am";
@@ -440,4 +1561,158 @@ public class TaskNode implements Serializable, Comparable<TaskNode> {
         }
         return dueDate;
     }
+
+    /**
+     * readObject
+     * Read a node written by the current class or by the version that kept
+     * each due date as separate year/month/day/hour/minute fields.
+     *
+     * @param in the stream being deserialized
+     */
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        ObjectStreamClass desc = fields.getObjectStreamClass();
+
+        isCompleted = fields.get("isCompleted", false);
+        isParent = fields.get("isParent", false);
+        numOfChildren = fields.get("numOfChildren", 0);
+        taskCount = fields.get("taskCount", 0);
+        startingIndex = fields.get("startingIndex", 0);
+        endingIndex = fields.get("endingIndex", 0);
+        category = (String) fields.get("category", null);
+        if (category != null) {
+            category = category.intern();
+        }
+        derivedName = fields.get("derivedName", false);
+        children = castChildren(fields.get("children", null));
+        parent = (TaskNode) fields.get("parent", null);
+        chunks = (ChunkPlan) fields.get("chunks", null);
+        addedAfterPlan = chunks == null ? 0 : fields.get("addedAfterPlan", 0);
+        recurrence = (Recurrence) fields.get("recurrence", null);
+
+        if (desc.getField("year") != null) {
+            dueDate = DueDates.pack(fields.get("year", 0),
+                    fields.get("month", 0), fields.get("day", 0),
+                    fields.get("hour", 0), fields.get("minute", 0));
+        } else {
+            dueDate = fields.get("dueDate", 0L);
+        }
+
+        int index = 0;
+        for (TaskNode t : children) {
+            t.childIndex = index++;
+            if (!t.isCompleted) {
+                pendingChildren++;
+            }
+        }
+        restoreChildIndexes();
+
+        // children are fully read by now.  Older trees did not keep the
+        // earliest due date current, so always rebuild it from them.
+        dueDateChild = earliestDueDate();
+    }
+
+    // a serialized tree has no snapshot behind it, so load everything first
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        loadChildren();
+        out.defaultWriteObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<TaskNode> castChildren(Object children) {
+        return (List<TaskNode>) children;
+    }
+
+    // how subDivide re-plans one task
+    private static final class Replan {
+        final TaskNode task;
+        final int startingIndex;
+
+        // whether the task's children are replaced
+        final boolean removed;
+
+        // null when the task cannot be sub-divided
+        final ChunkPlan plan;
+
+        // the first chunk, once the re-plan is applied
+        TaskNode first;
+
+        Replan(TaskNode task, int startingIndex, boolean removed,
+               ChunkPlan plan) {
+            this.task = task;
+            this.startingIndex = startingIndex;
+            this.removed = removed;
+            this.plan = plan;
+        }
+
+        // where the task after this one starts
+        LocalDateTime next() {
+            return plan == null ? task.getDueDate()
+                                : DueDates.unpack(plan.lastDueDate());
+        }
+    }
+
+    // applies a range of re-plans, splitting it while it is large
+    private static final class ApplyReplans extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Replan> replans;
+        private final int from;
+        private final int to;
+
+        ApplyReplans(List<Replan> replans, int from, int to) {
+            this.replans = replans;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= REPLANS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    Replan replan = replans.get(i);
+                    replan.task.apply(replan);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ApplyReplans(replans, from, middle),
+                    new ApplyReplans(replans, middle, to));
+        }
+    }
+
+    // what completeAll is doing to one task
+    private static final class Change {
+        final TaskNode task;
+
+        // what the task passed up to its parent before the batch
+        final long before;
+
+        // the earliest date a child now passes up, and whether a child that
+        // held the earliest date now passes up a later one
+        long earliest = Long.MAX_VALUE;
+        boolean rescan;
+
+        boolean completed;
+        boolean dropped;
+
+        // the chunk made once the last one could no longer be chosen
+        TaskNode added;
+
+        Change(TaskNode task) {
+            this.task = task;
+            this.before = task.pendingDueDate();
+        }
+
+        // fold in one child's change the way propagateDueDate would, against
+        // the earliest date the parent had before the batch
+        void report(long previous, long current, long earliestBefore) {
+            if (current <= earliestBefore) {
+                earliest = Math.min(earliest, current);
+            } else if (previous <= earliestBefore) {
+                rescan = true;
+            }
+        }
+    }
 }
@@ -0,0 +1,323 @@
+package dataStructure;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * TaskScheduler
+ * Indexed binary min-heap over the schedulable tasks of one tree.  A task is
+ * schedulable when it is incomplete, has no incomplete children and none of
+ * its ancestors are completed; these are exactly the tasks a full rescan of
+ * the tree could return.  Every queued node remembers its slot in the heap so
+ * it can be removed or re-keyed in O(log n).
+ *
+ * A task whose children are still on disk is queued in their place, keyed by
+ * the earliest due date below it.  It is loaded only once it reaches the top
+ * of the heap, so only the subtrees selection actually needs get read.
+ *
+ * The scheduler also keeps the tree's DueDateIndex once the tree is first
+ * asked for the tasks due in a range, and its CategoryIndex once it is first
+ * searched, since every change it is told about is one the indexes need as
+ * well.
+ */
+final class TaskScheduler {
+
+    private TaskNode[] heap;
+    private int size;
+    private DueDateIndex dueDates;
+    private CategoryIndex categories;
+
+    TaskScheduler(TaskNode root) {
+        heap = new TaskNode[16];
+        Deque<TaskNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            TaskNode node = stack.pop();
+            node.setHeapIndex(-1);
+            if (isPending(node) && node.getPendingChildren() == 0) {
+                append(node);
+            }
+            pushChildren(stack, node);
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * peek
+     * Return the task that is due first, in O(1) once no unloaded subtree is
+     * in front of it.
+     *
+     * @return the first task, or null if nothing is schedulable
+     */
+    TaskNode peek() {
+        while (size > 0 && heap[0].isUnloaded()) {
+            heap[0].loadChildren();
+        }
+        return size == 0 ? null : heap[0];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * dueDates
+     * Return the due date index of the tree, indexing every incomplete task
+     * in memory the first time it is asked for.
+     *
+     * @param root the root of the tree
+     * @return the index
+     */
+    DueDateIndex dueDates(TaskNode root) {
+        if (dueDates == null) {
+            dueDates = new DueDateIndex();
+            // below a completed task nothing is pending, so it is not walked
+            Deque<TaskNode> stack = new ArrayDeque<>();
+            if (!root.isCompleted()) {
+                stack.push(root);
+            }
+            while (!stack.isEmpty()) {
+                TaskNode node = stack.pop();
+                dueDates.update(node, true);
+                List<TaskNode> children = node.getChildren();
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    if (!children.get(i).isCompleted()) {
+                        stack.push(children.get(i));
+                    }
+                }
+            }
+        }
+        return dueDates;
+    }
+
+    /**
+     * categories
+     * Return the search index of the tree, indexing every task in memory the
+     * first time it is asked for.
+     *
+     * @param root the root of the tree
+     * @return the index
+     */
+    CategoryIndex categories(TaskNode root) {
+        if (categories == null) {
+            categories = new CategoryIndex();
+            Deque<TaskNode> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                TaskNode node = stack.pop();
+                categories.add(node);
+                stack.addAll(node.getChildren());
+            }
+        }
+        return categories;
+    }
+
+    /**
+     * update
+     * Re-check whether a node belongs in the heap and move it in or out.  A
+     * queued node is always re-inserted, so this also refreshes its position
+     * after its ordering keys have changed.
+     *
+     * @param node the node whose state changed
+     */
+    void update(TaskNode node) {
+        remove(node);
+        boolean pending = isPending(node);
+        if (dueDates != null) {
+            dueDates.update(node, pending);
+        }
+        if (pending && node.getPendingChildren() == 0) {
+            append(node);
+            siftUp(size - 1);
+        }
+    }
+
+    /**
+     * addSubtree
+     * Queue every schedulable node of a subtree that was just attached.
+     *
+     * @param node the root of the attached subtree
+     */
+    void addSubtree(TaskNode node) {
+        Deque<TaskNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            TaskNode n = stack.pop();
+            n.setHeapIndex(-1);
+            update(n);
+            if (categories != null) {
+                categories.add(n);
+            }
+            pushChildren(stack, n);
+        }
+    }
+
+    /**
+     * removeSubtree
+     * Drop every queued or indexed node of a subtree that is being detached.
+     *
+     * @param node the root of the detached subtree
+     */
+    void removeSubtree(TaskNode node) {
+        Deque<TaskNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            TaskNode n = stack.pop();
+            remove(n);
+            if (dueDates != null) {
+                dueDates.remove(n);
+            }
+            if (categories != null) {
+                categories.remove(n);
+            }
+            stack.addAll(n.getChildren());
+        }
+    }
+
+    /**
+     * precedes
+     * Return whether task a should be chosen before task b.  Tasks are ordered
+     * by compareTo, then by the most children, then by position in the tree.
+     * On an equal earliest due date an unloaded subtree goes first, since it
+     * may hold a task that wins the remaining tie-breaks.
+     *
+     * @param a the first task
+     * @param b the second task
+     * @return true if a comes strictly before b
+     */
+    static boolean precedes(TaskNode a, TaskNode b) {
+        if (a.isUnloaded() != b.isUnloaded()
+            && a.getPackedDueDateChild() == b.getPackedDueDateChild()) {
+            return a.isUnloaded();
+        }
+        int compare = a.compareTo(b);
+        if (compare != 0) {
+            return compare < 0;
+        }
+        if (a.getNumOfChildren() != b.getNumOfChildren()) {
+            return a.getNumOfChildren() > b.getNumOfChildren();
+        }
+        return compareTreeOrder(a, b) < 0;
+    }
+
+    // compare the pre-order positions of two nodes in O(depth)
+    static int compareTreeOrder(TaskNode a, TaskNode b) {
+        int depthA = depth(a);
+        int depthB = depth(b);
+        int order = Integer.compare(depthA, depthB);
+        while (depthA > depthB) {
+            a = a.getParent();
+            depthA--;
+        }
+        while (depthB > depthA) {
+            b = b.getParent();
+            depthB--;
+        }
+        if (a == b) {
+            return order;
+        }
+        while (a.getParent() != b.getParent()) {
+            a = a.getParent();
+            b = b.getParent();
+        }
+        return Integer.compare(a.getChildIndex(), b.getChildIndex());
+    }
+
+    private static int depth(TaskNode node) {
+        int depth = 0;
+        while (node.getParent() != null) {
+            node = node.getParent();
+            depth++;
+        }
+        return depth;
+    }
+
+    // whether a node and every ancestor are incomplete
+    private static boolean isPending(TaskNode node) {
+        for (TaskNode n = node; n != null; n = n.getParent()) {
+            if (n.isCompleted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // push children in reverse so they are visited in tree order
+    private static void pushChildren(Deque<TaskNode> stack, TaskNode node) {
+        TaskNode[] children = node.getChildren().toArray(new TaskNode[0]);
+        for (int i = children.length - 1; i >= 0; i--) {
+            stack.push(children[i]);
+        }
+    }
+
+    private boolean contains(TaskNode node) {
+        int i = node.getHeapIndex();
+        return i >= 0 && i < size && heap[i] == node;
+    }
+
+    private void remove(TaskNode node) {
+        if (!contains(node)) {
+            return;
+        }
+        int i = node.getHeapIndex();
+        node.setHeapIndex(-1);
+        size--;
+        if (i == size) {
+            heap[size] = null;
+            return;
+        }
+        TaskNode moved = heap[size];
+        heap[size] = null;
+        place(moved, i);
+        siftDown(i);
+        siftUp(moved.getHeapIndex());
+    }
+
+    private void append(TaskNode node) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        place(node, size++);
+    }
+
+    private void place(TaskNode node, int i) {
+        heap[i] = node;
+        node.setHeapIndex(i);
+    }
+
+    private void siftUp(int i) {
+        TaskNode node = heap[i];
+        while (i > 0) {
+            int p = (i - 1) / 2;
+            if (!precedes(node, heap[p])) {
+                break;
+            }
+            place(heap[p], i);
+            i = p;
+        }
+        place(node, i);
+    }
+
+    private void siftDown(int i) {
+        TaskNode node = heap[i];
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= size) {
+                break;
+            }
+            if (c + 1 < size && precedes(heap[c + 1], heap[c])) {
+                c++;
+            }
+            if (!precedes(heap[c], node)) {
+                break;
+            }
+            place(heap[c], i);
+            i = c;
+        }
+        place(node, i);
+    }
+}
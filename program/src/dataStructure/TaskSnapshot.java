@@ -0,0 +1,635 @@
+package dataStructure;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * TaskSnapshot
+ * Versioned binary image of a task tree.  The file is a fixed header, a
+ * dictionary of every distinct category string and a table of fixed-width
+ * node rows in pre-order.  Each row names its parent's row, so the tree is
+ * rebuilt in one pass without recursion.  Due dates are stored as minutes
+ * relative to the parent's due date.  Files are loaded through a read-only
+ * memory map and both the header and the body are checksummed.
+ *
+ * A TaskStore keeps the same image in a direct buffer rather than a file.
+ *
+ * Since version 2 each row also holds the size of its subtree and the
+ * earliest due date in it, so a tree can be read only down to a given depth.
+ * Deeper subtrees stay in the mapped file and are read when first needed;
+ * a tree read this way can be written back out without loading them.
+ *
+ * Since version 3 a sub-divided task also records the first day of its
+ * chunk plan, and only the chunks made so far are stored as rows.
+ *
+ * Since version 4 a chunk named after the task it is a chunk of stores no
+ * string of its own: category -2 means its name is worked out from its
+ * parent's and its starting and ending index, as it is in memory.
+ *
+ * Since version 5 each row also holds the recurrence rule of its task, which
+ * is all a recurring task needs however many times it comes round.
+ *
+ * Since version 6 each row also holds the latest due date of the incomplete
+ * tasks in its subtree, so a search for the tasks due in a range can leave
+ * a subtree that ends before the range on disk.
+ *
+ * Since version 7 each row also holds how many of its children were added
+ * after its chunk plan, which come after every chunk of the plan whether
+ * made or not.
+ *
+ * Layout, all values big-endian:
+ *   header  int magic, short version, short reserved, long sequence,
+ *           long base due date, int node count, int string count,
+ *           int body CRC32, int header CRC32 (of the preceding 36 bytes)
+ *   strings int byte length, UTF-8 bytes
+ *   nodes   int parent row, int category string (-1 for none, -2 for
+ *           named after the parent),
+ *           int due date delta, byte flags, int child count,
+ *           int task count, int starting index, int ending index,
+ *           int subtree size, int earliest due date delta (version 2),
+ *           int chunk plan start delta, 0 without a plan (version 3),
+ *           int recurrence period in days, 0 if it does not recur,
+ *           int occurrences left, -1 for no limit, int last date delta
+ *           from the task's due date, Integer.MAX_VALUE for none (version 5),
+ *           int latest due date delta, Integer.MAX_VALUE if not known
+ *           (version 6),
+ *           int children added after the chunk plan (version 7)
+ *
+ * Files written by Java serialization before this format existed can be
+ * converted once with migrate.
+ */
+public class TaskSnapshot {
+
+    private static final int MAGIC = 0x5454534E; // "TTSN"
+    private static final short VERSION = 7;
+    private static final int HEADER_SIZE = 40;
+    private static final int V1_ROW_SIZE = 29;
+
+    private static final byte COMPLETED = 1;
+    private static final byte PARENT = 2;
+    private static final byte CHUNKED = 4;
+
+    // first two bytes of a Java serialization stream
+    private static final int SERIALIZED_MAGIC = 0xACED;
+
+    private final TaskNode tree;
+    private final long sequence;
+
+    private TaskSnapshot(TaskNode tree, long sequence) {
+        this.tree = tree;
+        this.sequence = sequence;
+    }
+
+    public TaskNode getTree() {
+        return tree;
+    }
+
+    // sequence number of the last journal record included in the tree
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * write
+     * Write a tree to a file and sync it to disk.  The file must not be the
+     * one an unloaded part of the tree is still read from; use replace to
+     * overwrite that.
+     *
+     * @param head     root of the tree
+     * @param sequence journal sequence number the tree reflects
+     * @param file     file to create or overwrite
+     */
+    public static void write(TaskNode head, long sequence, File file)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            ByteBuffer header = writeBody(head, sequence,
+                    Channels.newOutputStream(channel));
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * encode
+     * Write a tree into a direct buffer laid out as a snapshot file, for a
+     * TaskStore to keep its rows in.
+     *
+     * @param head root of the tree
+     * @return the snapshot, from position 0 to its limit
+     */
+    static ByteBuffer encode(TaskNode head) throws IOException {
+        BufferOutput body = new BufferOutput(HEADER_SIZE);
+        ByteBuffer header = writeBody(head, 0, body);
+        ByteBuffer buffer = body.buffer;
+        buffer.flip();
+        buffer.duplicate().put(header);
+        return buffer;
+    }
+
+    // write the dictionary and rows of a tree after the header, which is
+    // left to the caller and returned ready to be written at offset 0
+    private static ByteBuffer writeBody(TaskNode head, long sequence,
+                                        OutputStream target)
+            throws IOException {
+        List<TaskNode> rows = new ArrayList<>();
+        Map<TaskNode, Integer> rowOf = new HashMap<>();
+        Map<TaskNode, Integer> indexOf = new HashMap<>();
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+
+        // unloaded subtrees are copied from their snapshot as they are, so
+        // they take up all their rows here too
+        int rowCount = 0;
+        Deque<TaskNode> stack = new ArrayDeque<>();
+        stack.push(head);
+        while (!stack.isEmpty()) {
+            TaskNode node = stack.pop();
+            rowOf.put(node, rowCount);
+            indexOf.put(node, rows.size());
+            rows.add(node);
+            if (!derivesName(node, head)) {
+                intern(node.getCategory(), strings, dictionary);
+            }
+            if (node.isUnloaded()) {
+                SnapshotSource source = node.getSource();
+                int first = node.getSourceRow();
+                int end = first + source.subtreeSize(first);
+                for (int r = first + 1; r < end; r++) {
+                    intern(source.category(r), strings, dictionary);
+                }
+                rowCount += end - first;
+                continue;
+            }
+            rowCount++;
+            List<TaskNode> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+
+        // rows are in pre-order, so children are counted before parents
+        int[] subtreeSize = new int[rows.size()];
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            TaskNode node = rows.get(i);
+            subtreeSize[i] += node.isUnloaded()
+                              ? node.getSource().subtreeSize(node.getSourceRow())
+                              : 1;
+            if (i > 0) {
+                subtreeSize[indexOf.get(node.getParent())] += subtreeSize[i];
+            }
+        }
+
+        // and so are the latest due dates, which only reach a parent through
+        // incomplete children
+        long[] latest = new long[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            TaskNode node = rows.get(i);
+            latest[i] = node.isUnloaded()
+                        ? Math.max(node.getPackedDueDate(),
+                                   node.getPackedLatestDueDate())
+                        : node.getPackedDueDate();
+        }
+        for (int i = rows.size() - 1; i > 0; i--) {
+            TaskNode node = rows.get(i);
+            if (!node.isCompleted()) {
+                int parent = indexOf.get(node.getParent());
+                latest[parent] = Math.max(latest[parent], latest[i]);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(target, crc), 1 << 16));
+
+        for (String s : dictionary) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        byte[] tail = new byte[SnapshotSource.ROW_SIZE - 12];
+        for (int i = 0; i < rows.size(); i++) {
+            TaskNode node = rows.get(i);
+            TaskNode parent = node.getParent();
+            boolean isRoot = node == head || parent == null;
+            long base = isRoot ? head.getPackedDueDate()
+                               : parent.getPackedDueDate();
+            byte flags = 0;
+            if (node.isCompleted()) {
+                flags |= COMPLETED;
+            }
+            if (node.isParent()) {
+                flags |= PARENT;
+            }
+            ChunkPlan chunks = node.getChunkPlan();
+            if (chunks != null) {
+                flags |= CHUNKED;
+            }
+            String category = node.getCategory();
+
+            out.writeInt(isRoot ? -1 : rowOf.get(parent));
+            if (derivesName(node, head)) {
+                out.writeInt(SnapshotSource.DERIVED);
+            } else {
+                out.writeInt(category == null ? -1 : strings.get(category));
+            }
+            out.writeInt(delta(node.getPackedDueDate(), base));
+            out.writeByte(flags);
+            out.writeInt(node.getNumOfChildren());
+            out.writeInt(node.getTaskCount());
+            out.writeInt(node.getStartingIndex());
+            out.writeInt(node.getEndingIndex());
+            out.writeInt(subtreeSize[i]);
+            out.writeInt(delta(node.getPackedDueDateChild(),
+                    node.getPackedDueDate()));
+            out.writeInt(chunks == null ? 0 : delta(chunks.getStart(),
+                    node.getPackedDueDate()));
+            writeRecurrence(node, out);
+            out.writeInt(latestDelta(latest[i], node.getPackedDueDate()));
+            out.writeInt(node.getAddedAfterPlan());
+
+            if (node.isUnloaded()) {
+                copyRows(node, rowOf.get(node), strings, tail, out);
+            }
+        }
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) 0);
+        header.putLong(sequence);
+        header.putLong(head.getPackedDueDate());
+        header.putInt(rowCount);
+        header.putInt(dictionary.size());
+        header.putInt((int) crc.getValue());
+        CRC32 headerCrc = new CRC32();
+        headerCrc.update(header.array(), 0, HEADER_SIZE - 4);
+        header.putInt((int) headerCrc.getValue());
+        header.flip();
+        return header;
+    }
+
+    /**
+     * read
+     * Map a snapshot file and rebuild the whole tree it holds.
+     *
+     * @param file the snapshot
+     * @return the tree and the journal sequence it reflects
+     * @throws IOException if the file is not a snapshot, has an unknown
+     *                     version or fails its checksums
+     */
+    public static TaskSnapshot read(File file) throws IOException {
+        return read(file, Integer.MAX_VALUE);
+    }
+
+    /**
+     * read
+     * Map a snapshot file and rebuild its tree down to the given depth.
+     * Tasks at that depth keep their children in the file until they are
+     * needed.  Only the header is checksummed when reading lazily, since
+     * checking the body would mean reading all of it; the rows are checked
+     * for consistency as they are loaded instead.
+     *
+     * @param file      the snapshot
+     * @param lazyDepth how many levels below the root to load up front
+     * @return the tree and the journal sequence it reflects
+     * @throws IOException if the file is not a snapshot, has an unknown
+     *                     version or fails its checksums
+     */
+    public static TaskSnapshot read(File file, int lazyDepth)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(file + " is not a task snapshot");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            return read(buffer, lazyDepth, file.toString());
+        }
+    }
+
+    /**
+     * decode
+     * Rebuild the tree of a buffer written by encode down to the given depth,
+     * leaving the rows below in the buffer.
+     */
+    static TaskSnapshot decode(ByteBuffer buffer, int lazyDepth)
+            throws IOException {
+        return read(buffer, lazyDepth, "task store");
+    }
+
+    // check and read a whole snapshot, naming it in any error
+    private static TaskSnapshot read(ByteBuffer buffer, int lazyDepth,
+                                     String name) throws IOException {
+        ByteBuffer header = buffer.duplicate();
+        header.limit(HEADER_SIZE - 4);
+        CRC32 crc = new CRC32();
+        crc.update(header);
+        if (buffer.getInt(0) != MAGIC
+            || buffer.getInt(HEADER_SIZE - 4) != (int) crc.getValue()) {
+            throw new IOException(name + " is not a task snapshot");
+        }
+        short version = buffer.getShort(4);
+        if (version < 1 || version > VERSION) {
+            throw new IOException(name + " has unsupported version "
+                                  + version);
+        }
+        long sequence = buffer.getLong(8);
+        long baseDueDate = buffer.getLong(16);
+        int nodeCount = buffer.getInt(24);
+        int stringCount = buffer.getInt(28);
+
+        ByteBuffer body = buffer.duplicate();
+        body.position(HEADER_SIZE);
+        if (version == 1 || lazyDepth == Integer.MAX_VALUE) {
+            crc.reset();
+            crc.update(body.duplicate());
+            if (buffer.getInt(32) != (int) crc.getValue()) {
+                throw new IOException(name + " failed its checksum");
+            }
+        }
+
+        try {
+            String[] dictionary = readDictionary(body, stringCount);
+            TaskNode tree;
+            if (version == 1) {
+                tree = readTree(body, nodeCount, dictionary, baseDueDate);
+            } else {
+                int rowSize = version == 2 ? SnapshotSource.V2_ROW_SIZE
+                              : version < 5 ? SnapshotSource.V4_ROW_SIZE
+                              : version == 5 ? SnapshotSource.V5_ROW_SIZE
+                              : version == 6 ? SnapshotSource.V6_ROW_SIZE
+                              : SnapshotSource.ROW_SIZE;
+                if (body.remaining() != (long) nodeCount * rowSize) {
+                    throw new IllegalStateException(
+                            "node table has the wrong size");
+                }
+                tree = new SnapshotSource(body.slice(), rowSize,
+                        dictionary, nodeCount, Math.max(lazyDepth, 1))
+                        .readRoot(baseDueDate);
+            }
+            return new TaskSnapshot(tree, sequence);
+        } catch (RuntimeException e) {
+            throw new IOException(name + " is damaged", e);
+        }
+    }
+
+    /**
+     * isSerialized
+     * Return whether a file was written by Java serialization, the format
+     * used before snapshots existed.
+     */
+    public static boolean isSerialized(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return ((in.read() << 8) | in.read()) == SERIALIZED_MAGIC;
+        }
+    }
+
+    /**
+     * migrate
+     * Convert a tree saved with Java serialization into a snapshot in place.
+     * The new file is written next to the old one and renamed over it, so
+     * the old data stays intact if anything fails.
+     *
+     * @param file the serialized tree
+     * @return the tree and the journal sequence stored after it, if any
+     */
+    public static TaskSnapshot migrate(File file) throws IOException {
+        TaskNode tree;
+        long sequence;
+        try (ObjectInputStream in = new ObjectInputStream(
+                new FileInputStream(file))) {
+            tree = (TaskNode) in.readObject();
+            sequence = readSequence(in);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException(file + " does not hold a task tree", e);
+        }
+        replace(tree, sequence, file);
+        return new TaskSnapshot(tree, sequence);
+    }
+
+    /**
+     * replace
+     * Write a snapshot to a temporary file and atomically move it over the
+     * target, so readers only ever see the old or the new complete file.
+     */
+    public static void replace(TaskNode head, long sequence, File file)
+            throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        write(head, sequence, temp.toFile());
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        // make the rename itself durable; not every platform can open a
+        // directory
+        try (FileChannel dir = FileChannel.open(target.getParent(),
+                StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static String[] readDictionary(ByteBuffer body, int stringCount) {
+        String[] dictionary = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            byte[] bytes = new byte[body.getInt()];
+            body.get(bytes);
+            // shared with every task in memory of the same name
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8).intern();
+        }
+        return dictionary;
+    }
+
+    // version 1 files have no subtree sizes and are always read in full
+    private static TaskNode readTree(ByteBuffer body, int nodeCount,
+                                     String[] dictionary, long baseDueDate) {
+        if (nodeCount < 1
+            || body.remaining() != (long) nodeCount * V1_ROW_SIZE) {
+            throw new IllegalStateException("node table has the wrong size");
+        }
+        TaskNode[] nodes = new TaskNode[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            int parent = body.getInt();
+            int category = body.getInt();
+            int delta = body.getInt();
+            byte flags = body.get();
+            int numOfChildren = body.getInt();
+            int taskCount = body.getInt();
+            int startingIndex = body.getInt();
+            int endingIndex = body.getInt();
+
+            if ((i == 0) != (parent < 0) || parent >= i) {
+                throw new IllegalStateException("row " + i + " is out of order");
+            }
+            long base = i == 0 ? baseDueDate : nodes[parent].getPackedDueDate();
+            TaskNode node = new TaskNode(category < 0 ? null
+                                         : dictionary[category],
+                    DueDates.unpack(base + delta));
+            node.setTaskCount(taskCount);
+            node.setStartingIndex(startingIndex);
+            node.restore((flags & COMPLETED) != 0, (flags & PARENT) != 0,
+                    numOfChildren, endingIndex);
+            if (i > 0) {
+                nodes[parent].attach(node);
+            }
+            nodes[i] = node;
+        }
+
+        // rows come after their parents, so walking backwards folds every
+        // child's earliest due date in before its parent is computed
+        for (int i = nodeCount - 1; i >= 0; i--) {
+            nodes[i].restoreDueDateChild();
+        }
+        return nodes[0];
+    }
+
+    // copy the rows of an unloaded subtree after its root's row, pointing
+    // them at their new parent rows and dictionary entries
+    private static void copyRows(TaskNode stub, int stubRow,
+                                 Map<String, Integer> strings, byte[] tail,
+                                 DataOutputStream out) throws IOException {
+        SnapshotSource source = stub.getSource();
+        int first = stub.getSourceRow();
+        int end = first + source.subtreeSize(first);
+        for (int r = first + 1; r < end; r++) {
+            String category = source.category(r);
+            out.writeInt(stubRow + source.parent(r) - first);
+            out.writeInt(category == null ? source.categoryId(r)
+                                          : strings.get(category));
+            out.writeInt(source.dueDateDelta(r));
+            source.copyTail(r, tail);
+            out.write(tail);
+        }
+    }
+
+    private static void writeRecurrence(TaskNode node, DataOutputStream out)
+            throws IOException {
+        Recurrence rule = node.getRecurrence();
+        if (rule == null) {
+            out.writeInt(0);
+            out.writeInt(Recurrence.UNLIMITED);
+            out.writeInt(Integer.MAX_VALUE);
+            return;
+        }
+        out.writeInt(rule.getDays());
+        out.writeInt(rule.getRemaining());
+        out.writeInt(rule.getUntil() == Recurrence.FOREVER ? Integer.MAX_VALUE
+                     : delta(rule.getUntil(), node.getPackedDueDate()));
+    }
+
+    // whether a row can leave its name to be worked out from its parent's
+    private static boolean derivesName(TaskNode node, TaskNode head) {
+        TaskNode parent = node.getParent();
+        return node != head && parent != null && node.hasDerivedName()
+               && Objects.equals(node.getBaseCategory(), parent.getCategory());
+    }
+
+    private static void intern(String category, Map<String, Integer> strings,
+                               List<String> dictionary) {
+        if (category != null && !strings.containsKey(category)) {
+            strings.put(category, dictionary.size());
+            dictionary.add(category);
+        }
+    }
+
+    private static int delta(long dueDate, long base) throws IOException {
+        long delta = dueDate - base;
+        if (delta != (int) delta) {
+            throw new IOException("due date too far from its parent's");
+        }
+        return (int) delta;
+    }
+
+    // a latest due date that is not known, or too far from the task's to
+    // store, is written as unknown, which only means it is never skipped
+    private static int latestDelta(long latest, long dueDate) {
+        if (latest == Long.MAX_VALUE) {
+            return SnapshotSource.UNKNOWN;
+        }
+        long delta = latest - dueDate;
+        return delta >= SnapshotSource.UNKNOWN ? SnapshotSource.UNKNOWN
+                                               : (int) delta;
+    }
+
+    // serialized trees written by the journal carry its sequence after them
+    private static long readSequence(ObjectInputStream in) throws IOException {
+        try {
+            return in.readLong();
+        } catch (EOFException e) {
+            return 0;
+        }
+    }
+
+    // a stream into a direct buffer that doubles when full, starting at an
+    // offset left free
+    private static final class BufferOutput extends OutputStream {
+        ByteBuffer buffer;
+
+        BufferOutput(int offset) {
+            buffer = ByteBuffer.allocateDirect(Math.max(offset, 1 << 16));
+            buffer.position(offset);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensure(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+                throws IOException {
+            ensure(length);
+            buffer.put(bytes, offset, length);
+        }
+
+        private void ensure(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+            long needed = (long) buffer.position() + length;
+            if (needed > Integer.MAX_VALUE) {
+                throw new IOException("tree does not fit in a buffer");
+            }
+            int capacity = (int) Math.min(Integer.MAX_VALUE,
+                    Math.max(needed, 2L * buffer.capacity()));
+            ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
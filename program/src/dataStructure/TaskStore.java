@@ -0,0 +1,56 @@
+package dataStructure;
+
+import java.io.IOException;
+
+/**
+ * TaskStore
+ * Keeps a tree too large for the heap as fixed-width rows in memory outside
+ * it, with only the part in use made into TaskNode objects.  The rows are
+ * those of a snapshot held in a direct buffer instead of a file: tasks below
+ * the lazy depth stay rows until selection, a search or a walk reaches them
+ * and are then loaded just as from a mapped snapshot.  Every operation is
+ * the tree's own, so the store chooses, completes and sub-divides exactly as
+ * a TaskNode tree does.
+ *
+ * A task costs its row and no objects until it is loaded, and stays loaded
+ * once it is.  compact writes the tree back into rows and drops the loaded
+ * tasks again.  It replaces the tree, so tasks taken from it before, and
+ * listeners added to it, are no longer part of it afterwards.  A
+ * ConcurrentTaskTree loads all of its tree, so use a store without one.
+ */
+public final class TaskStore {
+
+    private final int lazyDepth;
+    private TaskNode tree;
+
+    /**
+     * TaskStore
+     * Move a tree into rows, keeping its tasks down to the given depth.
+     *
+     * @param head      root of the tree, which the store replaces
+     * @param lazyDepth how many levels below the root stay loaded
+     */
+    public TaskStore(TaskNode head, int lazyDepth) throws IOException {
+        if (head.getParent() != null) {
+            throw new IllegalArgumentException(head + " is not a root");
+        }
+        this.lazyDepth = lazyDepth;
+        this.tree = head;
+        compact();
+    }
+
+    // root of the tree the store holds
+    public TaskNode getTree() {
+        return tree;
+    }
+
+    /**
+     * compact
+     * Write the tree into new rows and read it back down to the lazy depth.
+     * Subtrees never loaded are copied row for row.
+     */
+    public void compact() throws IOException {
+        tree = TaskSnapshot.decode(TaskSnapshot.encode(tree), lazyDepth)
+                .getTree();
+    }
+}
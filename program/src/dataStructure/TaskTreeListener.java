@@ -0,0 +1,75 @@
+package dataStructure;
+
+import java.util.List;
+
+/**
+ * TaskTreeListener
+ * Receives every structural change made to a task tree, so a view of the tree
+ * can be patched in place instead of rebuilt.  Register one on the root of a
+ * tree with TaskNode.addTreeListener.  Events are delivered on the thread
+ * that made the change, after the tree is consistent again.
+ *
+ * Loading or evicting children that are kept in a snapshot is not a change
+ * and is not reported.
+ */
+public interface TaskTreeListener {
+
+    /**
+     * taskAdded
+     * A task was appended as the last child of a parent.
+     *
+     * @param parent the parent, which may have been reopened by the add
+     * @param child  the new child, possibly with children of its own
+     */
+    void taskAdded(TaskNode parent, TaskNode child);
+
+    /**
+     * childrenAdded
+     * Several tasks were appended in one step, as with TaskNode.addChildren
+     * or chunks made together.  By default each one is reported as added on
+     * its own; a view that pays per event can take the batch at once.
+     *
+     * @param parent   the parent, which may have been reopened by the add
+     * @param children the new children, in order, each possibly with
+     *                 children of its own
+     */
+    default void childrenAdded(TaskNode parent, List<TaskNode> children) {
+        for (TaskNode child : children) {
+            taskAdded(parent, child);
+        }
+    }
+
+    /**
+     * childrenRemoved
+     * Every child of a task was removed, along with their subtrees.
+     *
+     * @param parent the task that lost its children
+     */
+    void childrenRemoved(TaskNode parent);
+
+    /**
+     * taskChanged
+     * A task was marked completed or incomplete.
+     *
+     * @param task the task that changed
+     */
+    void taskChanged(TaskNode task);
+
+    /**
+     * taskReverted
+     * A task was put back the way it was in an earlier version, see
+     * ConcurrentTaskTree.undo.  Its own state may have changed and its
+     * children may have been replaced, though some may be the same tasks as
+     * before.  By default this is reported as the task changing, losing its
+     * children and having the ones it has now added.
+     *
+     * @param task the task that was reverted
+     */
+    default void taskReverted(TaskNode task) {
+        taskChanged(task);
+        childrenRemoved(task);
+        for (TaskNode child : task.getChildren()) {
+            taskAdded(task, child);
+        }
+    }
+}
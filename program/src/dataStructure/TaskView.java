@@ -0,0 +1,316 @@
+package dataStructure;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * TaskView
+ * Immutable copy of one version of a task and everything below it.  Views
+ * are published by ConcurrentTaskTree; a change copies only the views on the
+ * path from the changed task up to the root and shares the rest with the
+ * previous version, so a reader holding a view can walk, search or save it
+ * while the tree keeps changing.
+ *
+ * A sub-divided task's view only holds the day chunks made so far.  Those
+ * always include the first incomplete one, so selection is unaffected, and a
+ * copy makes the rest when they are asked for just as the task would.
+ * Children are looked up by index as on the task, so those added after the
+ * plan keep the indexes past the chunks not made yet.
+ */
+public final class TaskView {
+
+    private static final TaskView[] NO_CHILDREN = new TaskView[0];
+
+    // the live task this is a copy of, only used to match it up again
+    final TaskNode source;
+
+    // all of the name, or for a chunk the start it shares, see TaskNode
+    private final String category;
+    private final boolean derivedName;
+    private final long dueDate;
+    private final long dueDateChild;
+    // the earliest due date of the tasks below with nothing left to do
+    // under them, the only ones chooseTask can return
+    private final long dueDateLeaf;
+    private final boolean completed;
+    private final boolean parent;
+    private final int numOfChildren;
+    private final int taskCount;
+    private final int startingIndex;
+    private final int endingIndex;
+    private final TaskView[] children;
+    private final ChunkPlan chunks;
+    private final int addedAfterPlan;
+    private final Recurrence recurrence;
+    private final long version;
+
+    private TaskView(TaskNode node, TaskView[] children, long version) {
+        this.source = node;
+        this.category = node.getBaseCategory();
+        this.derivedName = node.hasDerivedName();
+        this.dueDate = node.getPackedDueDate();
+        this.dueDateChild = node.getPackedDueDateChild();
+        this.completed = node.isCompleted();
+        this.parent = node.isParent();
+        this.numOfChildren = node.getNumOfChildren();
+        this.taskCount = node.getTaskCount();
+        this.startingIndex = node.getStartingIndex();
+        this.endingIndex = node.getEndingIndex();
+        this.children = children;
+        this.chunks = node.getChunkPlan();
+        this.addedAfterPlan = node.getAddedAfterPlan();
+        this.recurrence = node.getRecurrence();
+        this.version = version;
+        long leaf = Long.MAX_VALUE;
+        for (TaskView child : children) {
+            if (!child.completed) {
+                leaf = Math.min(leaf, child.dueDateLeaf);
+            }
+        }
+        this.dueDateLeaf = leaf == Long.MAX_VALUE ? dueDateChild : leaf;
+    }
+
+    /**
+     * of
+     * Copy a live subtree, loading any part of it still in a snapshot.
+     *
+     * @param node    root of the subtree
+     * @param version version the copies belong to
+     * @return the copy of node
+     */
+    static TaskView of(TaskNode node, long version) {
+        // copies are made children first, so walk the subtree in post-order
+        Deque<TaskNode> stack = new ArrayDeque<>();
+        Deque<TaskView> made = new ArrayDeque<>();
+        Deque<TaskNode> order = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            TaskNode n = stack.pop();
+            order.push(n);
+            n.loadChildren();
+            for (TaskNode child : n.getChildren()) {
+                stack.push(child);
+            }
+        }
+        // the last child's copy ends up on top
+        for (TaskNode n : order) {
+            TaskView[] views = n.getChildren().isEmpty() ? NO_CHILDREN
+                               : new TaskView[n.getChildren().size()];
+            for (int i = views.length - 1; i >= 0; i--) {
+                views[i] = made.pop();
+            }
+            made.push(new TaskView(n, views, version));
+        }
+        return made.pop();
+    }
+
+    /**
+     * refresh
+     * Copy a live task again, keeping the views of children that are still
+     * the same tasks and copying any new ones.
+     */
+    TaskView refresh(TaskNode node, long version) {
+        int count = node.getChildren().size();
+        TaskView[] views = count == 0 ? NO_CHILDREN : new TaskView[count];
+        // chunks are made in front of the children added after the plan, so
+        // the children kept can move along but stay in order
+        int i = 0;
+        int kept = 0;
+        for (TaskNode child : node.getChildren()) {
+            if (kept < children.length && children[kept].source == child) {
+                views[i] = children[kept++];
+            } else if (i < children.length && children[i].source == child) {
+                views[i] = children[i];
+                kept = i + 1;
+            } else {
+                views[i] = of(child, version);
+            }
+            i++;
+        }
+        return new TaskView(node, views, version);
+    }
+
+    /**
+     * replace
+     * Copy this view with one child swapped for a newer version of it.
+     */
+    TaskView replace(TaskNode node, int index, TaskView child, long version) {
+        TaskView[] views = children.clone();
+        views[positionOf(index)] = child;
+        return new TaskView(node, views, version);
+    }
+
+    /* Getters */
+
+    public String getCategory() {
+        return derivedName ? TaskNode.chunkName(category, startingIndex,
+                endingIndex) : category;
+    }
+
+    public LocalDateTime getDueDate() {
+        return DueDates.unpack(dueDate);
+    }
+
+    // the earliest due date among this task and its incomplete descendants
+    public LocalDateTime getEarliestDueDate() {
+        return DueDates.unpack(dueDateChild);
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public int getTaskCount() {
+        return taskCount;
+    }
+
+    // how the task comes round again, null if it does not
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    public int getChildCount() {
+        return children.length;
+    }
+
+    public TaskView getChild(int index) {
+        int position = positionOf(index);
+        return position < 0 || position >= children.length ? null
+               : children[position];
+    }
+
+    // the child at a position among the getChildCount() held, and its index
+    public TaskView getChildAt(int position) {
+        return children[position];
+    }
+
+    public int getIndexAt(int position) {
+        int made = children.length - addedAfterPlan;
+        return position < made ? position : position + chunksLeft();
+    }
+
+    // where the child with an index is held, -1 for a chunk not made
+    private int positionOf(int index) {
+        int made = children.length - addedAfterPlan;
+        if (index < made) {
+            return index;
+        }
+        int left = chunksLeft();
+        return index < made + left ? -1 : index - left;
+    }
+
+    // chunks not made yet in front of the children added after the plan
+    private int chunksLeft() {
+        return addedAfterPlan == 0 ? 0
+               : chunks.chunkCount() - (children.length - addedAfterPlan);
+    }
+
+    // version of the tree this task last changed in
+    public long getVersion() {
+        return version;
+    }
+
+    /* End Getters */
+
+    /**
+     * chooseTask
+     * Return the incomplete task that should be worked on next, with the
+     * same ordering and tie-breaks as TaskNode.chooseTask.  The subtree is
+     * scanned without recursion.  Only the tasks below with nothing left to
+     * do under them can be returned, and each view knows the earliest due
+     * date among its own, so the scan only goes down into children holding
+     * one due then and not through the rest of the tree.
+     *
+     * @return the next task, or null if this task is completed
+     */
+    public TaskView chooseTask() {
+        if (completed) {
+            return null;
+        }
+        TaskView min = null;
+        Deque<TaskView> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            TaskView view = stack.pop();
+            boolean leaf = true;
+            for (int i = view.children.length - 1; i >= 0; i--) {
+                TaskView child = view.children[i];
+                if (!child.completed) {
+                    leaf = false;
+                    if (child.dueDateLeaf == dueDateLeaf) {
+                        stack.push(child);
+                    }
+                }
+            }
+            // found in tree order, so a full tie keeps the earlier task
+            if (leaf && (min == null || view.precedes(min))) {
+                min = view;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * copy
+     * Build an independent, mutable tree with the same tasks, for example to
+     * save this version with TaskSnapshot.
+     */
+    public TaskNode copy() {
+        Deque<TaskView> views = new ArrayDeque<>();
+        Deque<TaskNode> nodes = new ArrayDeque<>();
+        Deque<TaskNode> made = new ArrayDeque<>();
+        TaskNode root = copyOf(this);
+        views.push(this);
+        nodes.push(root);
+        while (!views.isEmpty()) {
+            TaskView view = views.pop();
+            TaskNode node = nodes.pop();
+            made.push(node);
+            for (TaskView child : view.children) {
+                TaskNode copy = copyOf(child);
+                node.attach(copy);
+                views.push(child);
+                nodes.push(copy);
+            }
+        }
+        // parents were made before their children, so undo that order
+        for (TaskNode node : made) {
+            node.restoreChildIndexes();
+            node.restoreDueDateChild();
+        }
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return getCategory();
+    }
+
+    // whether chooseTask would pick this task over another
+    boolean precedes(TaskView other) {
+        if (dueDateChild != other.dueDateChild) {
+            return dueDateChild < other.dueDateChild;
+        }
+        if (dueDate != other.dueDate) {
+            return dueDate < other.dueDate;
+        }
+        return numOfChildren > other.numOfChildren;
+    }
+
+    // a detached, childless task with the state of a view
+    static TaskNode copyOf(TaskView view) {
+        TaskNode node = new TaskNode(view.category,
+                DueDates.unpack(view.dueDate));
+        node.setTaskCount(view.taskCount);
+        node.setStartingIndex(view.startingIndex);
+        node.restore(view.completed, view.parent, view.numOfChildren,
+                view.endingIndex);
+        if (view.derivedName) {
+            node.deriveName(view.category);
+        }
+        node.restoreChunks(view.chunks, view.addedAfterPlan);
+        node.restoreRecurrence(view.recurrence);
+        return node;
+    }
+}
@@ -0,0 +1,72 @@
+package dataStructure;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * TreeStats
+ * Size and shape of the part of a tree that is in memory, for gauges.
+ * Subtrees still on disk are not read; each counts as the one task holding
+ * them.  Taking the stats walks every loaded node, so it should be done on
+ * the thread that owns the tree and not on every change.
+ */
+public final class TreeStats {
+
+    private final long size;
+    private final long pending;
+    private final int depth;
+
+    private TreeStats(long size, long pending, int depth) {
+        this.size = size;
+        this.pending = pending;
+        this.depth = depth;
+    }
+
+    /**
+     * of
+     * Walk the loaded part of a tree.
+     *
+     * @param head the root of the tree
+     * @return its stats
+     */
+    public static TreeStats of(TaskNode head) {
+        long size = 0;
+        long pending = 0;
+        int depth = 0;
+        Deque<TaskNode> nodes = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        nodes.push(head);
+        depths.push(0);
+        while (!nodes.isEmpty()) {
+            TaskNode node = nodes.pop();
+            int d = depths.pop();
+            size++;
+            if (!node.isCompleted()) {
+                pending++;
+            }
+            depth = Math.max(depth, d);
+            if (!node.isUnloaded()) {
+                for (TaskNode child : node.getChildren()) {
+                    nodes.push(child);
+                    depths.push(d + 1);
+                }
+            }
+        }
+        return new TreeStats(size, pending, depth);
+    }
+
+    // tasks in memory, the root included
+    public long getSize() {
+        return size;
+    }
+
+    // tasks in memory not completed yet
+    public long getPending() {
+        return pending;
+    }
+
+    // levels below the root
+    public int getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,262 @@
+/*
+  LoadTest.java
+
+ * Load test for TaskServer that runs entirely on localhost.  It builds a
+ * random tree in memory, serves it on a free port of the loopback interface
+ * and has a number of clients ask for work as fast as they can: most
+ * requests read the next task or the agenda, and the rest add tasks and
+ * complete the tasks they were given.  Give --url to load a server that is
+ * already running instead; its tree is changed.
+ *
+ * After a warm-up, every request is timed from before it is sent until its
+ * answer has been read, and throughput and latency percentiles are printed.
+ *
+ *   java server.LoadTest [--tasks n] [--clients n] [--seconds n]
+ *                        [--warmup n] [--writes percent] [--url url]
+ */
+
+package server;
+
+import dataStructure.ConcurrentTaskTree;
+import dataStructure.Metrics;
+import dataStructure.TaskNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class LoadTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+    private static final Pattern PATH =
+            Pattern.compile("\"path\":\"([0-9/]*)\"");
+
+    private int tasks = 100000;
+    private int clients = 64;
+    private int seconds = 10;
+    private int warmup = 3;
+    private int writes = 10;
+    private String url;
+
+    public static void main(String[] args) throws Exception {
+        LoadTest test = new LoadTest();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--tasks": test.tasks = Integer.parseInt(value); break;
+                case "--clients": test.clients = Integer.parseInt(value); break;
+                case "--seconds": test.seconds = Integer.parseInt(value); break;
+                case "--warmup": test.warmup = Integer.parseInt(value); break;
+                case "--writes": test.writes = Integer.parseInt(value); break;
+                case "--url": test.url = value; break;
+                default:
+                    System.err.println("unknown option " + args[i]);
+                    return;
+            }
+        }
+        test.run();
+    }
+
+    private void run() throws Exception {
+        // keep a connection per client alive rather than the default five
+        System.setProperty("http.maxConnections", String.valueOf(clients));
+        TaskServer server = null;
+        if (url == null) {
+            System.out.println("Building a tree of " + tasks + " tasks");
+            server = new TaskServer(new ConcurrentTaskTree(randomTree()), 0);
+            Metrics.setEnabled(true);
+            server.start();
+            url = "http://localhost:" + server.getPort();
+        }
+        System.out.println(clients + " clients on " + url + ", " + writes
+                           + "% writes, " + warmup + "s warm-up, " + seconds
+                           + "s measured");
+
+        ExecutorService threads = TaskServer.perRequestExecutor();
+        long startAt = System.nanoTime() + warmup * 1000000000L;
+        long stopAt = startAt + seconds * 1000000000L;
+        List<Future<Client>> running = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Client client = new Client(new Random(i), startAt, stopAt);
+            running.add(threads.submit(client::call));
+        }
+        List<Client> done = new ArrayList<>();
+        for (Future<Client> client : running) {
+            done.add(client.get());
+        }
+        threads.shutdown();
+        if (server != null) {
+            server.close();
+        }
+        report(done);
+        if (server != null) {
+            // time spent answering, without the client or the network, and
+            // including the warm-up
+            System.out.print("Server side:\n" + Metrics.report());
+        }
+    }
+
+    private void report(List<Client> done) {
+        int count = 0;
+        int errors = 0;
+        for (Client client : done) {
+            count += client.count;
+            errors += client.errors;
+        }
+        long[] all = new long[count];
+        int at = 0;
+        for (Client client : done) {
+            System.arraycopy(client.latencies, 0, all, at, client.count);
+            at += client.count;
+        }
+        Arrays.sort(all);
+        System.out.printf("%d requests, %.0f per second, %d errors%n", count,
+                count / (double) seconds, errors);
+        if (count == 0) {
+            return;
+        }
+        double[] percentiles = {0.5, 0.9, 0.99, 0.999};
+        for (double p : percentiles) {
+            int index = (int) Math.min(count - 1, Math.ceil(p * count) - 1);
+            System.out.printf("  p%-5s %8.3f ms%n",
+                    String.valueOf(p * 100).replaceAll("\\.0$", ""),
+                    all[Math.max(0, index)] / 1e6);
+        }
+        System.out.printf("  max    %8.3f ms%n", all[count - 1] / 1e6);
+    }
+
+    // a tree where each task is put under one made before it at random, so
+    // most sit a few levels down, with some large tasks left to sub-divide
+    private TaskNode randomTree() {
+        Random random = new Random(42);
+        TaskNode head = new TaskNode("Task List", NOW.plusYears(10));
+        List<TaskNode> made = new ArrayList<>();
+        made.add(head);
+        for (int i = 1; i < tasks; i++) {
+            TaskNode parent = made.get(random.nextInt(made.size()));
+            TaskNode task = new TaskNode("task " + i,
+                    NOW.plusMinutes(random.nextInt(60 * 24 * 365)));
+            if (random.nextInt(100) == 0) {
+                task.setTaskCount(10 + random.nextInt(90));
+            }
+            parent.addChild(task);
+            made.add(task);
+        }
+        return head;
+    }
+
+    // one client sending requests back to back on its own thread
+    private final class Client {
+        private final Random random;
+        private final long startAt;
+        private final long stopAt;
+
+        long[] latencies = new long[1 << 16];
+        int count;
+        int errors;
+
+        // the last task the client was given, to complete or add under
+        private String path;
+
+        Client(Random random, long startAt, long stopAt) {
+            this.random = random;
+            this.startAt = startAt;
+            this.stopAt = stopAt;
+        }
+
+        Client call() {
+            byte[] buffer = new byte[8192];
+            for (long now = System.nanoTime(); now < stopAt;
+                 now = System.nanoTime()) {
+                String response;
+                try {
+                    response = send(buffer);
+                } catch (IOException e) {
+                    response = null;
+                }
+                long took = System.nanoTime() - now;
+                if (now >= startAt) {
+                    record(took, response == null);
+                }
+                if (response != null) {
+                    Matcher m = PATH.matcher(response);
+                    if (m.find()) {
+                        path = m.group(1);
+                    }
+                }
+            }
+            return this;
+        }
+
+        private void record(long nanos, boolean failed) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (failed) {
+                errors++;
+            }
+        }
+
+        // send one request picked at random, returning its answer or null
+        // if it failed
+        private String send(byte[] buffer) throws IOException {
+            if (random.nextInt(100) >= writes) {
+                return random.nextBoolean() ? request("GET", "/next", buffer)
+                        : request("GET", "/agenda?limit=10", buffer);
+            }
+            if (path != null && !path.isEmpty() && random.nextBoolean()) {
+                String task = path;
+                path = null;
+                return request("POST", "/complete?task=" + task, buffer);
+            }
+            String parent = path == null ? ""
+                    : path.substring(0, Math.max(0, path.lastIndexOf('/')));
+            LocalDateTime due = NOW.plusMinutes(random.nextInt(60 * 24 * 365));
+            return request("POST", "/add?parent=" + parent + "&category="
+                    + URLEncoder.encode("load " + count, "UTF-8") + "&due="
+                    + due, buffer);
+        }
+
+        private String request(String method, String path, byte[] buffer)
+                throws IOException {
+            HttpURLConnection connection = (HttpURLConnection)
+                    new URL(url + path).openConnection();
+            connection.setRequestMethod(method);
+            if (method.equals("POST")) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(0);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.flush();
+                }
+            }
+            int status = connection.getResponseCode();
+            // read everything so the connection can be used again
+            InputStream in = status < 400 ? connection.getInputStream()
+                                          : connection.getErrorStream();
+            StringBuilder body = new StringBuilder();
+            try (InputStream stream = in) {
+                for (int n; stream != null && (n = stream.read(buffer)) > 0; ) {
+                    body.append(new String(buffer, 0, n,
+                            StandardCharsets.UTF_8));
+                }
+            }
+            // another client may have taken a task out of the tree first,
+            // which is answered but is no failure
+            return status < 500 ? body.toString() : null;
+        }
+    }
+}
@@ -0,0 +1,475 @@
+/*
+  TaskServer.java
+
+ * Headless front end to the task tree, for scripts and dashboards that want
+ * the next task without a display.  A small HTTP service listens on the
+ * loopback interface only and answers in JSON:
+ *
+ *   GET  /next[?under=path]                     task to work on next
+ *   GET  /agenda[?limit=n]                      the next n tasks, in order
+ *   POST /add?category=..&due=..[&parent=path][&count=n]
+ *            [&every=days[&times=n][&until=..]]
+ *   POST /complete?task=path[&completed=false]
+ *   POST /subdivide?task=path&start=..
+ *   POST /undo                                  undo the last change
+ *   POST /redo                                  make it again
+ *
+ * Tasks are named by the child indexes leading down to them from the root,
+ * such as 0/2, which every task carries as its "path".  Due dates are ISO
+ * local date-times, such as 2018-05-01T09:00.  Completing a task added with
+ * every=n makes it due again n days after it was due, until times or until
+ * ends the series.  Parameters may also be sent as a form body.
+ *
+ * Every request runs on a thread of its own against one ConcurrentTaskTree:
+ * reads take the latest version without waiting, and changes queue on the
+ * tree's lock and are journaled before they answer.  Where the runtime has
+ * virtual threads (Java 21 and later) each request gets a new one, so a
+ * request waiting on the lock or the disk costs next to nothing; otherwise
+ * requests share a pool of platform threads.
+ */
+
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import dataStructure.ConcurrentTaskTree;
+import dataStructure.Metrics;
+import dataStructure.Recurrence;
+import dataStructure.TaskJournal;
+import dataStructure.TaskNode;
+import dataStructure.TaskView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TaskServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 8181;
+
+    private static final int DEFAULT_AGENDA = 20;
+    private static final int MAX_AGENDA = 1000;
+    private static final int BACKLOG = 1024;
+
+    static {
+        // answers are small, so don't let Nagle hold them back waiting for
+        // an ack the client is delaying
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final ConcurrentTaskTree tree;
+    private final HttpServer http;
+    private final ExecutorService requests;
+
+    /**
+     * TaskServer
+     * Serve a shared tree on a port of the loopback interface.  Nothing is
+     * answered until start is called.
+     *
+     * @param tree the tree
+     * @param port the port, or 0 for any free one
+     */
+    public TaskServer(ConcurrentTaskTree tree, int port) throws IOException {
+        this.tree = tree;
+        http = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), BACKLOG);
+        requests = perRequestExecutor();
+        http.setExecutor(requests);
+        route("next", "GET", this::next);
+        route("agenda", "GET", this::agenda);
+        route("add", "POST", this::add);
+        route("complete", "POST", this::complete);
+        route("subdivide", "POST", this::subDivide);
+        route("undo", "POST", params -> reverted(tree.undo()));
+        route("redo", "POST", params -> reverted(tree.redo()));
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    // the port being listened on, useful when it was picked by the system
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    // close
+    // stop listening, letting requests already running finish
+    @Override
+    public void close() {
+        http.stop(0);
+        requests.shutdown();
+        try {
+            requests.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // perRequestExecutor
+    // start a virtual thread for each request if the runtime has them,
+    // otherwise run requests on a fixed pool of daemon threads.  Looked up
+    // reflectively so the server still builds and runs on older JDKs.
+    static ExecutorService perRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Math.max(16,
+                    4 * Runtime.getRuntime().availableProcessors());
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread t = new Thread(runnable, "task-server");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // answer requests for /name with handler, timing each one
+    private void route(String name, String method, Handler handler) {
+        http.createContext("/" + name, new Endpoint(method, handler,
+                Metrics.timer("http." + name)));
+    }
+
+    /* Endpoints */
+
+    private Response next(Map<String, String> params) {
+        TaskView top = find(tree.snapshot(), params.get("under"));
+        TaskView task = top.chooseTask();
+        return Response.ok(task == null ? "null" : describe(task));
+    }
+
+    private Response agenda(Map<String, String> params) {
+        int limit = intParam(params, "limit", DEFAULT_AGENDA);
+        if (limit < 0 || limit > MAX_AGENDA) {
+            throw new IllegalArgumentException("limit must be from 0 to "
+                                               + MAX_AGENDA);
+        }
+        List<TaskView> tasks = tree.agenda(limit);
+        StringBuilder json = new StringBuilder("[");
+        for (TaskView task : tasks) {
+            json.append(json.length() > 1 ? "," : "").append(describe(task));
+        }
+        return Response.ok(json.append(']').toString());
+    }
+
+    private Response add(Map<String, String> params) throws IOException {
+        String category = required(params, "category");
+        TaskNode child = new TaskNode(category, dateParam(params, "due"));
+        if (params.containsKey("count")) {
+            child.setTaskCount(intParam(params, "count", 0));
+        }
+        if (params.containsKey("every")) {
+            child.setRecurrence(recurrence(params));
+        }
+        TaskView added = change(params.get("parent"),
+                parent -> tree.addChild(parent, child));
+        return new Response(201, describe(added));
+    }
+
+    private Response complete(Map<String, String> params) throws IOException {
+        String path = required(params, "task");
+        boolean completed = !"false".equals(params.get("completed"));
+        // the task may have left the tree, so it is not looked up again
+        TaskView task = change(path,
+                found -> tree.setCompleted(found, completed));
+        return Response.ok(describe(task));
+    }
+
+    private Response subDivide(Map<String, String> params) throws IOException {
+        String path = required(params, "task");
+        LocalDateTime start = dateParam(params, "start");
+        TaskView[] task = new TaskView[1];
+        LocalDateTime end = change(path, found -> {
+            task[0] = found;
+            return tree.subDivide(found, start);
+        });
+        return Response.ok("{\"task\":" + describe(tree.latest(task[0]))
+                           + ",\"end\":" + quote(String.valueOf(end)) + "}");
+    }
+
+    // reverted
+    // answer an undo or redo with whether there was anything to revert
+    private static Response reverted(boolean changed) {
+        return Response.ok("{\"changed\":" + changed + "}");
+    }
+
+    /* Helpers */
+
+    // find
+    // the task at a path of child indexes below a version of the tree
+    private static TaskView find(TaskView root, String path) {
+        TaskView view = root;
+        if (path == null || path.isEmpty()) {
+            return view;
+        }
+        for (String index : path.split("/")) {
+            view = view.getChild(Integer.parseInt(index));
+            if (view == null) {
+                throw new NoSuchTaskException(path);
+            }
+        }
+        return view;
+    }
+
+    // change
+    // make a change to the task at a path.  Another request may take it out
+    // of the tree between finding and changing it, which is answered the
+    // same as if it had never been there.
+    private <T> T change(String path, Change<T> change)
+            throws IOException {
+        TaskView task = find(tree.snapshot(), path);
+        try {
+            return change.apply(task);
+        } catch (IllegalArgumentException e) {
+            throw new NoSuchTaskException(path);
+        }
+    }
+
+    // describe
+    // a task as a JSON object, with a null path for a chunk not made yet
+    private String describe(TaskView task) {
+        int[] path = tree.pathOf(task);
+        StringBuilder json = new StringBuilder("{\"path\":");
+        if (path == null) {
+            json.append("null");
+        } else {
+            StringBuilder joined = new StringBuilder();
+            for (int index : path) {
+                joined.append(joined.length() > 0 ? "/" : "").append(index);
+            }
+            json.append(quote(joined.toString()));
+        }
+        return json.append(",\"category\":").append(quote(task.getCategory()))
+                .append(",\"due\":")
+                .append(quote(String.valueOf(task.getDueDate())))
+                .append(",\"completed\":").append(task.isCompleted())
+                .append('}').toString();
+    }
+
+    static String quote(String text) {
+        if (text == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    // recurrence
+    // the rule asked for by every, and times or until if given
+    private static Recurrence recurrence(Map<String, String> params) {
+        Recurrence rule = Recurrence.everyDays(intParam(params, "every", 0));
+        if (params.containsKey("times")) {
+            rule = rule.times(intParam(params, "times", 0));
+        }
+        if (params.containsKey("until")) {
+            rule = rule.until(dateParam(params, "until"));
+        }
+        return rule;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name,
+                                int otherwise) {
+        String value = params.get(name);
+        return value == null ? otherwise : Integer.parseInt(value);
+    }
+
+    private static LocalDateTime dateParam(Map<String, String> params,
+                                           String name) {
+        try {
+            return LocalDateTime.parse(required(params, name));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(name + " is not a date and "
+                                               + "time like 2018-05-01T09:00");
+        }
+    }
+
+    // the parameters of the query string and of a form body
+    private static Map<String, String> params(HttpExchange exchange)
+            throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parse(exchange.getRequestURI().getRawQuery(), params);
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (type != null
+            && type.startsWith("application/x-www-form-urlencoded")) {
+            parse(read(exchange.getRequestBody()), params);
+        }
+        return params;
+    }
+
+    private static void parse(String query, Map<String, String> params)
+            throws UnsupportedEncodingException {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            params.put(URLDecoder.decode(name, "UTF-8"),
+                    URLDecoder.decode(value, "UTF-8"));
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * main
+     * Serve taskTree.txt and its journal from the working directory, as the
+     * GUI would, until the process is stopped.  Both must not have the same
+     * files open at once.
+     *
+     * @param args optionally the port to listen on
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        TaskJournal journal = new TaskJournal(new File("taskTree.txt"),
+                new File("taskTree.journal"));
+        TaskNode head = journal.load(new TaskNode("Task List",
+                LocalDateTime.now()));
+        ConcurrentTaskTree tree = new ConcurrentTaskTree(head, journal);
+        TaskServer server = new TaskServer(tree, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                tree.checkpoint();
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
+        server.start();
+        System.out.println("Serving tasks on http://localhost:"
+                           + server.getPort() + "/");
+    }
+
+    private interface Handler {
+        Response handle(Map<String, String> params) throws IOException;
+    }
+
+    private interface Change<T> {
+        T apply(TaskView task) throws IOException;
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response ok(String body) {
+            return new Response(200, body);
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, "{\"error\":" + quote(message) + "}");
+        }
+    }
+
+    private static final class NoSuchTaskException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NoSuchTaskException(String path) {
+            super("no task at " + path);
+        }
+    }
+
+    // runs one endpoint, turning what it throws into an error status
+    private static final class Endpoint implements HttpHandler {
+        private final String method;
+        private final Handler handler;
+        private final Metrics.Timer timer;
+
+        Endpoint(String method, Handler handler, Metrics.Timer timer) {
+            this.method = method;
+            this.handler = handler;
+            this.timer = timer;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long start = Metrics.start();
+            String path = exchange.getRequestURI().getPath();
+            String context = exchange.getHttpContext().getPath();
+            Response response;
+            if (!path.equals(context) && !path.equals(context + "/")) {
+                response = Response.error(404, "no such endpoint " + path);
+            } else if (!method.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                response = Response.error(405, "use " + method);
+            } else {
+                response = run(exchange);
+            }
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                    "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            timer.stop(start);
+        }
+
+        private Response run(HttpExchange exchange) {
+            try {
+                return handler.handle(params(exchange));
+            } catch (NoSuchTaskException e) {
+                return Response.error(404, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                // including numbers that don't parse and views that have
+                // left the tree
+                return Response.error(400, e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                return Response.error(500, String.valueOf(e));
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package tests;
+
+import dataStructure.ConcurrentTaskTree;
+import dataStructure.TaskJournal;
+import dataStructure.TaskNode;
+import dataStructure.TaskView;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentTaskTreeTester {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+
+    @Test
+    public void testSnapshotsDoNotChange() throws IOException {
+        TaskNode head = new TaskNode("head", NOW.plusDays(100));
+        TaskNode project = new TaskNode("project", NOW.plusDays(10));
+        project.setTaskCount(4);
+        head.addChild(project);
+        ConcurrentTaskTree tree = new ConcurrentTaskTree(head);
+
+        TaskView before = tree.snapshot();
+        tree.addChild(before, new TaskNode("extra", NOW.plusDays(2)));
+        tree.subDivide(before.getChild(0), NOW.plusDays(8));
+        TaskView after = tree.snapshot();
+
+        assertEquals(1, before.getChildCount());
+        assertEquals(0, before.getChild(0).getChildCount());
+        assertEquals(NOW.plusDays(10), before.getEarliestDueDate());
+
+        assertEquals(2, after.getChildCount());
+        assertEquals("project: 0 - 1", after.getChild(0).getChild(0)
+                .getCategory());
+        assertEquals(NOW.plusDays(2), after.getEarliestDueDate());
+        assertEquals("extra", tree.chooseTask().getCategory());
+        assertTrue(after.getVersion() > before.getVersion());
+
+        tree.setCompleted(after.getChild(1), true);
+        assertFalse(after.getChild(1).isCompleted());
+        assertTrue(tree.snapshot().getChild(1).isCompleted());
+        assertEquals("project: 0 - 1", tree.chooseTask().getCategory());
+    }
+
+    @Test
+    public void testSelectionMatchesTree() throws IOException {
+        Random random = new Random(7);
+        TaskNode head = new TaskNode("head", NOW.plusDays(100));
+        ConcurrentTaskTree tree = new ConcurrentTaskTree(head);
+
+        // a plain tree given the same changes picks the same tasks
+        TaskNode plain = new TaskNode("head", NOW.plusDays(100));
+        for (int step = 0; step < 300; step++) {
+            List<Integer> path = randomPath(tree.snapshot(), random);
+            TaskView view = at(tree.snapshot(), path);
+            TaskNode node = at(plain, path);
+            int op = random.nextInt(10);
+            if (op < 6) {
+                LocalDateTime due = NOW.plusDays(random.nextInt(60));
+                int count = random.nextInt(3) * 4;
+                tree.addChild(view, task("t" + step, due, count));
+                node.addChild(task("t" + step, due, count));
+            } else if (op < 9 && !path.isEmpty()) {
+                boolean completed = random.nextInt(4) != 0;
+                tree.setCompleted(view, completed);
+                node.setCompleted(completed);
+            } else {
+                LocalDateTime start = NOW.plusDays(random.nextInt(5));
+                tree.subDivide(view, start);
+                node.subDivide(start);
+            }
+
+            TaskView next = tree.chooseTask();
+            TaskNode expected = plain.chooseTask();
+            assertEquals(expected == null, next == null);
+            if (next != null) {
+                assertEquals(expected.getCategory(), next.getCategory());
+                assertEquals(expected.getDueDate(), next.getDueDate());
+            }
+            assertEquals(plain.getEarliestDueDate(),
+                    tree.snapshot().getEarliestDueDate());
+            assertSameTree(plain, tree.snapshot().copy());
+        }
+    }
+
+    @Test
+    public void testReadersDoNotBlockWriters() throws Exception {
+        TaskNode head = new TaskNode("head", NOW.plusDays(100));
+        ConcurrentTaskTree tree = new ConcurrentTaskTree(head);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> reads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            reads.add(readers.submit(() -> {
+                int count = 0;
+                while (!done.get()) {
+                    TaskView view = tree.snapshot();
+                    TaskView next = view.chooseTask();
+                    assertTrue(next != null);
+                    count += view.getChildCount();
+                }
+                return count;
+            }));
+        }
+
+        for (int i = 0; i < 2000; i++) {
+            tree.addChild(tree.snapshot(), new TaskNode("t" + i,
+                    NOW.plusMinutes(i)));
+        }
+        done.set(true);
+        for (Future<Integer> read : reads) {
+            read.get();
+        }
+        readers.shutdown();
+
+        assertEquals(2000, tree.snapshot().getChildCount());
+        assertEquals("t0", tree.chooseTask().getCategory());
+    }
+
+    @Test
+    public void testAgendaAndPaths() throws IOException {
+        TaskNode head = new TaskNode("head", NOW.plusDays(100));
+        TaskNode project = new TaskNode("project", NOW.plusDays(10));
+        project.setTaskCount(3);
+        head.addChild(project);
+        ConcurrentTaskTree tree = new ConcurrentTaskTree(head);
+        TaskView errands = tree.addChild(tree.snapshot(),
+                new TaskNode("errands", NOW.plusDays(2)));
+        tree.addChild(errands, new TaskNode("shop", NOW.plusDays(5)));
+        tree.subDivide(tree.snapshot().getChild(0), NOW);
+
+        assertEquals("[1]", Arrays.toString(tree.pathOf(errands)));
+        List<String> expected = new ArrayList<>();
+        head.agendaStream().limit(4).forEach(task ->
+                expected.add(task.getCategory()));
+        List<String> names = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (TaskView task : tree.agenda(4)) {
+            names.add(task.getCategory());
+            paths.add(Arrays.toString(tree.pathOf(task)));
+        }
+        assertEquals(expected, names);
+        assertEquals("[project: 0, shop, project: 1, project: 2]",
+                names.toString());
+        // only the first chunk has been made so far
+        assertEquals("[[0, 0], [1, 0], null, null]", paths.toString());
+
+        // asking again is answered from the same version until it changes
+        assertEquals(tree.agenda(2), tree.agenda(4).subList(0, 2));
+        tree.setCompleted(tree.snapshot().getChild(0).getChild(0), true);
+        TaskView next = tree.agenda(4).get(1);
+        assertEquals("project: 1", next.getCategory());
+        assertEquals("[0, 1]", Arrays.toString(tree.pathOf(next)));
+    }
+
+    @Test
+    public void testUndoBringsBackChildren() throws IOException {
+        TaskNode head = new TaskNode("head", NOW.plusDays(100));
+        ConcurrentTaskTree tree = new ConcurrentTaskTree(head);
+        TaskView errands = tree.addChild(tree.snapshot(),
+                new TaskNode("errands", NOW.plusDays(9)));
+        tree.addChild(errands, new TaskNode("shop", NOW.plusDays(5)));
+        tree.addChild(errands, new TaskNode("post", NOW.plusDays(3)));
+        TaskView report = tree.addChild(tree.snapshot(),
+                new TaskNode("report", NOW.plusDays(4)));
+        TaskNode post = head.getChild(0).getChild(1);
+        assertFalse(tree.canRedo());
+
+        // completing errands drops its children
+        tree.setCompleted(tree.snapshot().getChild(0), true);
+        assertEquals(0, tree.snapshot().getChild(0).getChildCount());
+        assertEquals("report", head.chooseTask().getCategory());
+
+        assertTrue(tree.undo());
+        TaskView undone = tree.snapshot();
+        assertFalse(undone.getChild(0).isCompleted());
+        assertEquals(2, undone.getChild(0).getChildCount());
+        assertEquals("post", head.chooseTask().getCategory());
+        assertEquals("post", tree.chooseTask().getCategory());
+        assertEquals(NOW.plusDays(3), undone.getEarliestDueDate());
+        // the task that did not change is still the same task
+        assertTrue(undone.getChild(1) == report);
+
+        assertTrue(tree.redo());
+        assertTrue(tree.snapshot().getChild(0).isCompleted());
+        assertEquals("report", head.chooseTask().getCategory());
+        assertTrue(tree.undo());
+        assertTrue(tree.undo());
+        assertEquals(1, tree.snapshot().getChildCount());
+        // children dropped by the completion come back as copies
+        assertEquals("post", head.getChild(0).getChild(1).getCategory());
+        assertTrue(head.getChild(0).getChild(1) != post);
+
+        // a new change cannot be redone past
+        tree.addChild(tree.snapshot(), new TaskNode("call", NOW));
+        assertFalse(tree.canRedo());
+        assertFalse(tree.redo());
+        assertEquals("call", head.chooseTask().getCategory());
+    }
+
+    @Test
+    public void testUndoMatchesEarlierVersions() throws IOException {
+        Random random = new Random(11);
+        TaskNode head = new TaskNode("head", NOW.plusDays(100));
+        ConcurrentTaskTree tree = new ConcurrentTaskTree(head);
+        List<TaskView> versions = new ArrayList<>();
+        versions.add(tree.snapshot());
+        int at = 0;
+        for (int step = 0; step < 400; step++) {
+            int op = random.nextInt(10);
+            if (op < 2 && at > 0) {
+                assertTrue(tree.undo());
+                at--;
+            } else if (op < 3 && at + 1 < versions.size()) {
+                assertTrue(tree.redo());
+                at++;
+            } else {
+                TaskView before = tree.snapshot();
+                List<Integer> path = randomPath(before, random);
+                TaskView view = at(before, path);
+                if (op < 7) {
+                    tree.addChild(view, task("t" + step,
+                            NOW.plusDays(random.nextInt(60)),
+                            random.nextInt(3) * 4));
+                } else if (op < 9 && !path.isEmpty()) {
+                    tree.setCompleted(view, random.nextInt(4) != 0);
+                } else {
+                    tree.subDivide(view, NOW.plusDays(random.nextInt(5)));
+                }
+                // a change that changed nothing cannot be undone
+                versions = new ArrayList<>(versions.subList(0, at + 1));
+                if (tree.snapshot() != before) {
+                    versions.add(tree.snapshot());
+                    at++;
+                }
+                if (versions.size() > 101) {
+                    versions.remove(0);
+                    at--;
+                }
+            }
+
+            // the published version and the live tree's scheduler both
+            // match the version expected
+            TaskNode expected = versions.get(at).copy();
+            assertSameTree(expected, tree.snapshot().copy());
+            TaskNode next = expected.chooseTask();
+            assertEquals(next == null ? null : next.getCategory(),
+                    head.chooseTask() == null ? null
+                            : head.chooseTask().getCategory());
+            assertEquals(next == null ? null : next.getCategory(),
+                    tree.chooseTask() == null ? null
+                            : tree.chooseTask().getCategory());
+        }
+    }
+
+    @Test
+    public void testUndoReplayedFromJournal() throws IOException {
+        File dir = Files.createTempDirectory("undo").toFile();
+        File snapshot = new File(dir, "taskTree.txt");
+        File journalFile = new File(dir, "taskTree.journal");
+        TaskJournal journal = new TaskJournal(snapshot, journalFile);
+        TaskNode head = journal.load(new TaskNode("head", NOW.plusDays(100)));
+        ConcurrentTaskTree tree = new ConcurrentTaskTree(head, journal);
+
+        Random random = new Random(7);
+        for (int step = 0; step < 300; step++) {
+            int op = random.nextInt(10);
+            if (op < 2) {
+                long before = journalFile.length();
+                if (tree.undo()) {
+                    // only what changed is appended, nothing is rewritten
+                    assertTrue(journalFile.length() > before);
+                }
+            } else if (op < 3) {
+                tree.redo();
+            } else {
+                TaskView view = at(tree.snapshot(),
+                        randomPath(tree.snapshot(), random));
+                if (op < 7) {
+                    tree.addChild(view, task("t" + step,
+                            NOW.plusDays(random.nextInt(60)),
+                            random.nextInt(3) * 4));
+                } else if (op < 9 && view != tree.snapshot()) {
+                    tree.setCompleted(view, random.nextInt(4) != 0);
+                } else {
+                    tree.subDivide(view, NOW.plusDays(random.nextInt(5)));
+                }
+            }
+        }
+        journal.close();
+
+        TaskNode replayed = new TaskJournal(snapshot, journalFile)
+                .load(new TaskNode("other", NOW));
+        assertSameTree(tree.snapshot().copy(), replayed);
+    }
+
+    private static TaskNode task(String category, LocalDateTime due,
+                                 int count) {
+        TaskNode node = new TaskNode(category, due);
+        node.setTaskCount(count);
+        return node;
+    }
+
+    private static List<Integer> randomPath(TaskView view, Random random) {
+        List<Integer> path = new ArrayList<>();
+        while (view.getChildCount() > 0 && random.nextInt(3) != 0) {
+            int position = random.nextInt(view.getChildCount());
+            path.add(view.getIndexAt(position));
+            view = view.getChildAt(position);
+        }
+        return path;
+    }
+
+    private static TaskView at(TaskView view, List<Integer> path) {
+        for (int index : path) {
+            view = view.getChild(index);
+        }
+        return view;
+    }
+
+    private static TaskNode at(TaskNode node, List<Integer> path) {
+        for (int index : path) {
+            node = node.getChild(index);
+        }
+        return node;
+    }
+
+    private static void assertSameTree(TaskNode expected, TaskNode actual) {
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getDueDate(), actual.getDueDate());
+        assertEquals(expected.isCompleted(), actual.isCompleted());
+        assertEquals(expected.getEarliestDueDate(),
+                actual.getEarliestDueDate());
+        int i = 0;
+        while (expected.getChild(i) != null) {
+            assertSameTree(expected.getChild(i), actual.getChild(i));
+            i++;
+        }
+        assertEquals(null, actual.getChild(i));
+    }
+}
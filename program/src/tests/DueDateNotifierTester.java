@@ -0,0 +1,108 @@
+package tests;
+
+import dataStructure.DueDateNotifier;
+import dataStructure.Recurrence;
+import dataStructure.TaskNode;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DueDateNotifierTester {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+
+    // names of the tasks reported by each advance
+    private final List<String> reported = new ArrayList<>();
+
+    @Test
+    public void testTasksFireWhenDue() {
+        // the GUI dates its root when the list was first made
+        TaskNode head = new TaskNode("head", NOW.minusYears(1));
+        TaskNode errands = new TaskNode("errands", NOW.plusDays(3));
+        head.addChild(errands);
+        errands.addChild(new TaskNode("shop", NOW.plusHours(2)));
+        head.addChild(new TaskNode("late", NOW.minusDays(1)));
+        DueDateNotifier notifier = new DueDateNotifier(head, NOW, this::due);
+
+        // already overdue when the notifier started
+        notifier.advance(NOW);
+        assertEquals("[[late]]", reported.toString());
+
+        head.addChild(new TaskNode("call", NOW.plusMinutes(30)));
+        TaskNode post = new TaskNode("post", NOW.plusMinutes(90));
+        errands.addChild(post);
+        notifier.advance(NOW.plusMinutes(29));
+        assertEquals(1, reported.size());
+        notifier.advance(NOW.plusMinutes(30));
+        assertEquals("[call]", reported.get(1).toString());
+
+        post.setCompleted(true);
+        notifier.advance(NOW.plusDays(3));
+        assertEquals("[[late], [call], [shop, errands]]",
+                reported.toString());
+        // far off tasks wait outside the wheel until their block comes
+        head.addChild(new TaskNode("renew", NOW.plusYears(1)));
+        notifier.advance(NOW.plusYears(2));
+        assertEquals("[renew]", reported.get(3).toString());
+        assertEquals(0, notifier.size());
+        // the root is never reported
+        for (String names : reported) {
+            assertFalse(names.contains("head"));
+        }
+    }
+
+    @Test
+    public void testChunksFireAsTheyAreMade() {
+        TaskNode head = new TaskNode("head", NOW.plusYears(1));
+        TaskNode project = new TaskNode("project", NOW.plusDays(10));
+        project.setTaskCount(3);
+        head.addChild(project);
+        DueDateNotifier notifier = new DueDateNotifier(head, NOW, this::due);
+        project.subDivide(NOW);
+
+        notifier.advance(NOW.plusDays(5));
+        assertEquals("[[project: 0]]", reported.toString());
+        project.getChild(0).setCompleted(true);
+        notifier.advance(NOW.plusDays(10));
+        // the last chunk is only made once the one before is done
+        assertEquals("[[project: 0], [project: 1, project]]",
+                reported.toString());
+        project.getChild(1).setCompleted(true);
+        notifier.advance(NOW.plusDays(10));
+        assertEquals("[project: 2]", reported.get(2));
+    }
+
+    @Test
+    public void testRecurringTaskFiresEachOccurrence() {
+        TaskNode head = new TaskNode("head", NOW.plusYears(1));
+        TaskNode standup = new TaskNode("standup", NOW.minusHours(1));
+        standup.setRecurrence(Recurrence.daily());
+        head.addChild(standup);
+        DueDateNotifier notifier = new DueDateNotifier(head, NOW, this::due);
+
+        // done before the overdue occurrence was reported
+        standup.setCompleted(true);
+        notifier.advance(NOW);
+        assertEquals(0, reported.size());
+        notifier.advance(NOW.plusHours(23));
+        assertEquals("[[standup]]", reported.toString());
+        standup.setCompleted(true);
+        notifier.advance(NOW.plusDays(1));
+        assertEquals(1, reported.size());
+        notifier.advance(NOW.plusDays(2));
+        assertEquals("[[standup], [standup]]", reported.toString());
+    }
+
+    private void due(List<TaskNode> tasks) {
+        List<String> names = new ArrayList<>();
+        for (TaskNode task : tasks) {
+            names.add(task.getCategory());
+        }
+        reported.add(names.toString());
+    }
+}
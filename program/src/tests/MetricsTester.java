@@ -0,0 +1,104 @@
+package tests;
+
+import dataStructure.Metrics;
+import dataStructure.TaskNode;
+import dataStructure.TreeStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTester {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+
+    @Before
+    public void setUp() {
+        Metrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void testNothingRecordedWhileDisabled() {
+        Metrics.setEnabled(false);
+        TaskNode head = new TaskNode("head", NOW.plusDays(10));
+        head.addChild(new TaskNode("task", NOW));
+        head.chooseTask();
+        assertEquals(0, Metrics.CHOOSE_TASK.getCount());
+        assertEquals(0, Metrics.ADD_CHILD.getCount());
+    }
+
+    @Test
+    public void testHotPathsAreTimed() {
+        Metrics.setEnabled(true);
+        List<String> recorded = new ArrayList<>();
+        Metrics.Listener listener = (timer, nanos) ->
+                recorded.add(timer.getName());
+        Metrics.addListener(listener);
+        try {
+            TaskNode head = new TaskNode("head", NOW.plusDays(10));
+            TaskNode project = new TaskNode("project", NOW.plusDays(5));
+            project.setTaskCount(10);
+            head.addChild(project);
+            head.addChild(new TaskNode("task", NOW));
+            head.subDivide(NOW);
+            head.chooseTask();
+            project.chooseTask();
+        } finally {
+            Metrics.removeListener(listener);
+        }
+
+        assertEquals(2, Metrics.ADD_CHILD.getCount());
+        assertEquals(1, Metrics.SUB_DIVIDE.getCount());
+        // scanning a subtree is timed once, not once per task visited
+        assertEquals(2, Metrics.CHOOSE_TASK.getCount());
+        assertEquals(5, recorded.size());
+        assertEquals("subDivide", recorded.get(2));
+    }
+
+    @Test
+    public void testPercentiles() {
+        Metrics.Timer timer = Metrics.timer("test");
+        assertTrue(timer == Metrics.timer("test"));
+        for (int i = 1; i <= 100; i++) {
+            timer.record(i * 1000);
+        }
+        assertEquals(100, timer.getCount());
+        assertEquals(100000, timer.getMaxNanos());
+        assertEquals(50500, timer.getMeanNanos(), 0.001);
+        // buckets are powers of two, so a percentile is within twice the
+        // true value
+        long median = timer.percentile(0.5);
+        assertTrue(median >= 50000 && median < 100000);
+        assertEquals(100000, timer.percentile(1));
+    }
+
+    @Test
+    public void testTreeGauges() {
+        TaskNode head = new TaskNode("head", NOW.plusDays(10));
+        TaskNode project = new TaskNode("project", NOW.plusDays(5));
+        head.addChild(project);
+        project.addChild(new TaskNode("outline", NOW));
+        head.addChild(new TaskNode("done", NOW));
+        head.getChild(1).setCompleted(true);
+        Metrics.gauge("test.size", () -> TreeStats.of(head).getSize());
+
+        TreeStats stats = TreeStats.of(head);
+        assertEquals(4, stats.getSize());
+        assertEquals(3, stats.getPending());
+        assertEquals(2, stats.getDepth());
+        assertEquals(Long.valueOf(4), Metrics.gauges().get("test.size"));
+        assertTrue(Metrics.report().contains("test.size"));
+    }
+}
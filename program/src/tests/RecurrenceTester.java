@@ -0,0 +1,134 @@
+package tests;
+
+import dataStructure.ConcurrentTaskTree;
+import dataStructure.Recurrence;
+import dataStructure.TaskJournal;
+import dataStructure.TaskNode;
+import dataStructure.TaskSnapshot;
+import dataStructure.TaskView;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecurrenceTester {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+
+    @Test
+    public void testCompletingMovesToNextOccurrence() {
+        TaskNode head = new TaskNode("head", NOW.plusYears(1));
+        TaskNode review = new TaskNode("review", NOW.plusDays(1));
+        review.setRecurrence(Recurrence.weekly().times(3));
+        head.addChild(review);
+        head.addChild(new TaskNode("report", NOW.plusDays(10)));
+        assertEquals(Arrays.asList(NOW.plusDays(8), NOW.plusDays(15)),
+                review.occurrences(5));
+
+        review.setCompleted(true);
+        assertFalse(review.isCompleted());
+        assertEquals(NOW.plusDays(8), review.getDueDate());
+        assertEquals(review, head.chooseTask());
+        assertEquals(NOW.plusDays(8), head.getEarliestDueDate());
+
+        // finishing the steps of an occurrence finishes the occurrence
+        review.addChild(new TaskNode("notes", NOW.plusDays(7)));
+        review.getChild(0).setCompleted(true);
+        assertEquals(NOW.plusDays(15), review.getDueDate());
+        assertEquals(null, review.getChild(0));
+        assertEquals("report", head.chooseTask().getCategory());
+        assertEquals("[report, review]", head.agendaStream().limit(5)
+                .collect(Collectors.toList()).toString());
+
+        // the last occurrence completes for good
+        review.setCompleted(true);
+        assertTrue(review.isCompleted());
+        assertEquals(NOW.plusDays(15), review.getDueDate());
+        assertEquals(0, review.occurrences(5).size());
+    }
+
+    @Test
+    public void testSeriesEndsOnItsLastDate() {
+        TaskNode head = new TaskNode("head", NOW.plusYears(1));
+        TaskNode standup = new TaskNode("standup", NOW);
+        standup.setRecurrence(Recurrence.daily().until(NOW.plusDays(2)));
+        head.addChild(standup);
+        head.addChild(new TaskNode("report", NOW.plusDays(10)));
+        assertEquals(Arrays.asList(NOW.plusDays(1), NOW.plusDays(2)),
+                standup.occurrences(10));
+
+        TaskNode.completeAll(Arrays.asList(standup, standup));
+        assertEquals(NOW.plusDays(1), standup.getDueDate());
+        standup.setCompleted(true);
+        standup.setCompleted(true);
+        assertTrue(standup.isCompleted());
+        assertEquals("report", head.chooseTask().getCategory());
+    }
+
+    @Test
+    public void testSavedWithTheTree() throws IOException {
+        File dir = Files.createTempDirectory("recurrence").toFile();
+        File snapshot = new File(dir, "taskTree.txt");
+        File journalFile = new File(dir, "taskTree.journal");
+        Recurrence rule = Recurrence.everyDays(3).times(4)
+                .until(NOW.plusMonths(1));
+
+        TaskJournal journal = new TaskJournal(snapshot, journalFile);
+        TaskNode head = journal.load(new TaskNode("head", NOW.plusYears(1)));
+        TaskNode water = new TaskNode("water plants", NOW.plusDays(1));
+        water.setRecurrence(rule);
+        journal.logAdd(head, water);
+        head.addChild(water);
+        journal.logCompleted(water, true);
+        water.setCompleted(true);
+        journal.close();
+
+        // replayed from the journal
+        journal = new TaskJournal(snapshot, journalFile);
+        TaskNode restored = journal.load(new TaskNode("other", NOW));
+        TaskNode copy = restored.getChild(0);
+        assertEquals(NOW.plusDays(4), copy.getDueDate());
+        assertEquals(water.getRecurrence(), copy.getRecurrence());
+        assertEquals(water.occurrences(5), copy.occurrences(5));
+
+        // and read back from a snapshot
+        journal.checkpoint();
+        journal.close();
+        copy = TaskSnapshot.read(snapshot).getTree().getChild(0);
+        assertEquals(NOW.plusDays(4), copy.getDueDate());
+        assertEquals(water.getRecurrence(), copy.getRecurrence());
+    }
+
+    @Test
+    public void testUndoGoesBackAnOccurrence() throws IOException {
+        TaskNode head = new TaskNode("head", NOW.plusYears(1));
+        ConcurrentTaskTree tree = new ConcurrentTaskTree(head);
+        TaskView review = tree.addChild(tree.snapshot(),
+                new TaskNode("review", NOW.plusDays(1)));
+        tree.addChild(tree.snapshot(), new TaskNode("report", NOW.plusDays(5)));
+        tree.setRecurrence(review, Recurrence.weekly());
+        assertEquals(Recurrence.weekly(),
+                tree.snapshot().getChild(0).getRecurrence());
+
+        tree.setCompleted(tree.snapshot().getChild(0), true);
+        assertEquals(NOW.plusDays(8), tree.snapshot().getChild(0).getDueDate());
+        assertEquals("report", tree.chooseTask().getCategory());
+        assertEquals("report", head.chooseTask().getCategory());
+
+        assertTrue(tree.undo());
+        assertEquals(NOW.plusDays(1), tree.snapshot().getChild(0).getDueDate());
+        assertEquals("review", tree.chooseTask().getCategory());
+        assertEquals("review", head.chooseTask().getCategory());
+        assertEquals(1, head.dueBetween(NOW, NOW.plusDays(2)).size());
+        assertEquals(0, head.dueBetween(NOW.plusDays(7), NOW.plusDays(9))
+                .size());
+    }
+}
@@ -0,0 +1,111 @@
+package tests;
+
+import dataStructure.ConcurrentTaskTree;
+import dataStructure.TaskForest;
+import dataStructure.TaskNode;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaskForestTester {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+
+    @Test
+    public void testChoosesAcrossShards() throws IOException {
+        TaskForest forest = new TaskForest();
+        ConcurrentTaskTree alice = forest.addShard("alice",
+                new TaskNode("alice", NOW.plusDays(100)));
+        ConcurrentTaskTree bob = forest.addShard("bob",
+                new TaskNode("bob", NOW.plusDays(100)));
+        alice.addChild(alice.snapshot(),
+                new TaskNode("report", NOW.plusDays(3)));
+        bob.addChild(bob.snapshot(), new TaskNode("review", NOW.plusDays(2)));
+        bob.addChild(bob.snapshot(), new TaskNode("deploy", NOW.plusDays(3)));
+
+        assertEquals("bob: review", forest.chooseTask().toString());
+        bob.setCompleted(bob.snapshot().getChild(0), true);
+        // a tie goes to the shard added first
+        assertEquals("alice: report", forest.chooseTask().toString());
+        alice.setCompleted(alice.snapshot().getChild(0), true);
+        assertEquals("bob: deploy", forest.chooseTask().toString());
+        assertEquals(Arrays.asList("alice", "bob"),
+                new ArrayList<>(forest.getShardNames()));
+    }
+
+    @Test
+    public void testShardsChangeInParallel() throws Exception {
+        TaskForest forest = new TaskForest();
+        int shards = 4;
+        for (int i = 0; i < shards; i++) {
+            forest.addShard("team" + i, new TaskNode("team" + i,
+                    NOW.plusDays(100)));
+        }
+        ExecutorService writers = Executors.newFixedThreadPool(shards);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            ConcurrentTaskTree tree = forest.shard("team" + i);
+            int shard = i;
+            writes.add(writers.submit(() -> {
+                for (int j = 0; j < 500; j++) {
+                    // every shard's earliest task is due a minute apart
+                    tree.addChild(tree.snapshot(), new TaskNode("t" + j,
+                            NOW.plusMinutes(shards * (500 - j) + shard)));
+                    forest.chooseTask();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        writers.shutdown();
+
+        for (int i = 0; i < shards; i++) {
+            assertEquals(500, forest.shard("team" + i).snapshot()
+                    .getChildCount());
+        }
+        TaskForest.Choice next = forest.chooseTask();
+        assertEquals("team0", next.getShard());
+        assertEquals("t499", next.getTask().getCategory());
+    }
+
+    @Test
+    public void testShardsArePersisted() throws IOException {
+        File dir = Files.createTempDirectory("forest").toFile();
+        TaskForest forest = TaskForest.open(dir);
+        ConcurrentTaskTree alice = forest.addShard("alice");
+        ConcurrentTaskTree bob = forest.addShard("bob");
+        alice.addChild(alice.snapshot(), new TaskNode("report", NOW));
+        bob.addChild(bob.snapshot(), new TaskNode("review", NOW.plusDays(1)));
+        bob.addChild(bob.snapshot(), new TaskNode("deploy", NOW.plusDays(2)));
+        assertTrue(new File(dir, "alice.journal").length() > 0);
+        forest.close();
+
+        TaskForest reopened = TaskForest.open(dir);
+        assertEquals(Arrays.asList("alice", "bob"),
+                new ArrayList<>(reopened.getShardNames()));
+        assertEquals(1, reopened.shard("alice").snapshot().getChildCount());
+        assertEquals("deploy", reopened.shard("bob").snapshot().getChild(1)
+                .getCategory());
+        assertEquals("alice: report", reopened.chooseTask().toString());
+        reopened.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNamesMustSuitFiles() throws IOException {
+        new TaskForest().addShard("../elsewhere");
+    }
+}
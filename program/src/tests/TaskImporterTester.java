@@ -0,0 +1,117 @@
+package tests;
+
+import dataStructure.TaskImporter;
+import dataStructure.TaskJournal;
+import dataStructure.TaskNode;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskImporterTester {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+
+    @Test
+    public void testReadCsv() throws IOException {
+        List<TaskNode> tasks = TaskImporter.read(reader(
+                "id,parent,category,due,count",
+                "1,,\"Reading, part 1\",2018-05-20T09:00,",
+                "2,1,\"Chapter \"\"one\"\"\",2018-05-10,30",
+                "",
+                "3,,Essay,2018-06-01T17:30,"), false);
+
+        assertEquals(2, tasks.size());
+        TaskNode reading = tasks.get(0);
+        assertEquals("Reading, part 1", reading.getCategory());
+        assertEquals("Chapter \"one\"", reading.getChild(0).getCategory());
+        assertEquals(30, reading.getChild(0).getTaskCount());
+        assertEquals(LocalDateTime.of(2018, 5, 10, 23, 59),
+                reading.getEarliestDueDate());
+        assertEquals("Essay", tasks.get(1).getCategory());
+    }
+
+    @Test
+    public void testReadJsonLines() throws IOException {
+        List<TaskNode> tasks = TaskImporter.read(reader(
+                "{\"id\": \"a\", \"category\": \"Project\","
+                + " \"due\": \"2018-05-30T12:00\"}",
+                "{\"parent\": \"a\", \"category\": \"Draft\\n\\u0031\","
+                + " \"due\": \"2018-05-15T12:00\", \"count\": 12,"
+                + " \"start\": 2, \"done\": null}"), true);
+
+        assertEquals(1, tasks.size());
+        TaskNode draft = tasks.get(0).getChild(0);
+        assertEquals("Draft\n1", draft.getCategory());
+        assertEquals(12, draft.getTaskCount());
+        assertEquals(draft.getDueDate(), tasks.get(0).getEarliestDueDate());
+    }
+
+    @Test
+    public void testBadLinesAreReported() {
+        String[][] inputs = {
+                {"category,due", "Essay,tomorrow"},
+                {"category,due,parent", "Essay,2018-05-01,missing"},
+                {"id,category,due", "1,Essay,2018-05-01", "1,Other,2018-05-01"}
+        };
+        for (String[] lines : inputs) {
+            try {
+                TaskImporter.read(reader(lines), false);
+                fail("imported " + lines[1]);
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().startsWith("line "));
+            }
+        }
+    }
+
+    @Test
+    public void testImportIsJournaled() throws IOException {
+        File dir = Files.createTempDirectory("import").toFile();
+        File snapshot = new File(dir, "taskTree.txt");
+        File journalFile = new File(dir, "taskTree.journal");
+        StringBuilder csv = new StringBuilder("id,parent,category,due,count");
+        for (int i = 0; i < 2000; i++) {
+            csv.append('\n').append(i).append(',')
+                    .append(i < 10 ? "" : String.valueOf(i % 10)).append(",task ")
+                    .append(i).append(',').append(NOW.plusHours(i)).append(',')
+                    .append(i % 7);
+        }
+
+        TaskJournal journal = new TaskJournal(snapshot, journalFile);
+        TaskNode head = journal.load(new TaskNode("Task List", NOW));
+        List<TaskNode> tasks = TaskImporter.read(new BufferedReader(
+                new StringReader(csv.toString())), false);
+        journal.logAddAll(head, tasks);
+        head.addChildren(tasks);
+        assertEquals("task 10", head.chooseTask().getCategory());
+        journal.close();
+
+        TaskJournal reopened = new TaskJournal(snapshot, journalFile);
+        TaskNode restored = reopened.load(new TaskNode("other", NOW));
+        assertEquals(10, countChildren(restored));
+        assertEquals(199, countChildren(restored.getChild(3)));
+        assertEquals("task 10", restored.chooseTask().getCategory());
+        reopened.close();
+    }
+
+    private static int countChildren(TaskNode node) {
+        int count = 0;
+        while (node.getChild(count) != null) {
+            count++;
+        }
+        return count;
+    }
+
+    private static BufferedReader reader(String... lines) {
+        return new BufferedReader(new StringReader(String.join("\n", lines)));
+    }
+}
@@ -0,0 +1,164 @@
+package tests;
+
+import dataStructure.TaskJournal;
+import dataStructure.TaskNode;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaskJournalTester {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+
+    private File snapshot;
+    private File journalFile;
+
+    @Before
+    public void setUp() throws IOException {
+        File dir = Files.createTempDirectory("journal").toFile();
+        snapshot = new File(dir, "taskTree.txt");
+        journalFile = new File(dir, "taskTree.journal");
+    }
+
+    @Test
+    public void testReplayWithoutCheckpoint() throws IOException {
+        TaskJournal journal = new TaskJournal(snapshot, journalFile);
+        TaskNode head = journal.load(new TaskNode("Task List", NOW));
+        buildTree(journal, head);
+        journal.close(); // no checkpoint, as if the program crashed
+
+        TaskJournal reopened = new TaskJournal(snapshot, journalFile);
+        TaskNode restored = reopened.load(new TaskNode("other", NOW));
+        assertSameTree(head, restored);
+        reopened.close();
+    }
+
+    @Test
+    public void testCheckpointEmptiesJournal() throws IOException {
+        TaskJournal journal = new TaskJournal(snapshot, journalFile);
+        TaskNode head = journal.load(new TaskNode("Task List", NOW));
+        buildTree(journal, head);
+        assertTrue(journalFile.length() > 0);
+        journal.checkpoint();
+        assertEquals(0, journalFile.length());
+        journal.close();
+
+        TaskJournal reopened = new TaskJournal(snapshot, journalFile);
+        assertSameTree(head, reopened.load(new TaskNode("other", NOW)));
+        reopened.close();
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws IOException {
+        TaskJournal journal = new TaskJournal(snapshot, journalFile);
+        TaskNode head = journal.load(new TaskNode("Task List", NOW));
+        TaskNode first = new TaskNode("first", NOW.plusDays(1));
+        journal.logAdd(head, first);
+        head.addChild(first);
+        long intact = journalFile.length();
+        journal.logAdd(head, new TaskNode("second", NOW.plusDays(2)));
+        journal.close();
+
+        // cut the last record in half
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(intact + 5);
+        }
+
+        TaskJournal reopened = new TaskJournal(snapshot, journalFile);
+        TaskNode restored = reopened.load(new TaskNode("other", NOW));
+        assertEquals("first", restored.getChild(0).getCategory());
+        assertEquals(null, restored.getChild(1));
+        assertEquals(intact, journalFile.length());
+        reopened.close();
+    }
+
+    @Test
+    public void testCompletedAllReplays() throws IOException {
+        TaskJournal journal = new TaskJournal(snapshot, journalFile);
+        TaskNode head = journal.load(new TaskNode("Task List", NOW));
+        buildTree(journal, head);
+        TaskNode project = head.getChild(0);
+        TaskNode last = new TaskNode("last", NOW.plusDays(30));
+        journal.logAdd(head, last);
+        head.addChild(last);
+
+        // a task listed after its parent and a task listed twice are only
+        // recorded once, as part of the parent
+        List<TaskNode> batch = Arrays.asList(project.getChild(1), project,
+                project.getChild(1).getChild(0), last, last);
+        journal.logCompletedAll(batch);
+        TaskNode.completeAll(batch);
+        journal.close();
+
+        TaskJournal reopened = new TaskJournal(snapshot, journalFile);
+        TaskNode restored = reopened.load(new TaskNode("other", NOW));
+        assertSameTree(head, restored);
+        assertTrue(restored.isCompleted());
+        reopened.close();
+    }
+
+    @Test
+    public void testChildrenAddedAfterPlanReplay() throws IOException {
+        TaskJournal journal = new TaskJournal(snapshot, journalFile);
+        TaskNode head = journal.load(new TaskNode("Task List", NOW));
+        buildTree(journal, head);
+        TaskNode reading = head.getChild(0).getChild(1);
+        TaskNode notes = new TaskNode("notes", NOW.plusDays(4));
+        journal.logAdd(reading, notes);
+        reading.addChild(notes);
+        journal.logCompleted(notes, true);
+        notes.setCompleted(true);
+        journal.close();
+
+        TaskJournal reopened = new TaskJournal(snapshot, journalFile);
+        TaskNode restored = reopened.load(new TaskNode("other", NOW));
+        // the notes keep the index after the seven planned chunks
+        assertTrue(restored.getChild(0).getChild(1).getChild(7)
+                .isCompleted());
+        assertSameTree(head, restored);
+        reopened.close();
+    }
+
+    private static void buildTree(TaskJournal journal, TaskNode head)
+            throws IOException {
+        TaskNode project = new TaskNode("project", NOW.plusDays(20));
+        project.addChild(new TaskNode("outline", NOW.plusDays(3)));
+        TaskNode reading = new TaskNode("reading", NOW.plusDays(10));
+        reading.setTaskCount(40);
+
+        journal.logAdd(head, project);
+        head.addChild(project);
+        journal.logAdd(project, reading);
+        project.addChild(reading);
+
+        LocalDateTime start = NOW.plusSeconds(90);
+        journal.logSubDivide(project, start);
+        project.subDivide(start);
+
+        TaskNode next = head.chooseTask();
+        journal.logCompleted(next, true);
+        next.setCompleted(true);
+    }
+
+    private static void assertSameTree(TaskNode expected, TaskNode actual) {
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getDueDate(), actual.getDueDate());
+        assertEquals(expected.isCompleted(), actual.isCompleted());
+        int i = 0;
+        while (expected.getChild(i) != null) {
+            assertSameTree(expected.getChild(i), actual.getChild(i));
+            i++;
+        }
+        assertEquals(null, actual.getChild(i));
+    }
+}
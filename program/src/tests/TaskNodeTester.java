@@ -1,9 +1,16 @@
 package tests;
 
 import dataStructure.TaskNode;
+import dataStructure.TaskTreeListener;
 import org.junit.Test;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -25,6 +32,47 @@ public class TaskNodeTester {
         node.printTree(0);
     }
 
+    @Test
+    public void testCompareTo() {
+        TaskNode early = new TaskNode("early", 2018, 12, 31, 23, 59);
+        TaskNode late = new TaskNode("late", 2019, 1, 1, 0, 0);
+        TaskNode same = new TaskNode("same", 2019, 1, 1, 0, 0);
+        assertTrue(early.compareTo(late) < 0);
+        assertTrue(late.compareTo(early) > 0);
+        assertEquals(0, late.compareTo(same));
+        assertEquals(LocalDateTime.of(2019, 1, 1, 0, 0), late.getDueDate());
+        assertEquals("2018 DECEMBER 31, 11:59 pm", early.getDueDateString());
+    }
+
+    @Test
+    public void testEarliestDueDatePropagates() {
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode head = new TaskNode("head", now.plusDays(30));
+        TaskNode project = new TaskNode("project", now.plusDays(20));
+        TaskNode part = new TaskNode("part", now.plusDays(10));
+        head.addChild(project);
+        project.addChild(part);
+        assertEquals(now.plusDays(10), head.getEarliestDueDate());
+
+        // a grandchild reaches every ancestor
+        TaskNode early = new TaskNode("early", now.plusDays(2));
+        part.addChild(early);
+        assertEquals(now.plusDays(2), head.getEarliestDueDate());
+        assertEquals(now.plusDays(2), project.getEarliestDueDate());
+
+        // completing it falls back to the next pending date
+        TaskNode later = new TaskNode("later", now.plusDays(5));
+        part.addChild(later);
+        early.setCompleted(true);
+        assertEquals(now.plusDays(5), head.getEarliestDueDate());
+
+        // once nothing below is pending a task only has its own date
+        later.setCompleted(true);
+        assertTrue(part.isCompleted());
+        assertTrue(project.isCompleted());
+        assertEquals(now.plusDays(30), head.getEarliestDueDate());
+    }
+
     @Test
     public void testSubDivide() {
         LocalDateTime dueDate = LocalDateTime.now().plusDays(30);
@@ -103,4 +151,485 @@ public class TaskNodeTester {
         assertEquals(t.getCategory(), "test03");
     }
 
+    @Test
+    public void testSchedulerMatchesRescan() {
+        Random random = new Random(42);
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode head = new TaskNode("head", now);
+        TaskNode top = new TaskNode("top", now.plusDays(60));
+        head.addChild(top);
+
+        for (int i = 0; i < 20; i++) {
+            TaskNode project = new TaskNode("project" + i,
+                    now.plusDays(5 + random.nextInt(40)));
+            top.addChild(project);
+            for (int j = 0; j < random.nextInt(4); j++) {
+                TaskNode part = new TaskNode("part" + i + "." + j,
+                        now.plusDays(1 + random.nextInt(40)));
+                part.setTaskCount(random.nextInt(3) * 10);
+                project.addChild(part);
+            }
+        }
+        top.subDivide(now);
+
+        // the root answers from its heap, top rescans its subtree
+        int count = 0;
+        while (!top.isCompleted()) {
+            TaskNode next = head.chooseTask();
+            assertTrue(next == top.chooseTask());
+            next.setCompleted(true);
+            count++;
+        }
+        assertTrue(count > 20);
+        assertTrue(head.isCompleted());
+        assertTrue(head.chooseTask() == null);
+    }
+
+    @Test
+    public void testTreeListener() {
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode head = new TaskNode("head", now);
+        TaskNode project = new TaskNode("project", now.plusDays(10));
+        project.setTaskCount(4);
+        head.addChild(project);
+
+        List<String> events = new ArrayList<>();
+        head.addTreeListener(new TaskTreeListener() {
+            @Override
+            public void taskAdded(TaskNode parent, TaskNode child) {
+                events.add("added " + parent + " " + child);
+            }
+
+            @Override
+            public void childrenRemoved(TaskNode parent) {
+                events.add("removed " + parent);
+            }
+
+            @Override
+            public void taskChanged(TaskNode task) {
+                events.add("changed " + task);
+            }
+        });
+
+        TaskNode extra = new TaskNode("extra", now.plusDays(2));
+        head.addChild(extra);
+        project.subDivide(now.plusDays(8));
+        extra.setCompleted(true);
+        assertEquals(Arrays.asList("added head extra",
+                "added project project: 0 - 1",
+                "changed extra"), events);
+
+        // later chunks are reported when they are made
+        events.clear();
+        assertEquals("project: 2 - 3", project.getChild(1).getCategory());
+        assertEquals(Arrays.asList("added project project: 2 - 3"), events);
+
+        events.clear();
+        project.subDivide(now.plusDays(9));
+        assertEquals(Arrays.asList("removed project",
+                "added project project: 0 - 3"), events);
+    }
+
+    @Test
+    public void testBatchReportedOnce() {
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode head = new TaskNode("head", now.plusDays(100));
+        List<String> events = new ArrayList<>();
+        head.addTreeListener(new TaskTreeListener() {
+            @Override
+            public void taskAdded(TaskNode parent, TaskNode child) {
+                events.add("added " + parent + " " + child);
+            }
+
+            @Override
+            public void childrenAdded(TaskNode parent,
+                                      List<TaskNode> children) {
+                events.add("added " + parent + " " + children);
+            }
+
+            @Override
+            public void childrenRemoved(TaskNode parent) {
+                events.add("removed " + parent);
+            }
+
+            @Override
+            public void taskChanged(TaskNode task) {
+                events.add("changed " + task);
+            }
+        });
+
+        List<TaskNode> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(new TaskNode("t" + i, now.plusDays(i + 1)));
+        }
+        head.addChildren(batch);
+        assertEquals(Arrays.asList("added head [t0, t1, t2]"), events);
+    }
+
+    @Test
+    public void testChunksMadeOnDemand() {
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode head = new TaskNode("head", now.plusDays(1000));
+        TaskNode project = new TaskNode("project", now.plusDays(100));
+        project.setTaskCount(100000);
+        head.addChild(project);
+        assertEquals(now.plusDays(99), project.subDivide(now));
+
+        // only the first chunk exists, the rest are made as they are needed
+        assertEquals(1, project.listMadeChildren().size());
+        assertEquals(now.plusDays(99), project.getPlannedUntil());
+        TaskNode first = head.chooseTask();
+        assertEquals("project: 0 - 999", first.getCategory());
+        assertEquals(now, first.getDueDate());
+        first.setCompleted(true);
+        TaskNode second = head.chooseTask();
+        assertEquals("project: 1000 - 1999", second.getCategory());
+        assertEquals(now.plusDays(1), second.getDueDate());
+
+        // a chunk given work of its own no longer stands for the rest
+        second.addChild(new TaskNode("review", now.plusDays(50)));
+        assertEquals("project: 2000 - 2999",
+                head.chooseTask().getCategory());
+
+        assertEquals("project: 99000 - 99999",
+                project.getChild(99).getCategory());
+        assertEquals(null, project.getChild(100));
+        assertEquals(now.plusDays(99), project.getChild(99).getDueDate());
+        assertEquals(100, project.listMadeChildren().size());
+        assertEquals(null, project.getPlannedUntil());
+    }
+
+    @Test
+    public void testChildrenAddedAfterPlan() {
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode lazy = planThenAdd(now, false);
+        TaskNode project = lazy.getChild(0);
+
+        // the review goes after the chunks of the plan, none of them made
+        assertEquals(2, project.listMadeChildren().size());
+        assertEquals("review", project.getChild(100).getCategory());
+        assertEquals(null, project.getChild(101));
+        assertEquals(2, project.listMadeChildren().size());
+
+        // the same tree with every chunk made before the review was added
+        List<String> upcoming = lazy.agendaStream()
+                .map(TaskNodeTester::describe).collect(Collectors.toList());
+        TaskNode eager = planThenAdd(now, true);
+        List<String> chosen = new ArrayList<>();
+        for (TaskNode t = eager.chooseTask(); t != null;
+             t = eager.chooseTask()) {
+            chosen.add(describe(t));
+            t.setCompleted(true);
+            TaskNode l = lazy.chooseTask();
+            assertEquals(describe(t), describe(l));
+            l.setCompleted(true);
+        }
+        assertEquals(chosen, upcoming);
+    }
+
+    private static TaskNode planThenAdd(LocalDateTime now, boolean makeAll) {
+        TaskNode head = new TaskNode("head", now.plusDays(1000));
+        TaskNode project = new TaskNode("project", now.plusDays(100));
+        project.setTaskCount(100000);
+        head.addChild(project);
+        project.subDivide(now);
+        if (makeAll) {
+            project.getChild(99);
+        }
+        project.addChild(new TaskNode("review", now.plusDays(2)));
+        return head;
+    }
+
+    @Test
+    public void testParallelSubDivideMatchesSequential() {
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode parallel = semester(now);
+        TaskNode sequential = semester(now);
+
+        // enough courses that the re-plans are spread over the pool
+        LocalDateTime end = parallel.subDivide(now);
+        assertEquals(subDivideEach(sequential, now), end);
+        assertEquals(sequential.getEarliestDueDate(),
+                parallel.getEarliestDueDate());
+        TaskNode expected = sequential.chooseTask();
+        while (expected != null) {
+            TaskNode actual = parallel.chooseTask();
+            assertEquals(expected.getCategory(), actual.getCategory());
+            assertEquals(expected.getDueDate(), actual.getDueDate());
+            expected.setCompleted(true);
+            actual.setCompleted(true);
+            expected = sequential.chooseTask();
+        }
+        assertEquals(null, parallel.chooseTask());
+    }
+
+    @Test
+    public void testChunksMatchDayByDayPlan() {
+        LocalDateTime now = LocalDateTime.of(2020, 1, 1, 0, 0);
+        for (int start : new int[]{0, 3, 17}) {
+            for (int count = 1; count <= 80; count++) {
+                for (int days = 1; days <= 50; days++) {
+                    TaskNode task = new TaskNode("read", now.plusDays(days));
+                    task.setTaskCount(count);
+                    task.setStartingIndex(start);
+                    LocalDateTime end = task.subDivide(now);
+
+                    List<String> expected = new ArrayList<>();
+                    LocalDateTime last = dayByDay(count, start, days, now,
+                            expected);
+                    // without chunks the task is its own agenda
+                    List<String> chunks = new ArrayList<>();
+                    task.agenda().forEachRemaining(chunk -> {
+                        if (chunk != task) {
+                            chunks.add(chunk.getCategory() + " "
+                                       + chunk.getDueDate());
+                        }
+                    });
+                    String where = count + " tasks from " + start + " over "
+                                   + days + " days";
+                    assertEquals(where, expected, chunks);
+                    assertEquals(where, last, end);
+                }
+            }
+        }
+    }
+
+    // the chunks the original subDivide made, adding up the tasks of each
+    // day one after another, and the due date it returned
+    private static LocalDateTime dayByDay(int taskCount, int startingIndex,
+                                          int numOfDays, LocalDateTime start,
+                                          List<String> chunks) {
+        double tasksPerDay = ((double) taskCount) / numOfDays;
+        int dayCount = 0;
+        LocalDateTime newTime = start.plusDays(numOfDays);
+        for (double i = startingIndex; i < taskCount; i += tasksPerDay) {
+            double end = i + tasksPerDay;
+            if ((int) end - (int) i == 0) {
+                dayCount++;
+                continue;
+            }
+            end = Math.min(end - 1, taskCount - 1);
+            newTime = start.plusDays(dayCount);
+            chunks.add("read: " + (int) i
+                       + ((int) end == (int) i ? "" : " - " + (int) end)
+                       + " " + newTime);
+            dayCount++;
+        }
+        return newTime;
+    }
+
+    @Test
+    public void testOneTaskOverSixDaysIsDueOnTheLast() {
+        LocalDateTime now = LocalDateTime.of(2020, 1, 1, 0, 0);
+        TaskNode task = new TaskNode("read", now.plusDays(6));
+        task.setTaskCount(1);
+        // a sixth added up six times falls just short of one task
+        assertEquals(now.plusDays(6), task.subDivide(now));
+        assertEquals(now.plusDays(6), task.chooseTask().getDueDate());
+    }
+
+    // many courses of a few readings each, some already done
+    private static TaskNode semester(LocalDateTime now) {
+        Random random = new Random(3);
+        TaskNode head = new TaskNode("semester", now.plusDays(120));
+        for (int i = 0; i < 300; i++) {
+            TaskNode course = new TaskNode("course " + i,
+                    now.plusDays(60 + random.nextInt(60)));
+            for (int j = 0; j < 5; j++) {
+                TaskNode reading = new TaskNode("reading " + i + "." + j,
+                        now.plusDays(random.nextInt(100)));
+                reading.setTaskCount(random.nextInt(40));
+                course.addChild(reading);
+            }
+            head.addChild(course);
+            if (i % 7 == 0) {
+                course.getChild(2).setCompleted(true);
+            }
+        }
+        return head;
+    }
+
+    // sub-divide the tasks below a parent one at a time
+    private static LocalDateTime subDivideEach(TaskNode parent,
+                                               LocalDateTime start) {
+        for (int i = 0; parent.getChild(i) != null; i++) {
+            TaskNode child = parent.getChild(i);
+            if (child.isCompleted()) {
+                continue;
+            }
+            start = child.getTaskCount() > 0 || !child.hasChildren()
+                    ? child.subDivide(start)
+                    : subDivideEach(child, start);
+        }
+        return start;
+    }
+
+    @Test
+    public void testAgendaMatchesChooseTask() {
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode head = agendaTree(now);
+        List<String> upcoming = new ArrayList<>();
+        Iterator<TaskNode> agenda = head.agenda();
+        while (agenda.hasNext()) {
+            upcoming.add(describe(agenda.next()));
+        }
+
+        // the same tree completed one task at a time
+        TaskNode completed = agendaTree(now);
+        List<String> chosen = new ArrayList<>();
+        for (TaskNode t = completed.chooseTask(); t != null;
+             t = completed.chooseTask()) {
+            chosen.add(describe(t));
+            t.setCompleted(true);
+        }
+        assertEquals(chosen, upcoming);
+        // four tasks and the five chunks of the reading, four not made yet
+        assertEquals(9, upcoming.size());
+
+        // reading the agenda changed nothing
+        assertEquals(chosen.get(0), describe(head.chooseTask()));
+        assertEquals(chosen.subList(0, 3), head.agendaStream().limit(3)
+                .map(TaskNodeTester::describe).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testDueBetween() {
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode head = agendaTree(now);
+        TaskNode reading = head.getChild(0);
+        TaskNode project = head.getChild(2);
+        assertEquals(Arrays.asList("reading: 0 - 1", "essay", "quiz"),
+                categories(head.dueBetween(now, now.plusDays(3))));
+
+        // the index follows completion, new tasks and newly made chunks
+        head.getChild(1).setCompleted(true);
+        project.addChild(new TaskNode("slides", now.plusDays(2)));
+        reading.getChild(0).setCompleted(true);
+        assertEquals(Arrays.asList("reading: 2 - 3", "quiz", "slides"),
+                categories(head.dueBetween(now, now.plusDays(3))));
+        assertEquals(Arrays.asList("slides", "outline", "draft"),
+                categories(project.dueBetween(now, now.plusDays(7))));
+
+        // the due date given as the end is left out
+        assertEquals(Arrays.asList("reading: 2 - 3", "quiz", "slides"),
+                categories(head.overdue(now.plusDays(3))));
+        project.setCompleted(true);
+        assertEquals(Arrays.asList("reading: 2 - 3", "quiz", "reading"),
+                categories(head.overdue(now.plusDays(30))));
+    }
+
+    @Test
+    public void testSearch() {
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode head = agendaTree(now);
+        TaskNode reading = head.getChild(0);
+        TaskNode project = head.getChild(2);
+        head.addChild(new TaskNode("Reading notes", now.plusDays(4)));
+        assertEquals(Arrays.asList("Reading notes", "reading",
+                "reading: 0 - 1"), sorted(head.search("READ", 10)));
+        assertEquals(Arrays.asList("reading: 0 - 1"),
+                sorted(head.search("ing: 0 -", 10)));
+        assertEquals(1, head.search("read", 1).size());
+        assertTrue(head.search("readings", 10).isEmpty());
+
+        // the index follows new tasks, chunks made and tasks dropped
+        project.addChild(new TaskNode("slides", now.plusDays(2)));
+        reading.getChild(0).setCompleted(true);
+        assertEquals(Arrays.asList("Reading notes", "reading",
+                "reading: 0 - 1", "reading: 2 - 3"),
+                sorted(head.search("reading", 10)));
+        assertEquals(Arrays.asList("outline", "slides"),
+                sorted(head.search("li", 10)));
+        project.setCompleted(true);
+        assertTrue(head.search("li", 10).isEmpty());
+
+        // below an inner task only its subtree is searched
+        assertEquals(Arrays.asList("reading: 2 - 3"),
+                sorted(reading.search("2 -", 10)));
+    }
+
+    private static List<String> sorted(List<TaskNode> tasks) {
+        List<String> names = categories(tasks);
+        names.sort(null);
+        return names;
+    }
+
+    private static List<String> categories(List<TaskNode> tasks) {
+        return tasks.stream().map(TaskNode::getCategory)
+                .collect(Collectors.toList());
+    }
+
+    private static TaskNode agendaTree(LocalDateTime now) {
+        TaskNode head = new TaskNode("head", now.plusDays(30));
+        TaskNode reading = new TaskNode("reading", now.plusDays(5));
+        reading.setTaskCount(12);
+        TaskNode project = new TaskNode("project", now.plusDays(10));
+        project.addChild(new TaskNode("outline", now.plusDays(3)));
+        project.addChild(new TaskNode("draft", now.plusDays(3)));
+        head.addChild(reading);
+        head.addChild(new TaskNode("essay", now.plusDays(1)));
+        head.addChild(project);
+        head.addChild(new TaskNode("quiz", now.plusDays(2)));
+        reading.subDivide(now);
+        return head;
+    }
+
+    private static String describe(TaskNode task) {
+        return task.getCategory() + " " + task.getDueDate();
+    }
+
+    @Test
+    public void testCompleteAll() {
+        LocalDateTime now = LocalDateTime.of(2018, 5, 1, 9, 0);
+        TaskNode head = new TaskNode("head", now.plusDays(100));
+        TaskNode project = new TaskNode("project", now.plusDays(20));
+        TaskNode other = new TaskNode("other", now.plusDays(15));
+        head.addChild(project);
+        head.addChild(other);
+        List<TaskNode> steps = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            TaskNode step = new TaskNode("step " + i, now.plusDays(i + 1));
+            project.addChild(step);
+            steps.add(step);
+        }
+
+        List<String> events = new ArrayList<>();
+        head.addTreeListener(new TaskTreeListener() {
+            @Override
+            public void taskAdded(TaskNode parent, TaskNode child) {
+                events.add("added " + parent + " " + child);
+            }
+
+            @Override
+            public void childrenRemoved(TaskNode parent) {
+                events.add("removed " + parent);
+            }
+
+            @Override
+            public void taskChanged(TaskNode task) {
+                events.add("changed " + task);
+            }
+        });
+
+        TaskNode.completeAll(Arrays.asList(steps.get(2), steps.get(0),
+                steps.get(1)));
+        assertEquals(Arrays.asList("changed step 2", "changed step 0",
+                "changed step 1"), events);
+        assertEquals(now.plusDays(4), head.getEarliestDueDate());
+        assertEquals("step 3", head.chooseTask().getCategory());
+
+        // finishing the last step finishes the project as well
+        events.clear();
+        TaskNode.completeAll(Arrays.asList(steps.get(3), steps.get(3)));
+        assertEquals(Arrays.asList("removed project", "changed project"),
+                events);
+        assertTrue(project.isCompleted());
+        assertEquals(null, project.getChild(0));
+        assertEquals(now.plusDays(15), head.getEarliestDueDate());
+        assertEquals("other", head.chooseTask().getCategory());
+
+        TaskNode.completeAll(Arrays.asList(other, project));
+        assertTrue(head.isCompleted());
+        assertTrue(head.chooseTask() == null);
+    }
 }
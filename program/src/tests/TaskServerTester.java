@@ -0,0 +1,167 @@
+package tests;
+
+import dataStructure.ConcurrentTaskTree;
+import dataStructure.TaskNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import server.TaskServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaskServerTester {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+
+    private ConcurrentTaskTree tree;
+    private TaskServer server;
+
+    // status and body of the last request
+    private int status;
+    private String body;
+
+    @Before
+    public void setUp() throws IOException {
+        tree = new ConcurrentTaskTree(new TaskNode("head", NOW.plusDays(100)));
+        server = new TaskServer(tree, 0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testEndpoints() throws IOException {
+        request("GET", "/next");
+        assertEquals(200, status);
+        assertEquals("{\"path\":\"\",\"category\":\"head\","
+                     + "\"due\":\"2018-08-09T09:00\",\"completed\":false}",
+                body);
+
+        request("POST", "/add?category=project&due=2018-05-11T09:00&count=3");
+        assertEquals(201, status);
+        assertEquals("{\"path\":\"0\",\"category\":\"project\","
+                     + "\"due\":\"2018-05-11T09:00\",\"completed\":false}",
+                body);
+        request("POST", "/add?parent=&category=say+%22hi%22"
+                        + "&due=2018-05-02T09:00");
+        assertEquals("{\"path\":\"1\",\"category\":\"say \\\"hi\\\"\","
+                     + "\"due\":\"2018-05-02T09:00\",\"completed\":false}",
+                body);
+        request("POST", "/subdivide?task=0&start=2018-05-03T09:00");
+        assertEquals(200, status);
+        assertEquals("{\"task\":{\"path\":\"0\",\"category\":\"project\","
+                     + "\"due\":\"2018-05-11T09:00\",\"completed\":false},"
+                     + "\"end\":\"2018-05-10T09:00\"}", body);
+
+        request("POST", "/complete?task=1");
+        assertEquals(200, status);
+        request("GET", "/next");
+        assertEquals("{\"path\":\"0/0\",\"category\":\"project: 0\","
+                     + "\"due\":\"2018-05-05T09:00\",\"completed\":false}",
+                body);
+        request("GET", "/agenda?limit=2");
+        assertEquals("[{\"path\":\"0/0\",\"category\":\"project: 0\","
+                     + "\"due\":\"2018-05-05T09:00\",\"completed\":false},"
+                     + "{\"path\":null,\"category\":\"project: 1\","
+                     + "\"due\":\"2018-05-08T09:00\",\"completed\":false}]",
+                body);
+    }
+
+    @Test
+    public void testUndo() throws IOException {
+        request("POST", "/undo");
+        assertEquals("{\"changed\":false}", body);
+        request("POST", "/add?category=project&due=2018-05-11T09:00");
+        request("POST", "/add?category=report&due=2018-05-20T09:00");
+        request("POST", "/add?parent=0&category=draft&due=2018-05-04T09:00");
+        request("POST", "/complete?task=0");
+        assertEquals(0, tree.snapshot().getChild(0).getChildCount());
+
+        request("POST", "/undo");
+        assertEquals(200, status);
+        assertEquals("{\"changed\":true}", body);
+        request("GET", "/next");
+        assertEquals("{\"path\":\"0/0\",\"category\":\"draft\","
+                     + "\"due\":\"2018-05-04T09:00\",\"completed\":false}",
+                body);
+        request("POST", "/redo");
+        assertEquals("{\"changed\":true}", body);
+        assertTrue(tree.snapshot().getChild(0).isCompleted());
+        request("GET", "/undo");
+        assertEquals(405, status);
+    }
+
+    @Test
+    public void testCompletionThatPrunesTheParent() throws IOException {
+        request("POST", "/add?category=proj&due=2018-05-11T09:00");
+        request("POST", "/add?parent=0&category=part&due=2018-05-04T09:00");
+
+        // proj runs out of work and is pruned, taking part with it
+        request("POST", "/complete?task=0/0");
+        assertEquals(200, status);
+        assertEquals("{\"path\":null,\"category\":\"part\","
+                     + "\"due\":\"2018-05-04T09:00\",\"completed\":true}",
+                body);
+        assertEquals(null, tree.snapshot().getChild(0));
+    }
+
+    @Test
+    public void testCompletionThatEndsASeries() throws IOException {
+        request("POST", "/add?category=proj&due=2018-05-11T09:00");
+        request("POST", "/add?parent=0&category=call&due=2018-05-04T09:00"
+                        + "&every=7&times=2");
+
+        request("POST", "/complete?task=0/0");
+        assertEquals("{\"path\":\"0/0\",\"category\":\"call\","
+                     + "\"due\":\"2018-05-11T09:00\",\"completed\":false}",
+                body);
+        request("POST", "/complete?task=0/0");
+        assertEquals(200, status);
+        assertEquals("{\"path\":null,\"category\":\"call\","
+                     + "\"due\":\"2018-05-11T09:00\",\"completed\":true}",
+                body);
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        request("POST", "/complete?task=3/1");
+        assertEquals(404, status);
+        assertEquals("{\"error\":\"no task at 3/1\"}", body);
+        request("POST", "/add?category=x&due=tomorrow");
+        assertEquals(400, status);
+        request("POST", "/add?due=2018-05-02T09:00");
+        assertEquals("{\"error\":\"category is required\"}", body);
+        request("GET", "/agenda?limit=-1");
+        assertEquals(400, status);
+        request("GET", "/complete?task=0");
+        assertEquals(405, status);
+        request("GET", "/nextfew");
+        assertEquals(404, status);
+        assertEquals(0, tree.snapshot().getChildCount());
+    }
+
+    private void request(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + path)
+                .openConnection();
+        connection.setRequestMethod(method);
+        status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream()
+                                      : connection.getErrorStream();
+        try (Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+            body = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+        }
+    }
+}
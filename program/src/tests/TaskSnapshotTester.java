@@ -0,0 +1,212 @@
+package tests;
+
+import dataStructure.TaskNode;
+import dataStructure.TaskSnapshot;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskSnapshotTester {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(Files.createTempDirectory("snapshot").toFile(),
+                "taskTree.txt");
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        TaskNode head = sampleTree();
+        TaskSnapshot.write(head, 42, file);
+
+        TaskSnapshot snapshot = TaskSnapshot.read(file);
+        assertEquals(42, snapshot.getSequence());
+        assertSameTree(head, snapshot.getTree());
+        assertEquals(head.chooseTask().getCategory(),
+                snapshot.getTree().chooseTask().getCategory());
+        assertEquals(head.getEarliestDueDate(),
+                snapshot.getTree().getEarliestDueDate());
+    }
+
+    @Test
+    public void testDamageIsDetected() throws IOException {
+        TaskSnapshot.write(sampleTree(), 0, file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 3);
+            raf.write(0x7f);
+        }
+        try {
+            TaskSnapshot.read(file);
+            fail("damaged snapshot was read");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testMigrateSerializedTree() throws IOException {
+        TaskNode head = sampleTree();
+        try (ObjectOutputStream out = new ObjectOutputStream(
+                new FileOutputStream(file))) {
+            out.writeObject(head);
+        }
+        assertTrue(TaskSnapshot.isSerialized(file));
+
+        TaskSnapshot migrated = TaskSnapshot.migrate(file);
+        assertSameTree(head, migrated.getTree());
+        assertFalse(TaskSnapshot.isSerialized(file));
+        assertSameTree(head, TaskSnapshot.read(file).getTree());
+    }
+
+    @Test
+    public void testLazyRead() throws IOException {
+        TaskNode head = sampleTree();
+        TaskSnapshot.write(head, 7, file);
+
+        TaskNode lazy = TaskSnapshot.read(file, 1).getTree();
+        assertEquals(head.getEarliestDueDate(), lazy.getEarliestDueDate());
+        assertEquals(head.chooseTask().getCategory(),
+                lazy.chooseTask().getCategory());
+        assertSameTree(head, lazy);
+    }
+
+    @Test
+    public void testWriteKeepsUnloadedSubtrees() throws IOException {
+        TaskNode head = sampleTree();
+        TaskSnapshot.write(head, 0, file);
+
+        // write the lazily read tree out before anything below it is loaded
+        File copy = new File(file.getParentFile(), "copy.txt");
+        TaskSnapshot.write(TaskSnapshot.read(file, 1).getTree(), 0, copy);
+        assertSameTree(head, TaskSnapshot.read(copy).getTree());
+
+        TaskNode project = TaskSnapshot.read(copy, 1).getTree().getChild(0);
+        assertFalse(project.evict());
+        assertEquals("outline", project.getChild(0).getCategory());
+        assertTrue(project.evict());
+        assertTrue(project.hasChildren());
+        assertSameTree(head.getChild(0), project);
+    }
+
+    @Test
+    public void testChunksNotMadeYetRoundTrip() throws IOException {
+        TaskNode head = sampleTree();
+        TaskSnapshot.write(head, 0, file);
+
+        // the chunks still to come are made from the plan kept in the file
+        TaskNode read = TaskSnapshot.read(file).getTree();
+        TaskNode expected = head.chooseTask();
+        while (expected != null) {
+            TaskNode actual = read.chooseTask();
+            assertEquals(expected.getCategory(), actual.getCategory());
+            assertEquals(expected.getDueDate(), actual.getDueDate());
+            expected.setCompleted(true);
+            actual.setCompleted(true);
+            expected = head.chooseTask();
+        }
+        assertEquals(null, read.chooseTask());
+        assertSameTree(head, read);
+    }
+
+    @Test
+    public void testChildrenAddedAfterPlanRoundTrip() throws IOException {
+        TaskNode head = new TaskNode("Task List", NOW.plusDays(100));
+        TaskNode reading = new TaskNode("reading", NOW.plusDays(10));
+        reading.setTaskCount(30);
+        head.addChild(reading);
+        reading.subDivide(NOW);
+        reading.addChild(new TaskNode("summary", NOW.plusDays(1)));
+        TaskSnapshot.write(head, 0, file);
+
+        // the chunks not made yet keep their place in front of the summary
+        TaskNode read = TaskSnapshot.read(file).getTree().getChild(0);
+        assertEquals("summary", read.getChild(10).getCategory());
+        assertEquals(2, read.listMadeChildren().size());
+        assertSameTree(head, TaskSnapshot.read(file).getTree());
+    }
+
+    @Test
+    public void testChunkNamesNotStored() throws IOException {
+        TaskNode head = sampleTree();
+        TaskNode reading = head.getChild(0).getChild(1);
+        assertEquals("reading: 0 - 3", reading.getChild(0).getCategory());
+        TaskSnapshot.write(head, 0, file);
+
+        // chunks are named after their parent when read, lazily or not
+        String bytes = new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.ISO_8859_1);
+        assertFalse(bytes.contains("reading:"));
+        assertSameTree(head, TaskSnapshot.read(file).getTree());
+        File copy = new File(file.getParentFile(), "copy.txt");
+        TaskSnapshot.write(TaskSnapshot.read(file, 1).getTree(), 0, copy);
+        assertSameTree(head, TaskSnapshot.read(copy, 2).getTree());
+    }
+
+    @Test
+    public void testRangeLeavesEarlierSubtreesOnDisk() throws IOException {
+        TaskNode head = new TaskNode("Task List", NOW.plusYears(1));
+        TaskNode spring = new TaskNode("spring", NOW.plusDays(10));
+        spring.addChild(new TaskNode("essay", NOW.plusDays(2)));
+        spring.addChild(new TaskNode("exam", NOW.plusDays(9)));
+        TaskNode fall = new TaskNode("fall", NOW.plusDays(90));
+        fall.addChild(new TaskNode("lab", NOW.plusDays(40)));
+        fall.addChild(new TaskNode("thesis", NOW.plusDays(80)));
+        head.addChild(spring);
+        head.addChild(fall);
+        TaskSnapshot.write(head, 0, file);
+
+        // both subtrees start before the range, only one reaches into it
+        TaskNode lazy = TaskSnapshot.read(file, 1).getTree();
+        assertEquals("[lab]", lazy.dueBetween(NOW.plusDays(30),
+                NOW.plusDays(50)).toString());
+        assertFalse(lazy.getChild(0).evict());
+        assertTrue(lazy.getChild(1).evict());
+
+        assertEquals("[essay, exam, spring]", lazy.dueBetween(NOW,
+                NOW.plusDays(30)).toString());
+        assertTrue(lazy.getChild(0).evict());
+    }
+
+    private static TaskNode sampleTree() {
+        TaskNode head = new TaskNode("Task List", NOW);
+        TaskNode project = new TaskNode("project", NOW.plusDays(20));
+        TaskNode reading = new TaskNode("reading", NOW.plusDays(10));
+        reading.setTaskCount(30);
+        head.addChild(project);
+        project.addChild(new TaskNode("outline", NOW.plusDays(3)));
+        project.addChild(reading);
+        head.addChild(new TaskNode("project", NOW.minusDays(400)));
+        head.subDivide(NOW);
+        head.chooseTask().setCompleted(true);
+        return head;
+    }
+
+    private static void assertSameTree(TaskNode expected, TaskNode actual) {
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getDueDate(), actual.getDueDate());
+        assertEquals(expected.isCompleted(), actual.isCompleted());
+        assertEquals(expected.getTaskCount(), actual.getTaskCount());
+        int i = 0;
+        while (expected.getChild(i) != null) {
+            assertSameTree(expected.getChild(i), actual.getChild(i));
+            i++;
+        }
+        assertEquals(null, actual.getChild(i));
+    }
+}
@@ -0,0 +1,164 @@
+package tests;
+
+import dataStructure.Recurrence;
+import dataStructure.TaskNode;
+import dataStructure.TaskStore;
+import dataStructure.TreeStats;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaskStoreTester {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 5, 1, 9, 0);
+
+    @Test
+    public void testMatchesTaskNode() throws IOException {
+        TaskNode plain = randomTree(7);
+        TaskStore store = new TaskStore(randomTree(7), 1);
+        Random random = new Random(11);
+
+        int steps = 0;
+        while (!plain.isCompleted()) {
+            TaskNode stored = store.getTree();
+            TaskNode expected = plain.chooseTask();
+            TaskNode actual = stored.chooseTask();
+            assertEquals(describe(expected), describe(actual));
+            assertEquals(plain.getEarliestDueDate(),
+                    stored.getEarliestDueDate());
+            assertEquals(describe(plain.dueBetween(NOW, NOW.plusDays(3))),
+                    describe(stored.dueBetween(NOW, NOW.plusDays(3))));
+            expected.setCompleted(true);
+            actual.setCompleted(true);
+
+            // the same change at the same place in both
+            int change = random.nextInt(8);
+            if (change < 2 && !plain.isCompleted()) {
+                List<Integer> path = randomPath(plain, random);
+                LocalDateTime due = NOW.plusDays(random.nextInt(30));
+                int count = random.nextInt(3) == 0 ? 12 : 0;
+                at(plain, path).addChild(task("added " + steps, due, count));
+                at(stored, path).addChild(task("added " + steps, due, count));
+            } else if (change == 2 && !plain.isCompleted()) {
+                List<Integer> path = randomPath(plain, random);
+                LocalDateTime start = NOW.plusDays(random.nextInt(5));
+                assertEquals(at(plain, path).subDivide(start),
+                        at(stored, path).subDivide(start));
+            } else if (change == 3) {
+                store.compact();
+            }
+            steps++;
+        }
+        assertTrue(store.getTree().isCompleted());
+        assertTrue(steps > 100);
+    }
+
+    @Test
+    public void testOnlyTasksInUseAreLoaded() throws IOException {
+        TaskNode head = new TaskNode("head", NOW.plusDays(100));
+        for (int i = 0; i < 20; i++) {
+            TaskNode project = new TaskNode("project " + i,
+                    NOW.plusDays(30 + i));
+            for (int j = 0; j < 50; j++) {
+                project.addChild(new TaskNode("task " + i + "." + j,
+                        NOW.plusDays(j + i)));
+            }
+            head.addChild(project);
+        }
+        TaskStore store = new TaskStore(head, 1);
+        assertEquals(21, TreeStats.of(store.getTree()).getSize());
+
+        // choosing loads the project the first task is in and no other
+        TaskNode first = store.getTree().chooseTask();
+        assertEquals("task 0.0", first.getCategory());
+        assertEquals(71, TreeStats.of(store.getTree()).getSize());
+        first.setCompleted(true);
+        assertEquals("task 0.1", store.getTree().chooseTask().getCategory());
+
+        // compacting drops the loaded tasks and keeps the completion
+        store.compact();
+        assertEquals(21, TreeStats.of(store.getTree()).getSize());
+        assertEquals("task 0.1", store.getTree().chooseTask().getCategory());
+        assertEquals(1021, TreeStats.of(loadAll(store.getTree())).getSize());
+    }
+
+    // a tree of projects, some of them with parts to sub-divide or a
+    // recurrence, the same one for the same seed
+    private static TaskNode randomTree(long seed) {
+        Random random = new Random(seed);
+        TaskNode head = new TaskNode("head", NOW.plusDays(400));
+        List<TaskNode> nodes = new ArrayList<>();
+        nodes.add(head);
+        for (int i = 0; i < 400; i++) {
+            TaskNode parent = nodes.get(random.nextInt(nodes.size()));
+            LocalDateTime due = NOW.plusDays(1 + random.nextInt(40))
+                    .plusHours(random.nextInt(24));
+            TaskNode node = task("task " + i, due,
+                    random.nextInt(4) == 0 ? 1 + random.nextInt(30) : 0);
+            if (random.nextInt(10) == 0) {
+                node.setRecurrence(Recurrence.everyDays(1 + random.nextInt(7))
+                        .times(1 + random.nextInt(3)));
+            }
+            parent.addChild(node);
+            nodes.add(node);
+        }
+        head.subDivide(NOW);
+        return head;
+    }
+
+    private static TaskNode task(String category, LocalDateTime due,
+                                 int count) {
+        TaskNode node = new TaskNode(category, due);
+        node.setTaskCount(count);
+        return node;
+    }
+
+    private static List<Integer> randomPath(TaskNode node, Random random) {
+        List<Integer> path = new ArrayList<>();
+        while (random.nextInt(3) != 0) {
+            int children = 0;
+            while (node.getChild(children) != null) {
+                children++;
+            }
+            int index = children == 0 ? -1 : random.nextInt(children);
+            if (index < 0 || node.getChild(index).isCompleted()) {
+                break;
+            }
+            path.add(index);
+            node = node.getChild(index);
+        }
+        return path;
+    }
+
+    private static TaskNode at(TaskNode node, List<Integer> path) {
+        for (int index : path) {
+            node = node.getChild(index);
+        }
+        return node;
+    }
+
+    // walk a whole tree so every task in it is loaded
+    private static TaskNode loadAll(TaskNode head) {
+        for (int i = 0; head.getChild(i) != null; i++) {
+            loadAll(head.getChild(i));
+        }
+        return head;
+    }
+
+    private static String describe(TaskNode task) {
+        return task.getCategory() + " " + task.getDueDate();
+    }
+
+    private static List<String> describe(List<TaskNode> tasks) {
+        return tasks.stream().map(TaskStoreTester::describe).sorted()
+                .collect(Collectors.toList());
+    }
+}